@@ -0,0 +1,62 @@
+package co.tjcelaya.shoelaces;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A whole {@code sl -i THREAD} invocation inside a warm JVM: parse, load, apply, save and print. JVM startup is not
+ * included.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppBenchmark {
+
+    @Param({"1000", "100000"})
+    int threads;
+
+    @Param({"false", "true"})
+    boolean journaled;
+
+    private String[] names;
+    private File file;
+    private Options options;
+    private PrintStream sink;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        names = Fixtures.names(threads);
+        file = File.createTempFile("bench", ".sldb");
+        file.deleteOnExit();
+        new File(file.getPath() + Journal.EXTENSION).deleteOnExit();
+        Fixtures.database(names, 16).save(file);
+        options = App.options();
+        sink = new PrintStream(NullOutputStream.NULL_OUTPUT_STREAM);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + Journal.EXTENSION).delete();
+    }
+
+    @Benchmark
+    public void interrupt() throws IOException, ClassNotFoundException, ParseException {
+        cursor = (cursor + 1) % 16;
+        final CommandLine invocation = new DefaultParser().parse(options, new String[]{"-i", names[cursor]});
+        App.run(journaled ? new Journal(file) : new FileStore(file), invocation, sink, sink);
+    }
+}
@@ -0,0 +1,133 @@
+package co.tjcelaya.shoelaces;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One database shared by 1 to 8 threads in the same process, through {@link ConcurrentShoeLaces} and, for
+ * comparison, through a plain {@link ShoeLaces} behind one global lock. Each thread interrupts its own threads in
+ * turn; the mixed groups pair one writer with readers taking {@code current()} and snapshots.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentShoeLacesBenchmark {
+
+    @Param({"concurrent", "locked"})
+    String guard;
+
+    @Param({"1000"})
+    int threads;
+
+    private String[] names;
+    private ConcurrentShoeLaces shared;
+    private ShoeLaces locked;
+    private final AtomicInteger nextWorker = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class Worker {
+        int offset;
+        int cursor;
+
+        @Setup(Level.Trial)
+        public void setUp(final ConcurrentShoeLacesBenchmark benchmark) {
+            offset = benchmark.nextWorker.getAndIncrement() * 16;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        names = Fixtures.names(threads);
+        final ShoeLaces db = Fixtures.database(names, 16);
+        shared = new ConcurrentShoeLaces(db);
+        locked = db;
+    }
+
+    private String interrupt(final Worker worker) {
+        worker.cursor = (worker.cursor + 1) % 16;
+        final String thread = names[(worker.offset + worker.cursor) % threads];
+        if ("concurrent".equals(guard)) {
+            shared.interrupt(thread);
+            return shared.current();
+        }
+        synchronized (locked) {
+            locked.interrupt(thread);
+            return locked.current();
+        }
+    }
+
+    private String read() {
+        if ("concurrent".equals(guard)) {
+            return shared.current();
+        }
+        synchronized (locked) {
+            return locked.current();
+        }
+    }
+
+    private int snapshot() {
+        if ("concurrent".equals(guard)) {
+            return shared.snapshot().attention().size();
+        }
+        synchronized (locked) {
+            return locked.attention().toList().size();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String writers1(final Worker worker) {
+        return interrupt(worker);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public String writers2(final Worker worker) {
+        return interrupt(worker);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String writers4(final Worker worker) {
+        return interrupt(worker);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String writers8(final Worker worker) {
+        return interrupt(worker);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public String mixedWriter(final Worker worker) {
+        return interrupt(worker);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public String mixedCurrent() {
+        return read();
+    }
+
+    @Benchmark
+    @Group("snapshots")
+    @GroupThreads(1)
+    public String snapshotsWriter(final Worker worker) {
+        return interrupt(worker);
+    }
+
+    @Benchmark
+    @Group("snapshots")
+    @GroupThreads(3)
+    public int snapshotsReader() {
+        return snapshot();
+    }
+}
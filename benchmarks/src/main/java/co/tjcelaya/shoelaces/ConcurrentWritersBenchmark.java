@@ -0,0 +1,88 @@
+package co.tjcelaya.shoelaces;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Whole in-process invocations from several writer threads against one database, serialized by the
+ * {@link DatabaseLock}. Each invocation spawns a distinct thread, and the trial fails if any spawn is missing at the
+ * end.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentWritersBenchmark {
+
+    @Param({"false", "true"})
+    boolean journaled;
+
+    private File file;
+    private Options options;
+    private PrintStream sink;
+    private final AtomicInteger spawned = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = File.createTempFile("bench", ".sldb");
+        file.deleteOnExit();
+        new File(file.getPath() + Journal.EXTENSION).deleteOnExit();
+        new File(file.getPath() + DatabaseLock.EXTENSION).deleteOnExit();
+        new ShoeLaces("bench").save(file);
+        options = App.options();
+        sink = new PrintStream(NullOutputStream.NULL_OUTPUT_STREAM);
+    }
+
+    @TearDown(Level.Trial)
+    public void verify() throws IOException, ClassNotFoundException {
+        final ShoeLaces db = journaled ? new Journal(file).load() : ShoeLaces.load(file);
+        if (db.threads().size() != spawned.get()) {
+            throw new IllegalStateException("lost updates: " + spawned.get() + " spawned, "
+                    + db.threads().size() + " saved");
+        }
+        file.delete();
+        new File(file.getPath() + Journal.EXTENSION).delete();
+    }
+
+    private void spawn() throws IOException, ClassNotFoundException, ParseException {
+        final String name = "w.t" + spawned.getAndIncrement();
+        final CommandLine invocation = new DefaultParser().parse(options, new String[]{"-s", name});
+        App.run(journaled ? new Journal(file) : new FileStore(file), invocation, sink, sink);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void writers1() throws IOException, ClassNotFoundException, ParseException {
+        spawn();
+    }
+
+    @Benchmark
+    @Threads(2)
+    public void writers2() throws IOException, ClassNotFoundException, ParseException {
+        spawn();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void writers4() throws IOException, ClassNotFoundException, ParseException {
+        spawn();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void writers8() throws IOException, ClassNotFoundException, ParseException {
+        spawn();
+    }
+}
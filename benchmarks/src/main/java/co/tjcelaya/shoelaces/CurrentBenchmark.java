@@ -0,0 +1,57 @@
+package co.tjcelaya.shoelaces;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What {@code sl --current} costs once the JVM is up: reading the {@code .current} sidecar, against finding the top of
+ * the attention stack in the database itself when the sidecar is stale, and loading the whole database.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CurrentBenchmark {
+
+    @Param({"1000", "100000"})
+    int threads;
+
+    @Param({".sldb", BinaryCodec.EXTENSION})
+    String format;
+
+    private FileStore store;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final File file = File.createTempFile("bench", format);
+        file.deleteOnExit();
+        CurrentFile.fileFor(file).deleteOnExit();
+        new File(file.getPath() + DatabaseLock.EXTENSION).deleteOnExit();
+
+        store = new FileStore(file);
+        final ShoeLaces db = Fixtures.database(Fixtures.names(threads), 64);
+        store.write(db);
+        CurrentFile.write(store, db.current());
+    }
+
+    @Benchmark
+    public String sidecar() throws IOException, ClassNotFoundException {
+        return CurrentFile.read(store);
+    }
+
+    @Benchmark
+    public String partial() throws IOException {
+        final File file = store.getFile();
+        return BinaryCodec.isBinary(file) ? BinaryCodec.open(file).current() : ShoeLacesCodec.current(file);
+    }
+
+    @Benchmark
+    public String load() throws IOException, ClassNotFoundException {
+        return store.load().current();
+    }
+}
@@ -0,0 +1,64 @@
+package co.tjcelaya.shoelaces;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saved changes per second at each durability level: one interrupt followed by a journal save, as the daemon or a
+ * batch would do, and one whole-snapshot save, as a plain invocation does. Journal saves include the compaction that
+ * every 1000th one triggers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DurabilityBenchmark {
+
+    @Param({"none", "group", "group:16:5", "always"})
+    String durability;
+
+    @Param({"1000"})
+    int threads;
+
+    private String[] names;
+    private File file;
+    private Journal journal;
+    private ShoeLaces db;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, ClassNotFoundException {
+        names = Fixtures.names(threads);
+        file = File.createTempFile("bench", ".sldb");
+        Fixtures.database(names, 16).save(file);
+
+        journal = new Journal(file, Journal.DEFAULT_COMPACTION_THRESHOLD, Durability.parse(durability));
+        db = journal.load();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        journal.close();
+        file.delete();
+        journal.getLog().delete();
+    }
+
+    @Benchmark
+    public void journaled() throws IOException {
+        cursor = (cursor + 1) % threads;
+        db.interrupt(names[cursor]);
+        journal.save(db);
+    }
+
+    @Benchmark
+    public void snapshot() throws IOException {
+        cursor = (cursor + 1) % threads;
+        db.interrupt(names[cursor]);
+        db.save(file, journal.getDurability());
+    }
+}
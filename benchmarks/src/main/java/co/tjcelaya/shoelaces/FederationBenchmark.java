@@ -0,0 +1,76 @@
+package co.tjcelaya.shoelaces;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answering "when was this thread last killed?" over a directory of daily databases: through an up-to-date index,
+ * rebuilding the index from nothing, and loading every database in turn.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FederationBenchmark {
+
+    @Param({"30", "365"})
+    int days;
+
+    @Param({"1000"})
+    int threads;
+
+    private File home;
+    private String thread;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        home = Files.createTempDirectory("bench").toFile();
+        final String[] names = Fixtures.names(threads);
+        thread = names[threads / 2];
+
+        for (int d = 0; d < days; d++) {
+            final ShoeLaces db = Fixtures.database(names, 16);
+            if (d % 7 == 0) {
+                db.kill(thread);
+            }
+            db.save(new File(home, String.format("day-%04d.sldb", d)), Durability.NONE);
+        }
+        Federation.open(home);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(home);
+    }
+
+    @Benchmark
+    public String indexed() throws IOException {
+        return Federation.open(home).lastDay(thread, 'K');
+    }
+
+    @Benchmark
+    public String rebuild() throws IOException {
+        new File(home, Federation.INDEX_FILE).delete();
+        return Federation.open(home).lastDay(thread, 'K');
+    }
+
+    @Benchmark
+    public String loadEveryDay() throws IOException, ClassNotFoundException {
+        String last = null;
+        for (File file : home.listFiles((dir, name) -> Federation.isDatabase(name))) {
+            final ThreadStatus status = ShoeLaces.load(file).threads().status(thread);
+            final String day = file.getName();
+            if (status != null && status.getKills() > 0 && (last == null || day.compareTo(last) > 0)) {
+                last = day;
+            }
+        }
+        return last;
+    }
+}
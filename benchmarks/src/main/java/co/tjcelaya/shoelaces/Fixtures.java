@@ -0,0 +1,33 @@
+package co.tjcelaya.shoelaces;
+
+/**
+ * Synthetic databases for the benchmarks.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static String[] names(final int threads) {
+        final String[] names = new String[threads];
+        for (int i = 0; i < threads; i++) {
+            names[i] = "proj-" + (i % 100) + ".task-" + i;
+        }
+        return names;
+    }
+
+    /**
+     * @param names threads to spawn, in tid order
+     * @param depth number of threads on the attention stack, taken from the start of {@code names}
+     */
+    static ShoeLaces database(final String[] names, final int depth) {
+        final ShoeLaces db = new ShoeLaces("bench");
+        for (String name : names) {
+            db.spawn(name);
+        }
+        for (int i = depth - 1; i >= 0; i--) {
+            db.interrupt(names[i]);
+        }
+        return db;
+    }
+}
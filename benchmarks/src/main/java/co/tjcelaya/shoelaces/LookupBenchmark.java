@@ -0,0 +1,47 @@
+package co.tjcelaya.shoelaces;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of resolving tids to names and back as the database grows.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    int threads;
+
+    private String[] names;
+    private ShoeLaces db;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        names = Fixtures.names(threads);
+        db = Fixtures.database(names, 1);
+    }
+
+    @Benchmark
+    public String lookup() {
+        cursor = (cursor + 7919) % threads;
+        return db.lookup(cursor);
+    }
+
+    @Benchmark
+    public int tid() {
+        cursor = (cursor + 7919) % threads;
+        return db.tid(names[cursor]);
+    }
+
+    @Benchmark
+    public String lastTid() {
+        return db.lookup(threads - 1);
+    }
+}
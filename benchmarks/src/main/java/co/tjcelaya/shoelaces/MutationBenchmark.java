@@ -0,0 +1,90 @@
+package co.tjcelaya.shoelaces;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of single mutations against a database of {@code threads} threads with {@code depth} of them on the
+ * attention stack. Each pair of calls leaves the database the shape it started in. With {@code metrics} on, every
+ * call is also timed, as under {@code --stats}, a batch or the daemon; each trial forks, so it does not leak.
+ * <p>
+ * With {@code timed} on, every call also adds to the database's timeline, which a real process empties onto disk at
+ * each save; it is replaced at each iteration here so that it does not grow for the whole trial. With it off, run
+ * with {@code -prof gc} to see that the mutations themselves allocate nothing once every thread has been on the
+ * stack.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MutationBenchmark {
+
+    @Param({"1000", "100000"})
+    int threads;
+
+    @Param({"1", "64"})
+    int depth;
+
+    @Param({"false", "true"})
+    boolean metrics;
+
+    @Param({"true", "false"})
+    boolean timed;
+
+    private String[] names;
+    private ShoeLaces db;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        names = Fixtures.names(threads);
+        db = Fixtures.database(names, depth);
+        if (metrics) {
+            Metrics.enable();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void clearTimeline() {
+        db.timeline(timed ? new Timeline() : null);
+    }
+
+    private String nextOnStack() {
+        cursor = (cursor + 1) % depth;
+        return names[cursor];
+    }
+
+    @Benchmark
+    public void spawn() {
+        cursor = (cursor + 1) % threads;
+        db.spawn(names[cursor]);
+    }
+
+    @Benchmark
+    public void interrupt() {
+        db.interrupt(nextOnStack());
+    }
+
+    @Benchmark
+    public void exitAndInterrupt() {
+        final String t = nextOnStack();
+        db.exit(t);
+        db.interrupt(t);
+    }
+
+    @Benchmark
+    public void killAndInterrupt() {
+        final String t = nextOnStack();
+        db.kill(t);
+        db.interrupt(t);
+    }
+
+    @Benchmark
+    public String lookup() {
+        cursor = (cursor + 7919) % threads;
+        return db.lookup(cursor);
+    }
+}
@@ -0,0 +1,76 @@
+package co.tjcelaya.shoelaces;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to write and read back a whole {@code .sldb} file.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistenceBenchmark {
+
+    @Param({"1000", "100000"})
+    int threads;
+
+    @Param({"1", "64"})
+    int depth;
+
+    @Param({".sldb", BinaryCodec.EXTENSION})
+    String format;
+
+    private ShoeLaces db;
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        db = Fixtures.database(Fixtures.names(threads), depth);
+        file = File.createTempFile("bench", format);
+        file.deleteOnExit();
+        db.save(file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public void save() throws IOException {
+        db.save(file);
+    }
+
+    @Benchmark
+    public ShoeLaces load() throws IOException, ClassNotFoundException {
+        return ShoeLaces.load(file);
+    }
+
+    /**
+     * What a read-only command needs: the running thread and one tid.
+     */
+    @Benchmark
+    public String currentAndLookup() throws IOException, ClassNotFoundException {
+        if (BinaryCodec.isBinary(file)) {
+            final MappedShoeLaces mapped = BinaryCodec.open(file);
+            mapped.current();
+            return mapped.lookup(threads / 2);
+        }
+
+        final ShoeLaces loaded = ShoeLaces.load(file);
+        loaded.current();
+        return loaded.lookup(threads / 2);
+    }
+
+    @Benchmark
+    public ShoeLaces roundTrip() throws IOException, ClassNotFoundException {
+        db.save(file);
+        return ShoeLaces.load(file);
+    }
+}
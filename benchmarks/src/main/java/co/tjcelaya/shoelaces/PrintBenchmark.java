@@ -0,0 +1,50 @@
+package co.tjcelaya.shoelaces;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of rendering the status table, whole and one page at a time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrintBenchmark {
+
+    @Param({"100", "10000"})
+    int threads;
+
+    @Param({"1", "64"})
+    int depth;
+
+    private ShoeLaces db;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        db = Fixtures.database(Fixtures.names(threads), depth);
+    }
+
+    @Benchmark
+    public String print() {
+        return db.print();
+    }
+
+    @Benchmark
+    public String printPage() throws IOException {
+        final StringBuilder out = new StringBuilder();
+        db.print(out, PrintOptions.all().offset(threads / 2).limit(20));
+        return out.toString();
+    }
+
+    @Benchmark
+    public String printPrefix() throws IOException {
+        final StringBuilder out = new StringBuilder();
+        db.print(out, PrintOptions.all().prefix("proj-7").limit(20));
+        return out.toString();
+    }
+}
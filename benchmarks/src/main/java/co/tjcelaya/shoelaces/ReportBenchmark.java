@@ -0,0 +1,94 @@
+package co.tjcelaya.shoelaces;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The whole-history report over years of synthetic daily databases with timelines, on fork/join pools of increasing
+ * size, against reading the same days one after another on the calling thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReportBenchmark {
+
+    @Param({"1", "5"})
+    int years;
+
+    @Param({"1", "2", "4", "8"})
+    int parallelism;
+
+    @Param({"200"})
+    int threads;
+
+    @Param({"100"})
+    int changes;
+
+    private File home;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        home = Files.createTempDirectory("bench").toFile();
+        pool = new ForkJoinPool(parallelism);
+        final String[] names = Fixtures.names(threads);
+        final Random random = new Random(years);
+
+        final LocalDate first = LocalDate.of(2017, 1, 1);
+        for (LocalDate day = first; day.isBefore(first.plusYears(years)); day = day.plusDays(1)) {
+            final ShoeLaces db = Fixtures.database(names, 16);
+            long at = day.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            for (int c = 0; c < changes; c++) {
+                at += random.nextInt(600_000);
+                db.clock(Clock.fixed(Instant.ofEpochMilli(at), ZoneOffset.UTC));
+                final String thread = names[random.nextInt(threads)];
+                final int kind = random.nextInt(10);
+                if (kind < 7) {
+                    db.interrupt(thread);
+                } else if (kind < 9) {
+                    db.exit(thread);
+                } else {
+                    db.kill(thread);
+                }
+            }
+
+            final File file = new File(home, day + ".sldb");
+            db.save(file, Durability.NONE);
+            db.timeline().write(file);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        pool.shutdown();
+        FileUtils.deleteDirectory(home);
+    }
+
+    @Benchmark
+    public long report() throws IOException {
+        return Report.run(home, pool).interrupts();
+    }
+
+    @Benchmark
+    public long sequential() {
+        Report.Tally tally = new Report.Tally();
+        for (File file : home.listFiles((dir, name) -> Federation.isDatabase(name))) {
+            tally = tally.merge(Report.day(file));
+        }
+        return tally.interrupts();
+    }
+}
@@ -0,0 +1,70 @@
+package co.tjcelaya.shoelaces;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of starting a day from the live threads of a large previous day, where most threads have finished: streaming
+ * only the live entries, against loading the whole database and copying them out.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RolloverBenchmark {
+
+    @Param({"10000", "100000"})
+    int threads;
+
+    @Param({".sldb", BinaryCodec.EXTENSION})
+    String format;
+
+    private File previous;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final String[] names = Fixtures.names(threads);
+        final ShoeLaces db = Fixtures.database(names, 16);
+        for (int i = 16; i < names.length; i++) {
+            if (i % 10 != 0) {
+                db.kill(names[i]);
+            }
+        }
+
+        previous = File.createTempFile("bench", format);
+        db.save(previous, Durability.NONE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        previous.delete();
+    }
+
+    @Benchmark
+    public ShoeLaces carryOver() throws IOException, ClassNotFoundException {
+        return Rollover.carryOver(previous, "next");
+    }
+
+    @Benchmark
+    public ShoeLaces loadAndCopy() throws IOException, ClassNotFoundException {
+        final ShoeLaces old = ShoeLaces.load(previous);
+        final ThreadRegistry live = new ThreadRegistry();
+        for (int tid = 0; tid < old.threads().size(); tid++) {
+            final char last = old.threads().status(tid).last();
+            if (last != 'E' && last != 'K') {
+                live.register(old.threads().name(tid));
+            }
+        }
+
+        final AttentionStack attention = new AttentionStack();
+        for (String at : old.attention()) {
+            attention.addBottom(at);
+        }
+        return new ShoeLaces("next", live, attention);
+    }
+}
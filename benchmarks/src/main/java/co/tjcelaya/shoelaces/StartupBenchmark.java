@@ -0,0 +1,96 @@
+package co.tjcelaya.shoelaces;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A whole {@code sl -i THREAD} process, JVM startup included, with and without a class-data-sharing archive made for
+ * the jar the way install.sh makes one. Run from the repository root after {@code mvn package}, or point {@code jar}
+ * at another build. The archive needs Java 13 or newer; older JVMs run both cases without it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StartupBenchmark {
+
+    @Param({"target/shoelaces-1.0-SNAPSHOT.jar"})
+    String jar;
+
+    @Param({"false", "true"})
+    boolean archive;
+
+    @Param({"json", "binary"})
+    String format;
+
+    @Param({"1000"})
+    int threads;
+
+    private String[] names;
+    private File home;
+    private File installed;
+    private File output;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        names = Fixtures.names(threads);
+        home = Files.createTempDirectory("bench").toFile();
+        installed = new File(home, "sl.jar");
+        output = new File(home, "output");
+        FileUtils.copyFile(new File(jar), installed);
+        Fixtures.database(names, 16).save(new File(home, "bench" + ("binary".equals(format) ? ".slb" : ".sldb")));
+
+        if (archive) {
+            sl("-XX:ArchiveClassesAtExit=" + new File(home, "sl.jsa"), "-Xlog:cds=off", "-jar", installed.getPath(),
+                    "-i", names[0]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(home);
+    }
+
+    @Benchmark
+    public int interrupt() throws IOException, InterruptedException {
+        cursor = (cursor + 1) % 16;
+        // the options sl passes when it finds an archive
+        return archive
+                ? sl("-XX:+IgnoreUnrecognizedVMOptions", "-XX:SharedArchiveFile=" + new File(home, "sl.jsa"),
+                "-Xshare:auto", "-Xlog:cds=off", "-jar", installed.getPath(), "-i", names[cursor])
+                : sl("-jar", installed.getPath(), "-i", names[cursor]);
+    }
+
+    private int sl(final String... args) throws IOException, InterruptedException {
+        final List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.addAll(Arrays.asList(args));
+
+        final ProcessBuilder builder = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(output);
+        builder.environment().put("SHOELACES_HOME", home.getPath());
+        builder.environment().put("SHOELACES_FILE", "bench");
+        if ("binary".equals(format)) {
+            builder.environment().put("SHOELACES_FORMAT", "binary");
+        }
+
+        final int status = builder.start().waitFor();
+        if (status != 0) {
+            throw new IllegalStateException("sl exited with " + status + ": "
+                    + FileUtils.readFileToString(output, "UTF-8"));
+        }
+        return status;
+    }
+}
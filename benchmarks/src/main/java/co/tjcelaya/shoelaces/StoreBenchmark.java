@@ -0,0 +1,69 @@
+package co.tjcelaya.shoelaces;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saved changes per second through each storage backend: one interrupt followed by a save. The plain file rewrites
+ * the whole database, the journal appends a record and the key-value store rewrites the pages it touched, so only the
+ * first should slow down as the database grows.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StoreBenchmark {
+
+    @Param({"file", "journal", "kv"})
+    String backend;
+
+    @Param({"1000", "100000"})
+    int threads;
+
+    @Param({"none"})
+    String durability;
+
+    private String[] names;
+    private ShoeLacesStore store;
+    private ShoeLaces db;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, ClassNotFoundException {
+        names = Fixtures.names(threads);
+        final File file = File.createTempFile("bench", "kv".equals(backend) ? KeyValueStore.EXTENSION : ".sldb");
+
+        final Durability level = Durability.parse(durability);
+        if ("kv".equals(backend)) {
+            store = new KeyValueStore(file, level);
+        } else if ("journal".equals(backend)) {
+            store = new Journal(file, Journal.DEFAULT_COMPACTION_THRESHOLD, level);
+        } else {
+            store = new FileStore(file, level);
+        }
+
+        store.write(Fixtures.database(names, 16));
+        db = store.load();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        final File file = store.getFile();
+        file.delete();
+        new File(file.getPath() + Journal.EXTENSION).delete();
+        new File(file.getPath() + KeyValueStore.WAL_EXTENSION).delete();
+    }
+
+    @Benchmark
+    public void interruptAndSave() throws IOException {
+        cursor = (cursor + 1) % threads;
+        db.interrupt(names[cursor]);
+        store.save(db);
+    }
+}
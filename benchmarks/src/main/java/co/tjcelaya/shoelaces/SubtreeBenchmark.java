@@ -0,0 +1,83 @@
+package co.tjcelaya.shoelaces;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of finding the threads under a prefix through the sorted name index, against a scan of every name, and of
+ * killing a whole subtree. Fixture names fall under 100 {@code proj-N} prefixes, so each subtree holds 1% of them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubtreeBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    int threads;
+
+    private String[] names;
+    private ShoeLaces db;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        names = Fixtures.names(threads);
+        db = Fixtures.database(names, 1);
+        db.threads().descendants("proj-0"); // build the index outside the measurement
+    }
+
+    private String nextPrefix() {
+        cursor = (cursor + 1) % 100;
+        return "proj-" + cursor;
+    }
+
+    @Benchmark
+    public int[] subtree() {
+        return db.threads().subtree(nextPrefix());
+    }
+
+    @Benchmark
+    public int scan() {
+        final String prefix = nextPrefix() + '.';
+        final ThreadRegistry registry = db.threads();
+        int matched = 0;
+        for (int tid = 0; tid < registry.size(); tid++) {
+            if (registry.name(tid).startsWith(prefix)) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public ThreadRegistry buildIndex() {
+        final ThreadRegistry registry = new ThreadRegistry(threads);
+        for (String name : names) {
+            registry.register(name);
+        }
+        registry.descendants("proj-0");
+        return registry;
+    }
+
+    /**
+     * A fresh database per invocation, since killing a subtree is not repeatable.
+     */
+    @State(Scope.Thread)
+    public static class Fresh {
+        ShoeLaces db;
+
+        @Setup(Level.Invocation)
+        public void setUp(final SubtreeBenchmark bench) {
+            db = Fixtures.database(bench.names, 1);
+        }
+    }
+
+    @Benchmark
+    public int killTree(final Fresh fresh) {
+        return fresh.db.killTree("proj-42");
+    }
+}
@@ -3,3 +3,12 @@ set -x
 
 cp sl ~/bin/sl
 cp target/shoelaces-*.jar ~/bin/sl.jar
+
+# A class-data-sharing archive only matches the jar path it was made with, so target/sl.jsa cannot be copied; make
+# one for the installed jar the same way the build does. Java 12 and older cannot, and sl starts without it.
+rm -f ~/bin/sl.jsa
+training=$(mktemp -d)
+SHOELACES_HOME=$training SHOELACES_FILE=cds-training java -jar ~/bin/sl.jar -i cds.training >/dev/null
+SHOELACES_HOME=$training SHOELACES_FILE=cds-training java -XX:ArchiveClassesAtExit="$HOME/bin/sl.jsa" -Xlog:cds=off \
+    -jar ~/bin/sl.jar -s cds.training.child >/dev/null || rm -f ~/bin/sl.jsa
+rm -rf "$training"
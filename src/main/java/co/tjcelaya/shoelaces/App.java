@@ -1,16 +1,23 @@
 package co.tjcelaya.shoelaces;
 
 import org.apache.commons.cli.*;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
 
 import static java.lang.Integer.parseInt;
 import static java.lang.System.*;
@@ -21,11 +28,13 @@ import static org.apache.commons.lang3.ObjectUtils.firstNonNull;
  */
 public class App {
 
-    private static ShoeLaces open(final File dbFile) throws IOException, ClassNotFoundException {
+    static ShoeLaces open(final ShoeLacesStore store, final PrintStream out, final PrintStream err)
+            throws IOException, ClassNotFoundException {
+        final File dbFile = store.getFile();
         out.println("using db file: " + dbFile);
 
         if (dbFile.exists()) {
-            return ShoeLaces.load(dbFile);
+            return load(store);
         }
 
         File p = dbFile.getParentFile();
@@ -33,15 +42,115 @@ public class App {
         err.println(p.getAbsolutePath());
 
         if (!dbFile.createNewFile()) {
-            err.println("concurrent access?");
-            System.exit(1);
+            // made since the check, by an invocation that has since let go of the lock
+            return load(store);
         }
         out.println("created");
+        // times and undo steps left behind by a database that was removed would not match the new one's threads
+        Files.deleteIfExists(Timeline.fileFor(dbFile).toPath());
+        Files.deleteIfExists(History.fileFor(dbFile).toPath());
 
-        return new ShoeLaces(dbFile.getName());
+        final File previous = Rollover.previous(dbFile);
+        if (previous != null) {
+            final ShoeLaces carried = Rollover.carryOver(previous, dbFile.getName());
+            if (!carried.threads().isEmpty() || !carried.attention().isEmpty()) {
+                try (Metrics.Span ignored = Metrics.span(Metrics.Operation.WRITE)) {
+                    store.write(carried);
+                }
+                out.println("carried over " + carried.threads().size() + " live threads from " + previous.getName());
+            }
+        }
+
+        return load(store);
+    }
+
+    /**
+     * Load the database and its timeline, which every backend keeps in the same file next to the database.
+     */
+    private static ShoeLaces load(final ShoeLacesStore store) throws IOException, ClassNotFoundException {
+        try (Metrics.Span ignored = Metrics.span(Metrics.Operation.LOAD)) {
+            final ShoeLaces db = store.load();
+            db.timeline(Timeline.read(store.getFile()));
+            return db;
+        }
+    }
+
+    static void save(final ShoeLacesStore store, final ShoeLaces db) throws IOException {
+        save(store, db, false);
+    }
+
+    /**
+     * @param rewrite replace the whole stored database rather than save the changes, after changes that no
+     *                transition describes, such as an undo, which stores saving only transitions or changed pages
+     *                would miss
+     */
+    static void save(final ShoeLacesStore store, final ShoeLaces db, final boolean rewrite) throws IOException {
+        try (Metrics.Span ignored = Metrics.span(Metrics.Operation.SAVE)) {
+            if (rewrite) {
+                store.write(db);
+            } else {
+                store.save(db);
+            }
+            if (db.timeline() != null) {
+                db.timeline().save(store.getFile());
+            }
+            CurrentFile.write(store, db.current());
+        }
+    }
+
+    static Path resolveHome() {
+        final String home = getenv("SHOELACES_HOME");
+        return Paths.get(
+                home != null
+                        ? home.replaceFirst("^~", System.getProperty("user.home"))
+                        : getProperty("user.dir"));
+    }
+
+    static File resolveFile() {
+        return resolveHome().resolve(
+                firstNonNull(
+                        getenv("SHOELACES_FILE"),
+                        today().toString())
+                        + extension(getenv("SHOELACES_FORMAT"))).toFile();
+    }
+
+    /**
+     * Today in the default time zone. {@link LocalDate#now()} gives the same answer but reads the zone rules a second
+     * time to get there, which is a noticeable part of a short invocation.
+     */
+    static LocalDate today() {
+        final long now = currentTimeMillis();
+        return LocalDate.ofEpochDay(
+                Math.floorDiv(now + TimeZone.getDefault().getOffset(now), TimeUnit.DAYS.toMillis(1L)));
+    }
+
+    private static String extension(final String format) {
+        if ("binary".equals(format)) {
+            return BinaryCodec.EXTENSION;
+        }
+        return "kv".equals(format) ? KeyValueStore.EXTENSION : ".sldb";
+    }
+
+    /**
+     * Pick the backend for a database file: the key-value store for {@code .slkv} files, otherwise a journal when
+     * SHOELACES_JOURNAL is set, otherwise the plain file.
+     */
+    static ShoeLacesStore resolveStore(final File file) {
+        if (KeyValueStore.isKeyValue(file)) {
+            return new KeyValueStore(file, resolveDurability());
+        }
+        return getenv("SHOELACES_JOURNAL") != null
+                ? new Journal(file, Journal.DEFAULT_COMPACTION_THRESHOLD, resolveDurability())
+                : new FileStore(file, resolveDurability());
     }
 
-    private static String findThreadFromOption(ShoeLaces db, CommandLine invocation, final String opt) {
+    static Durability resolveDurability() {
+        final String durability = getenv("SHOELACES_DURABILITY");
+        return durability != null ? Durability.parse(durability) : Durability.GROUP;
+    }
+
+    private static String findThreadFromOption(ShoeLaces db, CommandLine invocation, final String opt,
+                                               final PrintStream out, final PrintStream err) {
         String value = invocation.getOptionValue(opt, "");
         if (value != null && value.isEmpty()) {
             return null;
@@ -51,10 +160,8 @@ public class App {
 
         try {
             if (!NumberUtils.isDigits(raw)) {
-                err.println("not only digits when looking for " + raw);
                 return raw;
             }
-            err.println("lookup with parseint on " + raw);
             return db.lookup(parseInt(raw));
         } catch (NoSuchElementException e) {
             err.println(e.getMessage());
@@ -63,20 +170,8 @@ public class App {
         }
     }
 
-    public static void main(String[] args) throws IOException, ParseException, ClassNotFoundException {
-        final Path filePath = Paths.get(
-                firstNonNull(
-                        getenv("SHOELACES_HOME")
-                                .replaceFirst("^~", System.getProperty("user.home")),
-                        getProperty("user.dir")));
-        final File file = filePath.resolve(
-                firstNonNull(
-                        getenv("SHOELACES_FILE"),
-                        DateTimeFormatter.ISO_DATE.format(LocalDate.now()))
-                        + ".sldb").toFile();
-
-        final ShoeLaces db = open(file);
-        final Options opts = new Options()
+    static Options options() {
+        return new Options()
                 .addOption("h", "help")
 
                 .addOption("s", "spawn", true, "spawn a new thread")
@@ -90,35 +185,153 @@ public class App {
                 .addOption("i", "interrupt", true, "run a new PRIMARY thread")
                 .addOption("ret", "return", true, "exit the PRIMARY thread and return to <arg>, if given")
 
+                .addOption(Option.builder()
+                        .longOpt("kill-tree")
+                        .hasArg(true)
+                        .argName("THREAD")
+                        .desc("kill THREAD and every unfinished thread under it")
+                        .build())
+                .addOption(Option.builder()
+                        .longOpt("exit-tree")
+                        .hasArg(true)
+                        .argName("THREAD")
+                        .desc("exit THREAD and every unfinished thread under it")
+                        .build())
+
+                .addOption(Option.builder()
+                        .longOpt("undo")
+                        .hasArg(true)
+                        .optionalArg(true)
+                        .argName("N")
+                        .desc("undo the last N changes (default 1)")
+                        .build())
+                .addOption(Option.builder()
+                        .longOpt("redo")
+                        .hasArg(true)
+                        .optionalArg(true)
+                        .argName("N")
+                        .desc("redo the last N changes undone (default 1)")
+                        .build())
+
                 .addOption("p", "pause", false, "pause (background) the PRIMARY thread")
-                .addOption("r", "resume", false, "resume (foreground) the PRIMARY thread");
+                .addOption("r", "resume", false, "resume (foreground) the PRIMARY thread")
 
-        final CommandLine invocation;
-        try {
-            invocation = new DefaultParser().parse(opts, args);
-        } catch (MissingArgumentException e) {
-            err.println(e.getMessage());
-            exit(1);
-            return;
-        }
+                .addOption(Option.builder()
+                        .longOpt("offset")
+                        .hasArg(true)
+                        .argName("N")
+                        .desc("skip the first N threads of the table")
+                        .build())
+                .addOption(Option.builder()
+                        .longOpt("limit")
+                        .hasArg(true)
+                        .argName("N")
+                        .desc("show at most N threads")
+                        .build())
+                .addOption(Option.builder()
+                        .longOpt("only")
+                        .hasArg(true)
+                        .argName("STATUS")
+                        .desc("only show live, exited or killed threads")
+                        .build())
+                .addOption(Option.builder()
+                        .longOpt("prefix")
+                        .hasArg(true)
+                        .argName("THREAD")
+                        .desc("only show THREAD and the threads under it")
+                        .build())
 
-        if (invocation.hasOption("h")) {
-            HelpFormatter formatter = new HelpFormatter();
-            formatter.printHelp("sl [-h] [-s|-k|-i|-ret [THREAD]] [-p|-r]", opts);
-            exit(0);
-            return;
+                .addOption(Option.builder()
+                        .longOpt("time")
+                        .hasArg(true)
+                        .optionalArg(true)
+                        .argName("THREAD")
+                        .desc("afterwards, show how long each thread, or THREAD and each thread under it, has run")
+                        .build())
+
+                .addOption(Option.builder()
+                        .longOpt("current")
+                        .desc("only print the running thread, if any, without changing or loading the database")
+                        .build())
+
+                .addOption(Option.builder()
+                        .longOpt("history")
+                        .hasArg(true)
+                        .argName("THREAD")
+                        .desc("list the days THREAD appears on across every database in SHOELACES_HOME")
+                        .build())
+                .addOption(Option.builder()
+                        .longOpt("report")
+                        .hasArg(true)
+                        .optionalArg(true)
+                        .argName("N")
+                        .desc("summarize every database in SHOELACES_HOME, listing the top N threads of each kind "
+                                + "(default " + Report.DEFAULT_TOP + ")")
+                        .build())
+
+                .addOption(Option.builder()
+                        .longOpt("batch")
+                        .hasArg(true)
+                        .optionalArg(true)
+                        .argName("FILE")
+                        .desc("apply newline-delimited JSON commands from FILE, or stdin, and save once")
+                        .build())
+                .addOption(Option.builder()
+                        .longOpt("save-every")
+                        .hasArg(true)
+                        .argName("N")
+                        .desc("with --batch, also save after every N commands")
+                        .build())
+
+                .addOption(Option.builder()
+                        .longOpt("convert")
+                        .hasArg(true)
+                        .argName("FILE")
+                        .desc("convert FILE between the JSON (.sldb) and binary (.slb) formats")
+                        .build())
+                .addOption(Option.builder()
+                        .longOpt("migrate")
+                        .numberOfArgs(2)
+                        .argName("FROM TO")
+                        .desc("copy the database in FROM into TO, each stored as its extension says "
+                                + "(.sldb, .slb or .slkv)")
+                        .build())
+
+                .addOption(Option.builder()
+                        .longOpt("daemon")
+                        .desc("keep the database in memory and serve other sl invocations until stopped")
+                        .build())
+
+                .addOption(Option.builder()
+                        .longOpt("stats")
+                        .desc("afterwards, show on stderr how long startup, load, the command and save took, "
+                                + "and how much they allocated")
+                        .build());
+    }
+
+    /**
+     * Apply a single parsed command to the database.
+     */
+    static void execute(final ShoeLaces db, final CommandLine invocation,
+                        final PrintStream out, final PrintStream err) {
+        try (Metrics.Span ignored = Metrics.span(Metrics.Operation.COMMAND)) {
+            executeCommand(db, invocation, out, err);
         }
+    }
+
+    private static void executeCommand(final ShoeLaces db, final CommandLine invocation,
+                                       final PrintStream out, final PrintStream err) {
 
         // add
-        else if (invocation.hasOption("s")) {
-            final String t = findThreadFromOption(db, invocation, "s");
+        if (invocation.hasOption("s")) {
+            final String t = findThreadFromOption(db, invocation, "s", out, err);
             out.println("spawning: " + t);
             db.spawn(t);
         }
 
         // kill
         else if (invocation.hasOption("k")) {
-            final String t = findThreadFromOption(db, invocation, "k");
+            final String t = findThreadFromOption(db, invocation, "k", out, err);
 
             if (!StringUtils.isEmpty(t)) {
                 out.println("killing: " + t);
@@ -133,14 +346,14 @@ public class App {
 
         // interrupt
         else if (invocation.hasOption("i")) {
-            final String t = findThreadFromOption(db, invocation, "i");
+            final String t = findThreadFromOption(db, invocation, "i", out, err);
             out.println("interrupted by: " + t);
             db.interrupt(t);
         }
 
         // exit
         else if (invocation.hasOption("ret")) {
-            final String returning = findThreadFromOption(db, invocation, "ret");
+            final String returning = findThreadFromOption(db, invocation, "ret", out, err);
             if (returning != null && !returning.equals("")) {
                 out.println("returning to: " + returning);
                 db.exit(returning);
@@ -150,6 +363,15 @@ public class App {
             }
         }
 
+        // subtrees
+        else if (invocation.hasOption("kill-tree")) {
+            final String prefix = invocation.getOptionValue("kill-tree");
+            out.println("killed " + db.killTree(prefix) + " under: " + prefix);
+        } else if (invocation.hasOption("exit-tree")) {
+            final String prefix = invocation.getOptionValue("exit-tree");
+            out.println("exited " + db.exitTree(prefix) + " under: " + prefix);
+        }
+
         // background
         else if (invocation.hasOption("p")) {
             if (db.isRunning()) {
@@ -171,8 +393,366 @@ public class App {
         } else {
             err.println("no args");
         }
+    }
+
+    static boolean isUndoOrRedo(final CommandLine invocation) {
+        return invocation.hasOption("undo") || invocation.hasOption("redo");
+    }
+
+    /**
+     * Undo or redo as many changes as the invocation asks, in memory. The caller saves the database with a rewrite
+     * and then the history.
+     *
+     * @return the number of changes undone or redone
+     */
+    static int undoOrRedo(final ShoeLaces db, final History history, final CommandLine invocation,
+                          final PrintStream out) throws IOException {
+        final boolean undo = invocation.hasOption("undo");
+        final int steps = parseInt(invocation.getOptionValue(undo ? "undo" : "redo", "1"));
+        if (steps < 1) {
+            throw new IllegalArgumentException("steps must be positive: " + steps);
+        }
+
+        final int moved = undo ? history.undo(db, steps) : history.redo(db, steps);
+        out.println((undo ? "undid " : "redid ") + moved + " of " + steps + " changes, running: " + db.current());
+        return moved;
+    }
 
-        db.save(file);
-        out.println(db.print());
+    static PrintOptions printOptions(final CommandLine invocation) {
+        final PrintOptions options = PrintOptions.all();
+        if (invocation.hasOption("offset")) {
+            options.offset(parseInt(invocation.getOptionValue("offset")));
+        }
+        if (invocation.hasOption("limit")) {
+            options.limit(parseInt(invocation.getOptionValue("limit")));
+        }
+        if (invocation.hasOption("only")) {
+            options.filter(PrintOptions.Filter.parse(invocation.getOptionValue("only")));
+        }
+        return options.prefix(invocation.getOptionValue("prefix"));
+    }
+
+    /**
+     * Write the table to {@code out} through a buffer, followed by a blank line.
+     */
+    static void print(final ShoeLaces db, final PrintOptions options, final PrintStream out) throws IOException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        db.print(writer, options);
+        writer.flush();
+        out.println();
+    }
+
+    private static void print(final MappedShoeLaces db, final PrintOptions options, final PrintStream out)
+            throws IOException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        db.print(writer, options);
+        writer.flush();
+        out.println();
+    }
+
+    /**
+     * If the invocation asks for {@code --time}, list the threads that have run, longest first, with their total.
+     */
+    static void time(final ShoeLaces db, final CommandLine invocation, final PrintStream out) {
+        if (!invocation.hasOption("time")) {
+            return;
+        }
+
+        final String prefix = invocation.getOptionValue("time");
+        final ThreadRegistry threads = db.threads();
+        final int[] tids = prefix != null ? threads.subtree(prefix) : null;
+        final int count = tids != null ? tids.length : threads.size();
+
+        final long[] spent = new long[count];
+        final Integer[] order = new Integer[count];
+        long total = 0L;
+        for (int i = 0; i < count; i++) {
+            spent[i] = db.timeSpent(tids != null ? tids[i] : i);
+            order[i] = i;
+            total += spent[i];
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(spent[b], spent[a]));
+
+        out.println("time spent" + (prefix != null ? " under " + prefix : "") + ":");
+        for (int i : order) {
+            if (spent[i] == 0L) {
+                break;
+            }
+            out.println(duration(spent[i]) + "  " + threads.name(tids != null ? tids[i] : i));
+        }
+        out.println(duration(total) + "  total");
+    }
+
+    /**
+     * @return e.g. {@code "  1:02:03"}, hours right-aligned so that a column of durations lines up
+     */
+    static String duration(final long millis) {
+        final long seconds = millis / 1000L;
+        return String.format(Locale.ROOT, "%3d:%02d:%02d", seconds / 3600L, seconds / 60L % 60L, seconds % 60L);
+    }
+
+    static void history(final Federation federation, final String thread, final PrintStream out) {
+        final SortedMap<String, ThreadStatus> history = federation.history(thread);
+        out.println("history of " + thread + " across " + federation.days().size() + " days in "
+                + federation.getHome() + ":");
+        for (Map.Entry<String, ThreadStatus> day : history.entrySet()) {
+            out.println(day.getKey() + "  " + day.getValue());
+        }
+
+        out.println("last interrupted: " + firstNonNull(federation.lastDay(thread, 'I'), "never"));
+        out.println("last exited: " + firstNonNull(federation.lastDay(thread, 'E'), "never"));
+        out.println("last killed: " + firstNonNull(federation.lastDay(thread, 'K'), "never"));
+    }
+
+    static void report(final Report.Tally tally, final int top, final PrintStream out) {
+        out.println("report across " + tally.days() + " databases, " + tally.threadCount() + " threads"
+                + (tally.skipped() > 0 ? " (" + tally.skipped() + " unreadable)" : "") + ":");
+
+        out.println();
+        out.println("most interrupted:");
+        for (Report.ThreadTally thread : tally.top(top, Report.ThreadTally::getInterrupts)) {
+            out.println(String.format("%8d  %s", thread.getInterrupts(), thread.getName()));
+        }
+
+        out.println();
+        out.println("most killed:");
+        for (Report.ThreadTally thread : tally.top(top, Report.ThreadTally::getKills)) {
+            out.println(String.format("%8d  %s (exited %d)", thread.getKills(), thread.getName(), thread.getExits()));
+        }
+        out.println(String.format(Locale.ROOT, "kills: %d, exits: %d, kill/exit ratio: %s",
+                tally.kills(), tally.exits(),
+                tally.exits() > 0L ? String.format(Locale.ROOT, "%.2f", (double) tally.kills() / tally.exits()) : "-"));
+
+        out.println();
+        out.println("longest lived:");
+        for (Report.ThreadTally thread : tally.top(top, Report.ThreadTally::getLifespan)) {
+            out.println(String.format("%8d  %s (%s to %s)",
+                    thread.getLifespan(), thread.getName(), thread.getFirst(), thread.getLast()));
+        }
+
+        out.println();
+        final double hours = tally.trackedMillis() / 3_600_000.0;
+        out.println(String.format(Locale.ROOT, "context switches: %d, %.1f a day, %s per tracked hour",
+                tally.switches(),
+                tally.days() > 0 ? (double) tally.switches() / tally.days() : 0.0,
+                hours > 0.0 ? String.format(Locale.ROOT, "%.1f", tally.switches() / hours) : "-"));
+    }
+
+    static boolean isCommand(final CommandLine invocation) {
+        for (String opt : new String[]{"s", "k", "i", "ret", "kill-tree", "exit-tree", "undo", "redo", "p", "r"}) {
+            if (invocation.hasOption(opt)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Rewrite a database in the other storage format, next to the original.
+     *
+     * @return the file written
+     */
+    static File convert(final File from) throws IOException, ClassNotFoundException {
+        final String base = FilenameUtils.removeExtension(from.getPath());
+        final File to = new File(base + (BinaryCodec.isBinary(from) ? ".sldb" : BinaryCodec.EXTENSION));
+
+        migrate(new FileStore(from), new FileStore(to));
+        return to;
+    }
+
+    /**
+     * Copy a database from one store to another, holding both databases' locks.
+     *
+     * @return the number of threads copied
+     */
+    static int migrate(final ShoeLacesStore from, final ShoeLacesStore to) throws IOException, ClassNotFoundException {
+        if (!from.getFile().exists()) {
+            throw new FileNotFoundException(from.getFile().toString());
+        }
+
+        final File source = from.getFile().getCanonicalFile();
+        final File target = to.getFile().getCanonicalFile();
+        if (source.equals(target)) {
+            throw new IllegalArgumentException("cannot migrate a database onto itself: " + source);
+        }
+
+        // always lock in the same order, so that migrations in opposite directions cannot hold one lock each
+        final boolean sourceFirst = source.getPath().compareTo(target.getPath()) < 0;
+        try (DatabaseLock first = DatabaseLock.acquire(sourceFirst ? source : target);
+             DatabaseLock second = DatabaseLock.acquire(sourceFirst ? target : source);
+             ShoeLacesStore reading = from;
+             ShoeLacesStore writing = to) {
+            final ShoeLaces db = from.load();
+            to.write(db);
+            Timeline.read(from.getFile()).write(to.getFile());
+            return db.threads().size();
+        }
+    }
+
+    public static void main(String[] args) throws IOException, ParseException, ClassNotFoundException {
+        final File file = resolveFile();
+        final Options opts = options();
+
+        final CommandLine invocation;
+        try {
+            invocation = new DefaultParser().parse(opts, args);
+        } catch (MissingArgumentException e) {
+            err.println(e.getMessage());
+            exit(1);
+            return;
+        }
+
+        if (invocation.hasOption("h")) {
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp(
+                    "sl [-h] [-s|-k|-i|-ret [THREAD]|--kill-tree|--exit-tree THREAD|--undo|--redo [N]] [-p|-r] "
+                            + "[--offset N] [--limit N] [--only STATUS] [--prefix THREAD] [--time [THREAD]] "
+                            + "[--current|--history THREAD|--report [N]|--batch [FILE]|--daemon|--convert FILE"
+                            + "|--migrate FROM TO] [--stats]", opts);
+            exit(0);
+            return;
+        }
+
+        if (invocation.hasOption("current")) {
+            // for shell prompts: no daemon round trip, no waiting on the lock and no save
+            final String current = CurrentFile.read(resolveStore(file));
+            if (current != null) {
+                out.println(current);
+            }
+            return;
+        }
+
+        final boolean stats = invocation.hasOption("stats");
+        if (stats) {
+            Metrics.enable();
+            Metrics.recordStartup();
+        }
+
+        if (invocation.hasOption("convert")) {
+            final File from = new File(invocation.getOptionValue("convert"));
+            out.println("converted " + from + " to " + convert(from));
+            return;
+        }
+
+        if (invocation.hasOption("migrate")) {
+            final String[] files = invocation.getOptionValues("migrate");
+            final File from = new File(files[0]);
+            final File to = new File(files[1]);
+            try {
+                out.println("migrated " + migrate(resolveStore(from), resolveStore(to)) + " threads from " + from
+                        + " to " + to);
+            } catch (IllegalArgumentException e) {
+                err.println(e.getMessage());
+                exit(1);
+            }
+            return;
+        }
+
+        if (invocation.hasOption("history")) {
+            history(Federation.open(resolveHome().toFile()), invocation.getOptionValue("history"), out);
+            return;
+        }
+
+        if (invocation.hasOption("report")) {
+            final int top = parseInt(invocation.getOptionValue("report", String.valueOf(Report.DEFAULT_TOP)));
+            report(Report.run(resolveHome().toFile()), top, out);
+            return;
+        }
+
+        if (invocation.hasOption("batch")) {
+            final String source = invocation.getOptionValue("batch", "-");
+            final int saveEvery = parseInt(invocation.getOptionValue("save-every", "0"));
+            try (Reader commands = source.equals("-")
+                    ? new InputStreamReader(in, StandardCharsets.UTF_8)
+                    : new InputStreamReader(new FileInputStream(source), StandardCharsets.UTF_8)) {
+                // a batch always leaves its numbers in the .metrics file
+                Metrics.enable();
+                final int failed = Batch.run(resolveStore(file), commands, saveEvery, out, err);
+                if (stats) {
+                    Metrics.printTable(err);
+                }
+                exit(failed > 0 ? 1 : 0);
+            }
+            return;
+        }
+
+        if (invocation.hasOption("daemon")) {
+            Metrics.enable();
+            Metrics.registerMBean();
+            Daemon.serve(resolveStore(file));
+            return;
+        }
+
+        final Integer forwarded = Daemon.forward(file, args, out, err);
+        if (forwarded != null) {
+            exit(forwarded);
+            return;
+        }
+
+        try {
+            run(resolveStore(file), invocation, out, err);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            err.println(e.getMessage());
+            exit(1);
+        }
+
+        if (stats) {
+            Metrics.printTable(err);
+        }
+    }
+
+    /**
+     * Load the database, apply the command, save and print the result, all in this process. Other invocations against
+     * the same database wait until this one has saved.
+     */
+    static void run(final ShoeLacesStore store, final CommandLine invocation,
+                    final PrintStream out, final PrintStream err) throws IOException, ClassNotFoundException {
+        final PrintOptions printOptions = printOptions(invocation);
+        final File file = store.getFile();
+
+        if (store instanceof FileStore && BinaryCodec.isBinary(file) && file.length() > 0L && !isCommand(invocation)) {
+            // nothing will change, so print straight from the mapped file and skip the save
+            out.println("using db file: " + file);
+            err.println("no args");
+            final MappedShoeLaces mapped;
+            try (Metrics.Span ignored = Metrics.span(Metrics.Operation.LOAD)) {
+                mapped = BinaryCodec.open(file);
+            }
+            if (!invocation.hasOption("time")) {
+                print(mapped, printOptions, out);
+                return;
+            }
+
+            // times are kept per tid across the whole table, so that needs the database decoded
+            final ShoeLaces db;
+            try (Metrics.Span ignored = Metrics.span(Metrics.Operation.LOAD)) {
+                db = mapped.toShoeLaces();
+                db.timeline(Timeline.read(file));
+            }
+            print(db, printOptions, out);
+            time(db, invocation, out);
+            return;
+        }
+
+        final ShoeLaces db;
+        try (DatabaseLock ignored = DatabaseLock.acquire(file);
+             ShoeLacesStore closing = store) {
+            db = open(store, out, err);
+
+            final History history = new History(file);
+            if (isUndoOrRedo(invocation)) {
+                undoOrRedo(db, history, invocation, out);
+                save(store, db, true);
+                history.save();
+            } else {
+                history.begin(db);
+                execute(db, invocation, out, err);
+                save(store, db);
+                history.commit(db);
+            }
+        }
+        // this process is done changing db, so render it without holding up other invocations
+        print(db, printOptions, out);
+        time(db, invocation, out);
     }
 }
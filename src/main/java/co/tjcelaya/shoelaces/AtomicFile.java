@@ -0,0 +1,72 @@
+package co.tjcelaya.shoelaces;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Whole-file replacement that readers and crashes only ever see as the old or the new contents: the data goes to a
+ * temporary file next to the target, optionally synced, which is then renamed over the target.
+ */
+final class AtomicFile {
+
+    static final String TEMP_EXTENSION = ".tmp";
+
+    interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private AtomicFile() {
+    }
+
+    static void write(final File file, final boolean sync, final Content content) throws IOException {
+        final File temp = new File(file.getPath() + TEMP_EXTENSION);
+        try {
+            writeTo(temp, sync, content);
+            move(temp, file, sync);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Write {@code file} in place, syncing its data before returning if asked to.
+     */
+    static void writeTo(final File file, final boolean sync, final Content content) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(file)) {
+            final BufferedOutputStream out = new BufferedOutputStream(fos);
+            content.writeTo(out);
+            out.flush();
+            if (sync) {
+                fos.getFD().sync();
+            }
+        }
+    }
+
+    /**
+     * Rename {@code from} over {@code to} in one step, then, if asked to, make the rename itself durable where the
+     * platform allows.
+     */
+    static void move(final File from, final File to, final boolean sync) throws IOException {
+        try {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        if (sync) {
+            syncDirectory(to.getAbsoluteFile().getParentFile());
+        }
+    }
+
+    static void syncDirectory(final File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+            // not every platform can open or sync a directory; the rename is still atomic
+        }
+    }
+}
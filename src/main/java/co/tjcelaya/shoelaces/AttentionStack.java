@@ -0,0 +1,459 @@
+package co.tjcelaya.shoelaces;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The attention stack: a doubly linked list of thread names, most recent first, with a name-to-node index so that
+ * membership checks, removal and moving a thread to the top are all constant time.
+ * <p>
+ * A thread name appears at most once. The {@link #PAUSE_MARKER} may appear any number of times and is not indexed.
+ * <p>
+ * Only entries on the stack are indexed, so memory follows the depth of the stack rather than every thread that was
+ * ever on it. The last node taken off is kept for the next push, so a thread coming off the stack and another going on
+ * allocates nothing.
+ * <p>
+ * While {@link #trackChanges() tracking}, each node knows how many entries were below it when it was linked, which is
+ * exact for every node below the lowest change since tracking started and all a store needs to know.
+ */
+public class AttentionStack implements Iterable<String>, Serializable {
+
+    public static final String PAUSE_MARKER = "";
+
+    private static final class Node implements Serializable {
+        private String name;
+        private Node above;
+        private Node below;
+        /**
+         * Entries below this one when it was linked, or when tracking last started.
+         */
+        private transient int position;
+
+        private Node(final String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * Where {@link #find(String, int)} found no such place.
+     */
+    private static final Node MISSING = new Node(PAUSE_MARKER);
+
+    /**
+     * One entry put on top of the stack or taken off it, for undo. A removal says where the entry was by the nearest
+     * thread below it, its anchor, and the pause markers in between, rather than by its depth, which would take a walk
+     * to the top to find.
+     */
+    static final class Edit {
+        final boolean removed;
+        final String name;
+        /**
+         * The nearest thread below a removed entry, or null if there was none.
+         */
+        final String anchor;
+        /**
+         * The pause markers between the anchor and a removed entry.
+         */
+        final int markers;
+
+        private Edit(final boolean removed, final String name, final String anchor, final int markers) {
+            this.removed = removed;
+            this.name = name;
+            this.anchor = anchor;
+            this.markers = markers;
+        }
+    }
+
+    private final HashMap<String, Node> index = new HashMap<>();
+    private Node top;
+    private Node bottom;
+    private int size;
+    private int markers;
+    private transient Node spare;
+    private transient boolean tracking;
+    private transient int unchanged;
+    private transient List<Edit> edits;
+
+    public AttentionStack() {
+    }
+
+    /**
+     * Rebuild from a top-first list. Repeated thread names, which older versions could not produce but a hand-edited
+     * file might contain, keep only their topmost position.
+     */
+    @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+    static AttentionStack fromList(final List<String> names) {
+        final AttentionStack stack = new AttentionStack();
+        for (String name : names) {
+            stack.addBottom(name == null ? PAUSE_MARKER : name);
+        }
+        return stack;
+    }
+
+    /**
+     * Append below everything else, for rebuilding a stack top first. A thread already on the stack is left where it
+     * is.
+     */
+    void addBottom(final String name) {
+        if (name.equals(PAUSE_MARKER) || linked(name) == null) {
+            linkBottom(node(name));
+        }
+    }
+
+    /**
+     * Swap each name on the stack for the registry's copy of it, so that a loaded database holds each name once.
+     */
+    void intern(final ThreadRegistry threads) {
+        for (Node n = top; n != null; n = n.below) {
+            final int tid = n.name.equals(PAUSE_MARKER) ? -1 : threads.tid(n.name);
+            if (tid >= 0 && threads.name(tid) != n.name) {
+                index.remove(n.name);
+                n.name = threads.name(tid);
+                index.put(n.name, n);
+            }
+        }
+    }
+
+    /**
+     * @return the names top first
+     */
+    @JsonValue
+    List<String> toList() {
+        final List<String> names = new ArrayList<>(size);
+        for (String name : this) {
+            names.add(name);
+        }
+        return names;
+    }
+
+    public void push(final String name) {
+        if (!name.equals(PAUSE_MARKER) && linked(name) != null) {
+            throw new IllegalStateException("already on the attention stack: " + name);
+        }
+
+        linkTop(node(name));
+    }
+
+    /**
+     * Put the thread on top, moving it if it is already on the stack.
+     */
+    public void moveToTop(final String name) {
+        final Node node = linked(name);
+        if (node == null) {
+            push(name);
+            return;
+        }
+
+        if (node != top) {
+            detach(node);
+            attachTop(node, size - 1);
+        }
+    }
+
+    public String pop() {
+        if (top == null) {
+            throw new NoSuchElementException();
+        }
+
+        final Node node = top;
+        unlink(node);
+        return node.name;
+    }
+
+    public String peek() {
+        return top == null ? null : top.name;
+    }
+
+    public boolean contains(final String name) {
+        return name.equals(PAUSE_MARKER) ? markers > 0 : linked(name) != null;
+    }
+
+    /**
+     * Remove the thread wherever it is on the stack, or the topmost pause marker.
+     *
+     * @return true if something was removed
+     */
+    public boolean remove(final String name) {
+        if (name.equals(PAUSE_MARKER)) {
+            for (Node n = top; n != null; n = n.below) {
+                if (n.name.equals(PAUSE_MARKER)) {
+                    unlink(n);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        final Node node = linked(name);
+        if (node == null) {
+            return false;
+        }
+
+        unlink(node);
+        return true;
+    }
+
+    /**
+     * Start counting how many entries at the bottom stay where they are from here on, for stores that save only the
+     * rest.
+     */
+    void trackChanges() {
+        tracking = true;
+        unchanged = size;
+        int position = 0;
+        for (Node n = bottom; n != null; n = n.above) {
+            n.position = position++;
+        }
+    }
+
+    /**
+     * @return the number of bottom entries untouched since tracking started, or 0 when not tracking
+     */
+    int unchanged() {
+        return tracking ? unchanged : 0;
+    }
+
+    /**
+     * Start listing every entry pushed on top or removed from here on.
+     */
+    void recordEdits() {
+        edits = new ArrayList<>();
+    }
+
+    /**
+     * Stop listing edits.
+     *
+     * @return the edits since {@link #recordEdits()}, oldest first; a move to the top is a removal then a push
+     */
+    List<Edit> takeEdits() {
+        final List<Edit> taken = edits != null ? edits : Collections.emptyList();
+        edits = null;
+        return taken;
+    }
+
+    /**
+     * Link the name back in where an {@link Edit} says it was removed from, as when undoing the removal.
+     *
+     * @return false, changing nothing, if the anchor and markers are not there or the thread is already on the stack
+     */
+    boolean insertAbove(final String name, final String anchor, final int markers) {
+        if (!name.equals(PAUSE_MARKER) && linked(name) != null) {
+            return false;
+        }
+        final Node below = find(anchor, markers);
+        if (below == MISSING) {
+            return false;
+        }
+
+        final Node node = node(name);
+        final Node above = below != null ? below.above : bottom;
+        node.position = below != null ? below.position + 1 : 0;
+        node.below = below;
+        node.above = above;
+        if (below != null) {
+            below.above = node;
+        } else {
+            bottom = node;
+        }
+        if (above != null) {
+            above.below = node;
+        } else {
+            top = node;
+        }
+        indexed(node);
+        unchanged = Math.min(unchanged, node.position);
+        return true;
+    }
+
+    /**
+     * Unlink the entry an {@link Edit} says was removed, as when redoing the removal.
+     *
+     * @return false, changing nothing, if that entry is not there
+     */
+    boolean removeAbove(final String name, final String anchor, final int markers) {
+        final Node below = find(anchor, markers);
+        final Node node = below == MISSING ? null : below != null ? below.above : bottom;
+        if (node == null || !node.name.equals(name)) {
+            return false;
+        }
+
+        unlink(node);
+        return true;
+    }
+
+    /**
+     * @return the node at {@code markers} pause markers above the anchor, null for the bottom of the stack itself, or
+     * {@link #MISSING}
+     */
+    private Node find(final String anchor, final int markers) {
+        Node found = null;
+        if (anchor != null) {
+            found = linked(anchor);
+            if (found == null) {
+                return MISSING;
+            }
+        }
+
+        for (int i = 0; i < markers; i++) {
+            found = found != null ? found.above : bottom;
+            if (found == null || !found.name.equals(PAUSE_MARKER)) {
+                return MISSING;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return the number of threads in the name index, for tests
+     */
+    int indexed() {
+        return index.size();
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Iterates top first.
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private Node next = top;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public String next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                final String name = next.name;
+                next = next.below;
+                return name;
+            }
+        };
+    }
+
+    public Stream<String> stream() {
+        return StreamSupport.stream(
+                Spliterators.spliterator(iterator(), size, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * @return the thread's node if it is on the stack
+     */
+    private Node linked(final String name) {
+        return index.get(name);
+    }
+
+    /**
+     * @return a node to link for the name: the last one taken off the stack, or a new one
+     */
+    private Node node(final String name) {
+        if (spare == null) {
+            return new Node(name);
+        }
+
+        final Node node = spare;
+        spare = null;
+        node.name = name;
+        return node;
+    }
+
+    private void linkTop(final Node node) {
+        attachTop(node, size);
+        indexed(node);
+    }
+
+    private void linkBottom(final Node node) {
+        unchanged = 0;
+        node.position = 0;
+        node.below = null;
+        node.above = bottom;
+        if (bottom != null) {
+            bottom.below = node;
+        } else {
+            top = node;
+        }
+        bottom = node;
+        indexed(node);
+    }
+
+    private void unlink(final Node node) {
+        detach(node);
+        size--;
+        if (node.name.equals(PAUSE_MARKER)) {
+            markers--;
+        } else {
+            index.remove(node.name);
+        }
+        spare = node;
+    }
+
+    private void indexed(final Node node) {
+        size++;
+        if (node.name.equals(PAUSE_MARKER)) {
+            markers++;
+        } else {
+            index.put(node.name, node);
+        }
+    }
+
+    private void attachTop(final Node node, final int below) {
+        if (edits != null) {
+            edits.add(new Edit(false, node.name, null, 0));
+        }
+        unchanged = Math.min(unchanged, below);
+        node.position = below;
+        node.above = null;
+        node.below = top;
+        if (top != null) {
+            top.above = node;
+        } else {
+            bottom = node;
+        }
+        top = node;
+    }
+
+    private void detach(final Node node) {
+        unchanged = Math.min(unchanged, node.position);
+        if (edits != null) {
+            int markers = 0;
+            Node anchor = node.below;
+            while (anchor != null && anchor.name.equals(PAUSE_MARKER)) {
+                markers++;
+                anchor = anchor.below;
+            }
+            edits.add(new Edit(true, node.name, anchor != null ? anchor.name : null, markers));
+        }
+
+        if (node.above != null) {
+            node.above.below = node.below;
+        } else {
+            top = node.below;
+        }
+
+        if (node.below != null) {
+            node.below.above = node.above;
+        } else {
+            bottom = node.above;
+        }
+
+        node.above = null;
+        node.below = null;
+    }
+}
@@ -0,0 +1,199 @@
+package co.tjcelaya.shoelaces;
+
+import com.fasterxml.jackson.core.*;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.io.*;
+import java.util.NoSuchElementException;
+
+import static java.lang.Integer.parseInt;
+
+/**
+ * Applies a stream of commands to one loaded database, saving once at the end (or every N commands).
+ * <p>
+ * Commands are newline-delimited JSON objects, e.g. {@code {"id":"7","op":"interrupt","thread":"proj.task"}}, where
+ * {@code op} is one of spawn, interrupt, exit, kill, exit-tree, kill-tree, pause or resume, {@code thread} may be a
+ * name or a tid and may be left out of exit and kill to mean the running thread, and the optional {@code id} is echoed
+ * back. Each command produces one result line: {@code {"id":"7","ok":true,"current":"proj.task"}} or
+ * {@code {"id":"7","ok":false,"error":"..."}}.
+ */
+final class Batch {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private final ShoeLaces db;
+    private final JsonGenerator results;
+
+    private int failed;
+
+    private Batch(final ShoeLaces db, final JsonGenerator results) {
+        this.db = db;
+        this.results = results;
+    }
+
+    /**
+     * @param saveEvery save after this many commands, or only at the end if not positive
+     * @return the number of commands that failed
+     */
+    static int run(final ShoeLacesStore store, final Reader commands, final int saveEvery,
+                   final PrintStream out, final PrintStream err) throws IOException, ClassNotFoundException {
+        try (DatabaseLock ignored = DatabaseLock.acquire(store.getFile());
+             ShoeLacesStore closing = store;
+             JsonGenerator results = FACTORY.createGenerator(new OutputStreamWriter(out, "UTF-8"))) {
+            results.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            results.setRootValueSeparator(null);
+
+            final ShoeLaces db = App.open(store, err, err);
+            final History history = new History(store.getFile());
+            history.begin(db); // the whole batch is one change to undo
+            final Batch batch = new Batch(db, results);
+            final BufferedReader lines = new BufferedReader(commands);
+
+            int applied = 0;
+            String line;
+            while ((line = lines.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+
+                batch.apply(line);
+                results.flush();
+
+                if (saveEvery > 0 && ++applied % saveEvery == 0) {
+                    App.save(store, db);
+                }
+            }
+
+            App.save(store, db);
+            history.commit(db);
+            if (Metrics.isEnabled()) {
+                Metrics.dump(store.getFile());
+            }
+            return batch.failed;
+        }
+    }
+
+    private void apply(final String line) throws IOException {
+        String id = null;
+        try {
+            String op = null;
+            String thread = null;
+
+            try (JsonParser parser = FACTORY.createParser(line)) {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    throw new IllegalArgumentException("command is not a JSON object");
+                }
+
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String field = parser.getCurrentName();
+                    final JsonToken value = parser.nextToken();
+                    if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+                        parser.skipChildren();
+                        continue;
+                    }
+
+                    final String text = value == JsonToken.VALUE_NULL ? null : parser.getText();
+                    if ("id".equals(field)) {
+                        id = text;
+                    } else if ("op".equals(field)) {
+                        op = text;
+                    } else if ("thread".equals(field)) {
+                        thread = text;
+                    }
+                }
+            }
+
+            if (op == null) {
+                throw new IllegalArgumentException("missing op");
+            }
+
+            execute(op, resolve(thread));
+        } catch (JsonProcessingException e) {
+            fail(id, "malformed command: " + e.getOriginalMessage());
+            return;
+        } catch (RuntimeException e) {
+            fail(id, e.getMessage() != null ? e.getMessage() : e.toString());
+            return;
+        }
+
+        results.writeStartObject();
+        writeId(id);
+        results.writeBooleanField("ok", true);
+        results.writeStringField("current", db.current());
+        results.writeEndObject();
+        results.writeRaw('\n');
+    }
+
+    private String resolve(final String thread) {
+        if (thread == null || thread.isEmpty()) {
+            return null;
+        }
+
+        return NumberUtils.isDigits(thread) ? db.lookup(parseInt(thread)) : thread;
+    }
+
+    private void execute(final String op, final String thread) {
+        switch (op) {
+            case "spawn":
+                db.spawn(required(op, thread));
+                break;
+            case "interrupt":
+                db.interrupt(required(op, thread));
+                break;
+            case "exit":
+                if (thread == null) {
+                    db.exit();
+                } else {
+                    db.exit(thread);
+                }
+                break;
+            case "kill":
+                if (thread == null) {
+                    db.kill();
+                } else {
+                    db.kill(thread);
+                }
+                break;
+            case "exit-tree":
+                db.exitTree(required(op, thread));
+                break;
+            case "kill-tree":
+                db.killTree(required(op, thread));
+                break;
+            case "pause":
+                if (!db.isRunning()) {
+                    throw new IllegalStateException("not running");
+                }
+                db.pause();
+                break;
+            case "resume":
+                db.resume();
+                break;
+            default:
+                throw new IllegalArgumentException("unknown op: " + op);
+        }
+    }
+
+    private static String required(final String op, final String thread) {
+        if (thread == null) {
+            throw new NoSuchElementException(op + " needs a thread");
+        }
+        return thread;
+    }
+
+    private void fail(final String id, final String error) throws IOException {
+        failed++;
+        results.writeStartObject();
+        writeId(id);
+        results.writeBooleanField("ok", false);
+        results.writeStringField("error", error);
+        results.writeEndObject();
+        results.writeRaw('\n');
+    }
+
+    private void writeId(final String id) throws IOException {
+        if (id != null) {
+            results.writeStringField("id", id);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package co.tjcelaya.shoelaces;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writer for the binary {@code .slb} format, and entry point for reading it.
+ * <p>
+ * Layout, all integers big-endian:
+ * <pre>
+ * header     magic "SLB1", int version, int name ref, int thread count, int attention count, int length of the
+ *            longest thread name
+ * threads    per tid: int name ref, int status ref
+ * attention  per entry, top first: int name ref, or -1 for the pause marker
+ * pool       per distinct string: int byte length, UTF-8 bytes
+ * </pre>
+ * A "ref" is the absolute file offset of a pool entry. Every distinct string is stored once, so a thread's name on
+ * the attention stack shares its entry with the thread table.
+ */
+public final class BinaryCodec {
+
+    public static final String EXTENSION = ".slb";
+
+    static final int MAGIC = 0x534c4231; // "SLB1"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 24;
+    static final int THREAD_ENTRY_BYTES = 8;
+    static final int ATTENTION_ENTRY_BYTES = 4;
+    static final int PAUSE_REF = -1;
+
+    private BinaryCodec() {
+    }
+
+    public static boolean isBinary(final File file) {
+        return file.getName().endsWith(EXTENSION);
+    }
+
+    /**
+     * Write the database, synced, replacing the file atomically so that readers holding a mapping of the old file are
+     * not affected.
+     */
+    public static void write(final ShoeLaces db, final File file) throws IOException {
+        AtomicFile.write(file, true, out -> write(db, out));
+    }
+
+    public static void write(final ShoeLaces db, final OutputStream stream) throws IOException {
+        final ThreadRegistry threads = db.threads();
+        final AttentionStack attention = db.attention();
+
+        final long poolStart = HEADER_BYTES
+                + (long) threads.size() * THREAD_ENTRY_BYTES
+                + (long) attention.size() * ATTENTION_ENTRY_BYTES;
+        final Pool pool = new Pool(poolStart);
+
+        final int nameRef = pool.ref(db.getName());
+        final int[] threadRefs = new int[threads.size() * 2];
+        int longestName = 0;
+        for (int tid = 0; tid < threads.size(); tid++) {
+            longestName = Math.max(longestName, threads.name(tid).length());
+            threadRefs[tid * 2] = pool.ref(threads.name(tid));
+            threadRefs[tid * 2 + 1] = pool.ref(threads.status(tid).toString());
+        }
+
+        final DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(nameRef);
+        out.writeInt(threads.size());
+        out.writeInt(attention.size());
+        out.writeInt(longestName);
+
+        for (int ref : threadRefs) {
+            out.writeInt(ref);
+        }
+
+        for (String name : attention) {
+            out.writeInt(name.equals(AttentionStack.PAUSE_MARKER) ? PAUSE_REF : pool.ref(name));
+        }
+
+        pool.bytes.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Map the file for lazy, read-only access.
+     */
+    public static MappedShoeLaces open(final File file) throws IOException {
+        return MappedShoeLaces.open(file);
+    }
+
+    /**
+     * Decode the whole file into a mutable database.
+     */
+    public static ShoeLaces read(final File file) throws IOException {
+        return open(file).toShoeLaces();
+    }
+
+    private static final class Pool {
+        private final long start;
+        private final Map<String, Integer> refs = new HashMap<>();
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        private Pool(final long start) {
+            this.start = start;
+        }
+
+        private int ref(final String s) throws IOException {
+            final Integer existing = refs.get(s);
+            if (existing != null) {
+                return existing;
+            }
+
+            final long ref = start + bytes.size();
+            if (ref > Integer.MAX_VALUE) {
+                throw new IOException("binary database too large");
+            }
+
+            final byte[] encoded = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(encoded.length);
+            out.write(encoded);
+            refs.put(s, (int) ref);
+            return (int) ref;
+        }
+    }
+}
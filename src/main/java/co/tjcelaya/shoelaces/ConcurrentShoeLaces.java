@@ -0,0 +1,307 @@
+package co.tjcelaya.shoelaces;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A database that any number of threads in one process can use at once, without a lock.
+ * <p>
+ * Commands are applied one at a time by a single writer. Whichever caller finds no writer active, by one
+ * compare-and-set, becomes the writer: it applies its own command and those queued by the callers waiting behind it,
+ * then steps down. The other callers queue their command and wait for it to be done. Each command sees and leaves the
+ * attention stack, the thread table and the timeline consistent with each other. A burst of commands from many
+ * threads needs one hand-over rather than one per command.
+ * <p>
+ * Reads go through an immutable {@link Snapshot}. The writer copies it once after a change, and every reader shares
+ * it until the next change. {@link #current()} is published after every command and needs no snapshot.
+ */
+public final class ConcurrentShoeLaces {
+
+    /**
+     * Commands one writer applies before stepping down, so a caller whose own command is done is not kept busy by
+     * others' for long.
+     */
+    private static final int BATCH = 64;
+
+    private final ShoeLaces db;
+    private final ConcurrentLinkedQueue<Command<?>> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean writing = new AtomicBoolean();
+
+    /**
+     * Commands applied so far; written only by the writer.
+     */
+    private volatile long version;
+    private volatile String current;
+    private volatile Snapshot snapshot;
+
+    /**
+     * @param db the database to share, which must not be used directly from here on
+     */
+    public ConcurrentShoeLaces(final ShoeLaces db) {
+        this.db = Objects.requireNonNull(db);
+        this.current = db.current();
+    }
+
+    private static final class Command<T> {
+        private final Function<ShoeLaces, T> body;
+        private final boolean mutates;
+        private T result;
+        private Throwable failure;
+        private volatile boolean done;
+
+        private Command(final Function<ShoeLaces, T> body, final boolean mutates) {
+            this.body = body;
+            this.mutates = mutates;
+        }
+    }
+
+    private <T> T submit(final Command<T> command) {
+        if (writing.compareAndSet(false, true)) {
+            // uncontended: apply it straight away, then anything queued meanwhile
+            try {
+                apply(command);
+                drain();
+            } finally {
+                writing.set(false);
+            }
+        } else {
+            queue.add(command);
+        }
+
+        while (!command.done) {
+            if (writing.compareAndSet(false, true)) {
+                try {
+                    drain();
+                } finally {
+                    writing.set(false);
+                }
+            } else {
+                Thread.yield();
+            }
+        }
+
+        if (command.failure instanceof RuntimeException) {
+            throw (RuntimeException) command.failure;
+        }
+        if (command.failure instanceof Error) {
+            throw (Error) command.failure;
+        }
+        return command.result;
+    }
+
+    private void drain() {
+        Command<?> command;
+        for (int i = 0; i < BATCH && (command = queue.poll()) != null; i++) {
+            apply(command);
+        }
+    }
+
+    private <T> void apply(final Command<T> command) {
+        try {
+            command.result = command.body.apply(db);
+        } catch (RuntimeException | Error e) {
+            command.failure = e;
+        }
+
+        if (command.mutates) {
+            version++;
+            current = db.current();
+        }
+        command.done = true;
+    }
+
+    /**
+     * Run {@code command} against the database as one step, with no other command in between. The command runs on
+     * whichever thread is the writer at the time, and must not keep the database or hand it to another thread.
+     */
+    public <T> T atomically(final Function<ShoeLaces, T> command) {
+        return submit(new Command<>(command, true));
+    }
+
+    // Mutations, as on ShoeLaces
+
+    public void spawn(final String thread) {
+        atomically(db -> {
+            db.spawn(thread);
+            return null;
+        });
+    }
+
+    public void interrupt(final String thread) {
+        atomically(db -> {
+            db.interrupt(thread);
+            return null;
+        });
+    }
+
+    public void exit() {
+        atomically(db -> {
+            db.exit();
+            return null;
+        });
+    }
+
+    public void exit(final String thread) {
+        atomically(db -> {
+            db.exit(thread);
+            return null;
+        });
+    }
+
+    public void kill() {
+        atomically(db -> {
+            db.kill();
+            return null;
+        });
+    }
+
+    public void kill(final String thread) {
+        atomically(db -> {
+            db.kill(thread);
+            return null;
+        });
+    }
+
+    public int killTree(final String prefix) {
+        return atomically(db -> db.killTree(prefix));
+    }
+
+    public int exitTree(final String prefix) {
+        return atomically(db -> db.exitTree(prefix));
+    }
+
+    public void pause() {
+        atomically(db -> {
+            db.pause();
+            return null;
+        });
+    }
+
+    public void resume() {
+        atomically(db -> {
+            db.resume();
+            return null;
+        });
+    }
+
+    /**
+     * Register a listener to be told about every successful mutation. It is called by the writer, one transition at
+     * a time, on whichever thread that is.
+     */
+    public void addListener(final Consumer<Transition> listener) {
+        atomically(db -> {
+            db.addListener(listener);
+            return null;
+        });
+    }
+
+    public void removeListener(final Consumer<Transition> listener) {
+        atomically(db -> {
+            db.removeListener(listener);
+            return null;
+        });
+    }
+
+    // Reads
+
+    /**
+     * @return the running thread as of the latest command, or null if paused or empty
+     */
+    public String current() {
+        return current;
+    }
+
+    /**
+     * @return the database as of the latest command, shared with every other reader until the next change
+     */
+    public Snapshot snapshot() {
+        final long seen = version;
+        final Snapshot latest = snapshot;
+        if (latest != null && latest.version == seen) {
+            return latest;
+        }
+
+        return submit(new Command<>(db -> {
+            if (snapshot == null || snapshot.version != version) {
+                snapshot = new Snapshot(db.copy(), version);
+            }
+            return snapshot;
+        }, false));
+    }
+
+    /**
+     * A copy of the database at one point between commands, which never changes.
+     */
+    public static final class Snapshot {
+        private final ShoeLaces db;
+        private final long version;
+
+        private Snapshot(final ShoeLaces db, final long version) {
+            this.db = db;
+            this.version = version;
+        }
+
+        /**
+         * @return the number of commands applied before the copy was made
+         */
+        public long version() {
+            return version;
+        }
+
+        public String getName() {
+            return db.getName();
+        }
+
+        public String current() {
+            return db.current();
+        }
+
+        public boolean isRunning() {
+            return db.isRunning();
+        }
+
+        public boolean isPaused() {
+            return db.isPaused();
+        }
+
+        /**
+         * @return the attention stack, top first, with an empty string for each pause
+         */
+        public List<String> attention() {
+            return Collections.unmodifiableList(db.attention().toList());
+        }
+
+        public int size() {
+            return db.threads().size();
+        }
+
+        /**
+         * @return the thread's tid, or -1 if there is no such thread
+         */
+        public int tid(final String thread) {
+            return db.tid(thread);
+        }
+
+        /**
+         * @return the thread's status in its text form, or null if there is no such thread
+         */
+        public String status(final String thread) {
+            final ThreadStatus status = db.threads().status(thread);
+            return status == null ? null : status.toString();
+        }
+
+        public String print() {
+            return db.print();
+        }
+
+        public void print(final Appendable out, final PrintOptions options) throws IOException {
+            db.print(out, options);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package co.tjcelaya.shoelaces;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The running thread, kept in a small {@code .current} file next to the database so that {@code sl --current} can
+ * answer a shell prompt without loading the database:
+ * <pre>
+ * stamp    the inode, modification time and length of each file the database is read from
+ * current  the running thread, or an empty line if none
+ * </pre>
+ * Every save rewrites it. A running daemon, which saves only now and then, also rewrites it after every command, with
+ * the stamp of what it last saved marked as unsaved; a reader trusts that only while the daemon still holds the
+ * database lock, since a daemon that died lost the change with it. Otherwise a reader trusts the file only while the
+ * stamp still matches the files, and failing that reads just enough of the database to find the top of the attention
+ * stack, then refreshes it if the database is not locked. Nothing here ever writes the database itself.
+ */
+final class CurrentFile {
+
+    static final String EXTENSION = ".current";
+    static final String UNSAVED = " unsaved";
+
+    private CurrentFile() {
+    }
+
+    static File fileFor(final File db) {
+        return new File(db.getPath() + EXTENSION);
+    }
+
+    /**
+     * Record {@code current} as the running thread of the database as {@code store} has just saved it.
+     */
+    static void write(final ShoeLacesStore store, final String current) throws IOException {
+        write(store.getFile(), stamp(store), current);
+    }
+
+    /**
+     * Record {@code current} as the running thread of the database held by a daemon, ahead of its next save.
+     */
+    static void writeUnsaved(final ShoeLacesStore store, final String current) throws IOException {
+        write(store.getFile(), stamp(store) + UNSAVED, current);
+    }
+
+    private static void write(final File db, final String stamp, final String current) throws IOException {
+        // a cache, so it is never synced: after a crash the stamp no longer matches and it is rebuilt
+        AtomicFile.write(fileFor(db), false, out -> {
+            final Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            writer.write(stamp);
+            writer.write('\n');
+            writer.write(current != null ? current : "");
+            writer.write('\n');
+            writer.flush();
+        });
+    }
+
+    /**
+     * @return the running thread, or null if the database is paused, empty or missing
+     */
+    static String read(final ShoeLacesStore store) throws IOException, ClassNotFoundException {
+        final File db = store.getFile();
+        if (!db.exists()) {
+            return null;
+        }
+
+        final String stamp = stamp(store);
+        final File sidecar = fileFor(db);
+        if (sidecar.exists()) {
+            final List<String> lines = Files.readAllLines(sidecar.toPath(), StandardCharsets.UTF_8);
+            if (lines.size() == 2 && (lines.get(0).equals(stamp)
+                    || lines.get(0).equals(stamp + UNSAVED) && isLocked(db))) {
+                return lines.get(1).isEmpty() ? null : lines.get(1);
+            }
+        }
+
+        final String current = parse(store);
+        refresh(store, stamp, current);
+        return current;
+    }
+
+    private static boolean isLocked(final File db) {
+        try {
+            DatabaseLock.acquire(db, 0L).close();
+            return false;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Read the running thread from the database, touching as little of it as its format allows.
+     */
+    private static String parse(final ShoeLacesStore store) throws IOException, ClassNotFoundException {
+        final File db = store.getFile();
+        if (store instanceof Journal) {
+            return ((Journal) store).read().current(); // the log has to be replayed over the snapshot
+        }
+        if (store instanceof KeyValueStore) {
+            return ((KeyValueStore) store).read().current();
+        }
+        if (db.length() == 0L) {
+            return null;
+        }
+        return BinaryCodec.isBinary(db) ? BinaryCodec.open(db).current() : ShoeLacesCodec.current(db);
+    }
+
+    /**
+     * Cache what was parsed, unless the database is locked or has changed since, either of which means a writer will
+     * be along with a newer answer.
+     */
+    private static void refresh(final ShoeLacesStore store, final String stamp, final String current)
+            throws IOException {
+        final DatabaseLock lock;
+        try {
+            lock = DatabaseLock.acquire(store.getFile(), 0L);
+        } catch (IOException e) {
+            return;
+        }
+
+        try (DatabaseLock ignored = lock) {
+            if (stamp.equals(stamp(store))) {
+                write(store.getFile(), stamp, current);
+            }
+        }
+    }
+
+    /**
+     * @return the identity, modification time and length of every file {@code store} reads the database from, which
+     * all change whenever a save does
+     */
+    static String stamp(final ShoeLacesStore store) throws IOException {
+        final StringBuilder stamp = new StringBuilder(64);
+        stamp(store.getFile(), stamp);
+        if (store instanceof Journal) {
+            stamp.append(' ');
+            stamp(((Journal) store).getLog(), stamp);
+        } else if (store instanceof KeyValueStore) {
+            stamp.append(' ');
+            stamp(new File(store.getFile().getPath() + KeyValueStore.WAL_EXTENSION), stamp);
+        }
+        return stamp.toString();
+    }
+
+    private static void stamp(final File file, final StringBuilder out) throws IOException {
+        final BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            out.append('-');
+            return;
+        }
+
+        // an atomic replace changes the inode even when the time and length come out the same
+        final Object key = attributes.fileKey();
+        if (key != null) {
+            out.append(key).append(':');
+        }
+        out.append(attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS)).append(':').append(attributes.size());
+    }
+}
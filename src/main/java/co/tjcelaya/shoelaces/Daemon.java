@@ -0,0 +1,409 @@
+package co.tjcelaya.shoelaces;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.io.FileUtils;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.System.err;
+
+/**
+ * Resident server holding a single database in memory so that {@code sl} invocations can skip loading it.
+ * <p>
+ * The server listens on a loopback port advertised, together with a random access token, in a {@code .daemon} file
+ * next to the database. Clients send their raw arguments and get back the exit status and whatever the in-process
+ * run would have printed. Changes are written to disk in batches on a timer and when the server stops. The daemon
+ * holds the {@link DatabaseLock} while it runs, so in-process invocations cannot write underneath it.
+ * <p>
+ * Every change is also published, as it happens, through {@link #events()}, and appended to the database's
+ * {@link EventsFile} for clients that would otherwise poll.
+ */
+public class Daemon implements Closeable {
+
+    public static final String EXTENSION = ".daemon";
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000L;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 250;
+    private static final int CLIENT_TIMEOUT_MILLIS = 5000;
+
+    private final File file;
+    private final File portFile;
+    private final ShoeLacesStore store;
+    private final ShoeLaces db;
+    private final ServerSocket server;
+    private final String token;
+    private final ScheduledExecutorService flusher;
+    private final ExecutorService notifier;
+    private final TransitionPublisher events;
+    private final DatabaseLock lock;
+    private final History history;
+
+    private boolean dirty;
+    private boolean rewrite;
+    private long dumped;
+
+    Daemon(final ShoeLacesStore store, final long flushIntervalMillis) throws IOException, ClassNotFoundException {
+        this.file = store.getFile();
+        this.portFile = portFileFor(file);
+        this.store = store;
+        this.lock = DatabaseLock.acquire(file);
+        this.token = Long.toHexString(new SecureRandom().nextLong());
+        this.history = new History(file);
+
+        // anything that fails once the lock is held has to undo what came before it
+        ServerSocket server = null;
+        ScheduledExecutorService flusher = null;
+        ExecutorService notifier = null;
+        try {
+            this.db = App.open(store, System.out, err);
+            server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+
+            // restrict to the owner before the token is written
+            FileUtils.touch(portFile);
+            portFile.setReadable(false, false);
+            portFile.setReadable(true, true);
+            portFile.setWritable(false, false);
+            portFile.setWritable(true, true);
+            FileUtils.writeStringToFile(portFile, server.getLocalPort() + " " + token + "\n", StandardCharsets.UTF_8);
+
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread t = new Thread(r, "sl-daemon-flush");
+                t.setDaemon(true);
+                return t;
+            });
+            notifier = Executors.newSingleThreadExecutor(r -> {
+                final Thread t = new Thread(r, "sl-daemon-events");
+                t.setDaemon(true);
+                return t;
+            });
+            this.server = server;
+            this.flusher = flusher;
+            this.notifier = notifier;
+            this.events = new TransitionPublisher(notifier);
+            db.addListener(events);
+            EventsFile.follow(events, file);
+
+            flusher.scheduleWithFixedDelay(() -> {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    err.println("flush failed: " + e.getMessage());
+                }
+            }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            if (notifier != null) {
+                notifier.shutdownNow();
+            }
+            if (flusher != null) {
+                flusher.shutdownNow();
+            }
+            if (server != null) {
+                try {
+                    server.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                portFile.delete();
+            }
+            lock.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the publisher of every change the daemon applies, delivering on the daemon's own notifier thread
+     */
+    Flow.Publisher<Transition> events() {
+        return events;
+    }
+
+    static File portFileFor(final File file) {
+        return new File(file.getPath() + EXTENSION);
+    }
+
+    /**
+     * Run a daemon for the given database until the JVM is told to stop.
+     */
+    static void serve(final ShoeLacesStore store) throws IOException, ClassNotFoundException {
+        final Daemon daemon = new Daemon(store, DEFAULT_FLUSH_INTERVAL_MILLIS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                daemon.close();
+            } catch (IOException e) {
+                err.println("shutdown failed: " + e.getMessage());
+            }
+        }));
+
+        System.out.println("serving on port " + daemon.server.getLocalPort());
+        daemon.run();
+    }
+
+    /**
+     * Accept and answer clients one at a time until closed.
+     */
+    void run() {
+        while (!server.isClosed()) {
+            try (Socket client = server.accept()) {
+                client.setSoTimeout(CLIENT_TIMEOUT_MILLIS);
+                handle(client);
+            } catch (SocketException e) {
+                if (!server.isClosed()) {
+                    err.println("client failed: " + e.getMessage());
+                }
+            } catch (IOException e) {
+                err.println("client failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void handle(final Socket client) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+        final DataOutputStream response = new DataOutputStream(new BufferedOutputStream(client.getOutputStream()));
+
+        final byte[] received = in.readUTF().getBytes(StandardCharsets.UTF_8);
+        if (!MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), received)) { // in constant time
+            return;
+        }
+
+        final String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = in.readUTF();
+        }
+
+        final ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
+        final ByteArrayOutputStream errBytes = new ByteArrayOutputStream();
+        final int status;
+
+        try (PrintStream out = new PrintStream(outBytes, true, StandardCharsets.UTF_8.name());
+             PrintStream err = new PrintStream(errBytes, true, StandardCharsets.UTF_8.name())) {
+            status = apply(args, out, err);
+        }
+
+        response.writeInt(status);
+        writeBytes(response, outBytes.toByteArray());
+        writeBytes(response, errBytes.toByteArray());
+        response.flush();
+    }
+
+    private synchronized int apply(final String[] args, final PrintStream out, final PrintStream err) {
+        final CommandLine invocation;
+        try {
+            invocation = new DefaultParser().parse(App.options(), args);
+        } catch (ParseException e) {
+            err.println(e.getMessage());
+            return 1;
+        }
+
+        final PrintOptions printOptions;
+        try {
+            printOptions = App.printOptions(invocation);
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            return 1;
+        }
+
+        out.println("using db file: " + file);
+
+        try {
+            if (App.isUndoOrRedo(invocation)) {
+                if (App.undoOrRedo(db, history, invocation, out) > 0) {
+                    history.save();
+                    dirty = true;
+                    rewrite = true;
+                }
+            } else {
+                history.begin(db);
+                try {
+                    App.execute(db, invocation, out, err);
+                } finally {
+                    dirty |= history.commit(db);
+                }
+            }
+        } catch (RuntimeException | IOException e) {
+            err.println(e.getMessage());
+            return 1;
+        } finally {
+            if (App.isCommand(invocation)) {
+                writeCurrent(err);
+            }
+        }
+
+        try {
+            App.print(db, printOptions, out);
+            App.time(db, invocation, out);
+        } catch (IOException e) {
+            err.println(e.getMessage());
+            return 1;
+        }
+
+        if (invocation.hasOption("stats")) {
+            Metrics.printTable(err);
+        }
+        return 0;
+    }
+
+    /**
+     * Keep {@code sl --current} up to date between saves, which only happen on the flush timer.
+     */
+    private void writeCurrent(final PrintStream err) {
+        try {
+            CurrentFile.writeUnsaved(store, db.current());
+        } catch (IOException e) {
+            err.println("could not record the running thread: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Save if anything changed, and rewrite the metrics file if anything was recorded, since the last flush.
+     */
+    synchronized void flush() throws IOException {
+        if (dirty) {
+            App.save(store, db, rewrite);
+            dirty = false;
+            rewrite = false;
+            scheduleSync();
+        }
+
+        final long recorded = Metrics.total();
+        if (Metrics.isEnabled() && recorded != dumped) {
+            dumped = recorded;
+            Metrics.dump(file);
+        }
+    }
+
+    /**
+     * Sync a journal's group of records once the oldest is due, rather than whenever the next change is saved, which
+     * could be much later.
+     */
+    private void scheduleSync() {
+        if (!(store instanceof Journal)) {
+            return;
+        }
+
+        final long delay = ((Journal) store).nanosUntilSync();
+        if (delay >= 0L) {
+            try {
+                flusher.schedule(this::syncIfDue, delay, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException ignored) {
+                // closing, and closing the journal syncs it
+            }
+        }
+    }
+
+    private synchronized void syncIfDue() {
+        try {
+            ((Journal) store).syncIfDue();
+        } catch (IOException e) {
+            err.println("sync failed: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (server.isClosed()) {
+            return;
+        }
+
+        server.close();
+        flusher.shutdown();
+        events.close();
+        notifier.shutdown();
+        try (ShoeLacesStore closing = store) {
+            flush();
+        } finally {
+            portFile.delete();
+            lock.close();
+            try {
+                notifier.awaitTermination(CLIENT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Hand the invocation to a running daemon for the database, if there is one.
+     *
+     * @return the exit status reported by the daemon, or null when no daemon could be reached and the caller should
+     * run the command itself
+     */
+    static Integer forward(final File file, final String[] args, final PrintStream out, final PrintStream err) {
+        final File portFile = portFileFor(file);
+        if (!portFile.exists()) {
+            return null;
+        }
+
+        final String[] advertised;
+        try {
+            advertised = FileUtils.readFileToString(portFile, StandardCharsets.UTF_8).trim().split(" ");
+        } catch (IOException e) {
+            return null;
+        }
+
+        if (advertised.length != 2) {
+            return null;
+        }
+
+        final Socket socket = new Socket();
+        try {
+            socket.connect(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(advertised[0])),
+                    CONNECT_TIMEOUT_MILLIS);
+        } catch (IOException | IllegalArgumentException e) {
+            closeQuietly(socket);
+            return null; // stale, fall back to running in-process
+        }
+
+        try {
+            final DataOutputStream request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            request.writeUTF(advertised[1]);
+            request.writeInt(args.length);
+            for (String arg : args) {
+                request.writeUTF(arg);
+            }
+            request.flush();
+
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            final int status = in.readInt();
+            out.write(readBytes(in));
+            err.write(readBytes(in));
+            out.flush();
+            err.flush();
+            return status;
+        } catch (IOException e) {
+            err.println("daemon failed: " + e.getMessage());
+            return 1;
+        } finally {
+            closeQuietly(socket);
+        }
+    }
+
+    private static void writeBytes(final DataOutputStream out, final byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(final DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void closeQuietly(final Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package co.tjcelaya.shoelaces;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exclusive access to a database across processes and threads, for the span of a load, change and save.
+ * <p>
+ * The lock is taken on a {@code .lock} file next to the database rather than on the database itself, since saves may
+ * replace the database file. {@link FileLock}s are held per JVM, so threads of one JVM are additionally serialized on
+ * an in-process semaphore per database.
+ */
+public final class DatabaseLock implements Closeable {
+
+    public static final String EXTENSION = ".lock";
+    public static final long DEFAULT_TIMEOUT_MILLIS = 10_000L;
+
+    private static final long MAX_BACKOFF_MILLIS = 50L;
+    private static final ConcurrentHashMap<String, Semaphore> LOCAL = new ConcurrentHashMap<>();
+
+    private final Semaphore local;
+    private final FileChannel channel;
+    private final FileLock lock;
+    private boolean closed;
+
+    private DatabaseLock(final Semaphore local, final FileChannel channel, final FileLock lock) {
+        this.local = local;
+        this.channel = channel;
+        this.lock = lock;
+    }
+
+    public static DatabaseLock acquire(final File db) throws IOException {
+        return acquire(db, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Wait up to {@code timeoutMillis} for exclusive access, retrying with backoff while another process holds it.
+     *
+     * @throws IOException if the lock could not be had in time
+     */
+    public static DatabaseLock acquire(final File db, final long timeoutMillis) throws IOException {
+        final File lockFile = new File(db.getPath() + EXTENSION);
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        final Semaphore local = LOCAL.computeIfAbsent(lockFile.getCanonicalPath(), k -> new Semaphore(1));
+
+        try {
+            if (!local.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new IOException("timed out waiting for " + lockFile);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for " + lockFile);
+        }
+
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+
+            long backoff = 1L;
+            while (true) {
+                final FileLock lock = channel.tryLock();
+                if (lock != null) {
+                    return new DatabaseLock(local, channel, lock);
+                }
+
+                if (System.nanoTime() - deadline > 0) {
+                    throw new IOException("timed out waiting for " + lockFile + ", held by another process");
+                }
+
+                Thread.sleep(backoff);
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close(channel, local);
+            throw new InterruptedIOException("interrupted waiting for " + lockFile);
+        } catch (IOException | RuntimeException e) {
+            close(channel, local);
+            throw e;
+        }
+    }
+
+    private static void close(final FileChannel channel, final Semaphore local) {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException ignored) {
+        } finally {
+            local.release();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            lock.release();
+            channel.close();
+        } finally {
+            local.release();
+        }
+    }
+}
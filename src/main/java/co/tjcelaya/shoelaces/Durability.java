@@ -0,0 +1,115 @@
+package co.tjcelaya.shoelaces;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How hard saves push data to stable storage before returning.
+ * <ul>
+ * <li>{@link #NONE} leaves flushing to the operating system: fastest, but a power loss can drop recent saves.</li>
+ * <li>{@link #ALWAYS} fsyncs every save.</li>
+ * <li>{@link #group(int, long)} fsyncs journal appends in groups, once enough records or enough time has built up
+ * since the oldest unsynced one, checked on each save and when the journal is closed; a long-running writer such as
+ * the daemon also syncs once the oldest record is due without waiting for another save. A single {@code sl} run
+ * saves once and then closes the journal, so there a group is synced as promptly as with {@link #ALWAYS}; groups pay
+ * off in the daemon and in batches. Snapshots are always synced.</li>
+ * </ul>
+ * Whatever the level, snapshots replace the old file by an atomic rename, so a crash never leaves a torn database.
+ */
+public final class Durability {
+
+    public static final int DEFAULT_GROUP_RECORDS = 64;
+    public static final long DEFAULT_GROUP_DELAY_MILLIS = 50L;
+
+    public static final Durability NONE = new Durability("none", 0, 0L);
+    public static final Durability ALWAYS = new Durability("always", 1, 0L);
+    public static final Durability GROUP = group(DEFAULT_GROUP_RECORDS, DEFAULT_GROUP_DELAY_MILLIS);
+
+    private final String label;
+    private final int groupRecords;
+    private final long groupDelayNanos;
+
+    private Durability(final String label, final int groupRecords, final long groupDelayMillis) {
+        this.label = label;
+        this.groupRecords = groupRecords;
+        this.groupDelayNanos = TimeUnit.MILLISECONDS.toNanos(groupDelayMillis);
+    }
+
+    /**
+     * @param records sync once this many records are waiting
+     * @param delayMillis sync once the oldest waiting record is this old
+     */
+    public static Durability group(final int records, final long delayMillis) {
+        if (records < 1 || delayMillis < 0) {
+            throw new IllegalArgumentException(
+                    "bad group commit settings: " + records + " records, " + delayMillis + "ms");
+        }
+        return new Durability("group:" + records + ":" + delayMillis, records, delayMillis);
+    }
+
+    /**
+     * Parse {@code none}, {@code always}, {@code group} or {@code group:RECORDS[:MILLIS]}.
+     */
+    public static Durability parse(final String durability) {
+        final String[] parts = durability.split(":");
+        switch (parts[0]) {
+            case "none":
+                if (parts.length == 1) {
+                    return NONE;
+                }
+                break;
+            case "always":
+                if (parts.length == 1) {
+                    return ALWAYS;
+                }
+                break;
+            case "group":
+                try {
+                    if (parts.length == 1) {
+                        return GROUP;
+                    } else if (parts.length == 2) {
+                        return group(Integer.parseInt(parts[1]), DEFAULT_GROUP_DELAY_MILLIS);
+                    } else if (parts.length == 3) {
+                        return group(Integer.parseInt(parts[1]), Long.parseLong(parts[2]));
+                    }
+                } catch (NumberFormatException ignored) {
+                }
+                break;
+        }
+
+        throw new IllegalArgumentException(
+                "unknown durability: " + durability + ", expected none, always or group[:RECORDS[:MILLIS]]");
+    }
+
+    /**
+     * @return whether snapshots are synced before they replace the old file
+     */
+    public boolean syncsSnapshots() {
+        return groupRecords > 0;
+    }
+
+    /**
+     * @param unsynced records written since the last sync
+     * @param oldestNanos {@link System#nanoTime()} when the oldest of them was written
+     */
+    boolean isDue(final int unsynced, final long oldestNanos) {
+        return groupRecords > 0
+                && unsynced > 0
+                && (unsynced >= groupRecords || System.nanoTime() - oldestNanos >= groupDelayNanos);
+    }
+
+    /**
+     * @return nanoseconds until {@link #isDue(int, long)} will hold by age alone, 0 if it already does, or -1 if no
+     * records are waiting to be synced in groups
+     */
+    long nanosUntilDue(final int unsynced, final long oldestNanos) {
+        if (groupRecords == 0 || unsynced == 0) {
+            return -1L;
+        }
+        return Math.max(0L, oldestNanos + groupDelayNanos - System.nanoTime());
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
@@ -0,0 +1,104 @@
+package co.tjcelaya.shoelaces;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+import static java.lang.System.err;
+
+/**
+ * Appends the transitions it is sent to a {@code .events} file next to the database, one JSON object per line, for
+ * clients to follow with {@code tail -F} instead of rerunning {@code sl}:
+ * <pre>
+ * {"at":1497052800000,"op":"interrupt","thread":"proj.task","current":"proj.task"}
+ * </pre>
+ * {@code op} and {@code thread} are as in batch commands, so a day's events up to its first undo or redo can be
+ * replayed with {@code sl --batch}; {@code thread} is null for exits and kills of the running thread and
+ * {@code current} when nothing runs. An undo or redo writes {@code {"at":...,"op":"resync","thread":null,...}}
+ * instead of what it changed, and readers should reread the database. Each line is flushed as written. If the
+ * subscriber falls behind it writes {@code {"at":...,"error":"..."}} and subscribes again, and readers should likewise
+ * reread the database.
+ */
+final class EventsFile implements Flow.Subscriber<Transition> {
+
+    static final String EXTENSION = ".events";
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private final Flow.Publisher<Transition> publisher;
+    private final File file;
+    private JsonGenerator out;
+
+    private EventsFile(final Flow.Publisher<Transition> publisher, final File file) {
+        this.publisher = publisher;
+        this.file = file;
+    }
+
+    static File fileFor(final File db) {
+        return new File(db.getPath() + EXTENSION);
+    }
+
+    /**
+     * Start appending the publisher's transitions to the database's events file.
+     */
+    static void follow(final Flow.Publisher<Transition> publisher, final File db) throws IOException {
+        final EventsFile events = new EventsFile(publisher, fileFor(db));
+        events.open();
+        publisher.subscribe(events);
+    }
+
+    private void open() throws IOException {
+        out = FACTORY.createGenerator(new FileOutputStream(file, true), JsonEncoding.UTF8);
+        out.setRootValueSeparator(null);
+    }
+
+    @Override
+    public void onSubscribe(final Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(final Transition transition) {
+        try {
+            out.writeStartObject();
+            out.writeNumberField("at", transition.getAt());
+            out.writeStringField("op", transition.getKind().name().toLowerCase(Locale.ROOT));
+            out.writeStringField("thread", transition.getThread());
+            out.writeStringField("current", transition.getRunning());
+            out.writeEndObject();
+            out.writeRaw('\n');
+            out.flush();
+        } catch (IOException e) {
+            err.println("events file failed: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void onError(final Throwable throwable) {
+        try {
+            out.writeStartObject();
+            out.writeNumberField("at", System.currentTimeMillis());
+            out.writeStringField("error", throwable.getMessage());
+            out.writeEndObject();
+            out.writeRaw('\n');
+            out.flush();
+        } catch (IOException e) {
+            err.println("events file failed: " + e.getMessage());
+        }
+        publisher.subscribe(this);
+    }
+
+    @Override
+    public void onComplete() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            err.println("events file failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,443 @@
+package co.tjcelaya.shoelaces;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.*;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Read-only view across every database in a directory, one per day, through a side index of which threads each day
+ * holds and the status they ended the day with.
+ * <p>
+ * The index lives in {@value #INDEX_FILE} next to the databases. It stores every distinct name and status once, and
+ * each day as a sorted table of references into them along with the size and modification time of the day's files,
+ * so opening the federation rescans only the days that changed since the index was written, and scans the whole
+ * directory in parallel when there is no index yet. Scans stream the thread table out of JSON and
+ * binary files rather than building a {@link ShoeLaces}; only journaled days are replayed in full.
+ */
+public final class Federation {
+
+    public static final String INDEX_FILE = ".shoelaces.index";
+
+    private static final int MAGIC = 0x534c5831; // "SLX1"
+    private static final int VERSION = 1;
+
+    private final File home;
+    private final Strings strings;
+    private final TreeMap<String, Day> days;
+
+    private Federation(final File home, final Strings strings, final TreeMap<String, Day> days) {
+        this.home = home;
+        this.strings = strings;
+        this.days = days;
+    }
+
+    /**
+     * Load the index for {@code home}, bring it up to date with the databases there and save it if anything changed.
+     */
+    public static Federation open(final File home) throws IOException {
+        final File indexFile = new File(home, INDEX_FILE);
+        final Strings strings = new Strings();
+        final Map<String, Day> indexed = indexFile.exists() ? readIndex(indexFile, strings) : new HashMap<>();
+
+        final File[] files = home.listFiles((dir, name) -> isDatabase(name));
+        final TreeMap<String, Day> current = new TreeMap<>();
+        final List<File> stale = new ArrayList<>();
+        for (File file : files != null ? files : new File[0]) {
+            final Day known = indexed.get(file.getName());
+            if (known != null && known.fingerprint.equals(Fingerprint.of(file))) {
+                current.put(file.getName(), known);
+            } else {
+                stale.add(file);
+            }
+        }
+
+        final List<Scan> scanned = stale.parallelStream()
+                .map(Federation::scanQuietly)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        for (Scan scan : scanned) {
+            current.put(scan.file, scan.toDay(strings));
+        }
+
+        if (!scanned.isEmpty() || current.size() != indexed.size()) {
+            // keep only the strings the current days use, or those of removed and rescanned days would pile up
+            final Strings used = new Strings();
+            current.replaceAll((file, day) -> day.reintern(strings, used));
+            writeIndex(indexFile, used, current.values());
+            return new Federation(home, used, current);
+        }
+
+        return new Federation(home, strings, current);
+    }
+
+    static boolean isDatabase(final String name) {
+        return !name.startsWith(".") && (name.endsWith(".sldb")
+                || name.endsWith(BinaryCodec.EXTENSION)
+                || name.endsWith(KeyValueStore.EXTENSION));
+    }
+
+    public File getHome() {
+        return home;
+    }
+
+    /**
+     * @return the days on record, oldest first
+     */
+    public SortedSet<String> days() {
+        final TreeSet<String> names = new TreeSet<>();
+        for (Day day : days.values()) {
+            names.add(day.day);
+        }
+        return names;
+    }
+
+    /**
+     * @return the days the thread appears on, oldest first, with the status it ended each of them with
+     */
+    public SortedMap<String, ThreadStatus> history(final String thread) {
+        final TreeMap<String, ThreadStatus> history = new TreeMap<>();
+        final int name = strings.id(thread);
+        if (name < 0) {
+            return history;
+        }
+
+        for (Day day : days.values()) {
+            final int status = day.status(name);
+            if (status >= 0) {
+                history.put(day.day, ThreadStatus.parse(strings.get(status)));
+            }
+        }
+        return history;
+    }
+
+    /**
+     * @param transition one of {@code I}, {@code E} or {@code K}
+     * @return the latest day on which the thread went through the transition, or null if it never did
+     */
+    public String lastDay(final String thread, final char transition) {
+        if (transition != 'I' && transition != 'E' && transition != 'K') {
+            throw new IllegalArgumentException("unknown transition: " + transition);
+        }
+
+        final int name = strings.id(thread);
+        if (name < 0) {
+            return null;
+        }
+
+        for (Day day : days.descendingMap().values()) {
+            final int status = day.status(name);
+            if (status >= 0 && count(ThreadStatus.parse(strings.get(status)), transition) > 0) {
+                return day.day;
+            }
+        }
+        return null;
+    }
+
+    private static int count(final ThreadStatus status, final char transition) {
+        switch (transition) {
+            case 'I':
+                return status.getInterrupts();
+            case 'E':
+                return status.getExits();
+            default:
+                return status.getKills();
+        }
+    }
+
+    // Scanning
+
+    private static Scan scanQuietly(final File file) {
+        try {
+            return scan(file);
+        } catch (IOException | RuntimeException | ClassNotFoundException e) {
+            // unreadable, or changed underneath us: leave it out of the index so the next open tries again
+            return null;
+        }
+    }
+
+    static Scan scan(final File file) throws IOException, ClassNotFoundException {
+        final Fingerprint fingerprint = Fingerprint.of(file);
+        final LinkedHashMap<String, String> statuses = new LinkedHashMap<>();
+
+        if (KeyValueStore.isKeyValue(file) || new File(file.getPath() + Journal.EXTENSION).exists()) {
+            final ThreadRegistry threads = KeyValueStore.isKeyValue(file)
+                    ? new KeyValueStore(file).read().threads()
+                    : new Journal(file).read().threads();
+            for (int tid = 0; tid < threads.size(); tid++) {
+                statuses.put(threads.name(tid), threads.status(tid).toString());
+            }
+        } else if (file.length() == 0L) {
+            // created but never saved
+        } else if (BinaryCodec.isBinary(file)) {
+            final MappedShoeLaces mapped = BinaryCodec.open(file);
+            for (int tid = 0; tid < mapped.size(); tid++) {
+                statuses.put(mapped.lookup(tid), mapped.status(tid));
+            }
+        } else {
+            scanJson(file, statuses);
+        }
+
+        return new Scan(file.getName(), fingerprint, statuses);
+    }
+
+    private static void scanJson(final File file, final Map<String, String> statuses) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file));
+             JsonParser parser = ShoeLacesCodec.FACTORY.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("not a shoelaces database: " + file);
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                if (!"threads".equals(field) || value != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String thread = parser.getCurrentName();
+                    final JsonToken status = parser.nextToken();
+                    statuses.put(thread, status == JsonToken.VALUE_NULL ? "" : parser.getText());
+                }
+                return; // nothing after the thread table is needed
+            }
+        }
+    }
+
+    // Index file
+    //
+    // magic "SLX1", int version, int string count, strings (modified UTF-8), int day count, then per day:
+    // file name, long length, long modified, long journal length, int thread count, per thread: int name, int status
+
+    private static Map<String, Day> readIndex(final File indexFile, final Strings strings) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return new HashMap<>();
+            }
+
+            final int stringCount = in.readInt();
+            for (int i = 0; i < stringCount; i++) {
+                strings.intern(in.readUTF());
+            }
+
+            final int dayCount = in.readInt();
+            final Map<String, Day> days = new HashMap<>(Math.max(16, dayCount * 2));
+            for (int d = 0; d < dayCount; d++) {
+                final String file = in.readUTF();
+                final Fingerprint fingerprint = new Fingerprint(in.readLong(), in.readLong(), in.readLong());
+
+                final int threadCount = in.readInt();
+                final int[] names = new int[threadCount];
+                final int[] statuses = new int[threadCount];
+                for (int t = 0; t < threadCount; t++) {
+                    names[t] = in.readInt();
+                    statuses[t] = in.readInt();
+                    if (names[t] < 0 || names[t] >= stringCount || statuses[t] < 0 || statuses[t] >= stringCount) {
+                        throw new IOException("bad string reference");
+                    }
+                }
+
+                days.put(file, new Day(file, fingerprint, names, statuses));
+            }
+            return days;
+        } catch (IOException e) {
+            strings.clear();
+            return new HashMap<>(); // a damaged index is only a cache, rebuild it
+        }
+    }
+
+    private static void writeIndex(final File indexFile, final Strings strings, final Collection<Day> days)
+            throws IOException {
+        // concurrent reports each write their own temp file; whichever rename lands last wins, and both are complete
+        final File dir = indexFile.getAbsoluteFile().getParentFile();
+        final File temp = File.createTempFile(INDEX_FILE, AtomicFile.TEMP_EXTENSION, dir);
+        try {
+            writeIndexTo(temp, strings, days);
+            AtomicFile.move(temp, indexFile, false);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    private static void writeIndexTo(final File temp, final Strings strings, final Collection<Day> days)
+            throws IOException {
+        AtomicFile.writeTo(temp, false, stream -> {
+            final DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            out.writeInt(strings.size());
+            for (int i = 0; i < strings.size(); i++) {
+                out.writeUTF(strings.get(i));
+            }
+
+            out.writeInt(days.size());
+            for (Day day : days) {
+                out.writeUTF(day.file);
+                out.writeLong(day.fingerprint.length);
+                out.writeLong(day.fingerprint.modified);
+                out.writeLong(day.fingerprint.journal);
+
+                out.writeInt(day.names.length);
+                for (int t = 0; t < day.names.length; t++) {
+                    out.writeInt(day.names[t]);
+                    out.writeInt(day.statuses[t]);
+                }
+            }
+            out.flush();
+        });
+    }
+
+    /**
+     * Every thread name and status text in the index, stored once and referred to by position.
+     */
+    static final class Strings {
+        private final ArrayList<String> values = new ArrayList<>();
+        private final HashMap<String, Integer> ids = new HashMap<>();
+
+        int intern(final String s) {
+            final Integer existing = ids.get(s);
+            if (existing != null) {
+                return existing;
+            }
+
+            values.add(s);
+            ids.put(s, values.size() - 1);
+            return values.size() - 1;
+        }
+
+        int id(final String s) {
+            final Integer id = ids.get(s);
+            return id == null ? -1 : id;
+        }
+
+        String get(final int id) {
+            return values.get(id);
+        }
+
+        int size() {
+            return values.size();
+        }
+
+        void clear() {
+            values.clear();
+            ids.clear();
+        }
+    }
+
+    /**
+     * One database as scanned, before its strings are interned.
+     */
+    static final class Scan {
+        final String file;
+        final Fingerprint fingerprint;
+        final Map<String, String> statuses;
+
+        Scan(final String file, final Fingerprint fingerprint, final Map<String, String> statuses) {
+            this.file = file;
+            this.fingerprint = fingerprint;
+            this.statuses = statuses;
+        }
+
+        Day toDay(final Strings strings) {
+            final long[] pairs = new long[statuses.size()];
+            int i = 0;
+            for (Map.Entry<String, String> thread : statuses.entrySet()) {
+                pairs[i++] = (long) strings.intern(thread.getKey()) << 32 | strings.intern(thread.getValue());
+            }
+            return Day.of(file, fingerprint, pairs);
+        }
+    }
+
+    /**
+     * One database in the index: its threads as name ids in ascending order, each with the id of its status.
+     */
+    static final class Day {
+        final String file;
+        final String day;
+        final Fingerprint fingerprint;
+        final int[] names;
+        final int[] statuses;
+
+        Day(final String file, final Fingerprint fingerprint, final int[] names, final int[] statuses) {
+            this.file = file;
+            this.day = FilenameUtils.getBaseName(file);
+            this.fingerprint = fingerprint;
+            this.names = names;
+            this.statuses = statuses;
+        }
+
+        /**
+         * @param pairs name id in the high half, status id in the low half
+         */
+        static Day of(final String file, final Fingerprint fingerprint, final long[] pairs) {
+            Arrays.sort(pairs);
+            final int[] names = new int[pairs.length];
+            final int[] statuses = new int[pairs.length];
+            for (int i = 0; i < pairs.length; i++) {
+                names[i] = (int) (pairs[i] >>> 32);
+                statuses[i] = (int) pairs[i];
+            }
+            return new Day(file, fingerprint, names, statuses);
+        }
+
+        /**
+         * @return this day with its strings, looked up in {@code from}, interned in {@code to} instead
+         */
+        Day reintern(final Strings from, final Strings to) {
+            final long[] pairs = new long[names.length];
+            for (int i = 0; i < names.length; i++) {
+                pairs[i] = (long) to.intern(from.get(names[i])) << 32 | to.intern(from.get(statuses[i]));
+            }
+            return of(file, fingerprint, pairs);
+        }
+
+        /**
+         * @return the status id of the thread on this day, or -1 if it does not appear
+         */
+        int status(final int name) {
+            final int i = Arrays.binarySearch(names, name);
+            return i >= 0 ? statuses[i] : -1;
+        }
+    }
+
+    /**
+     * What a day's files looked like when they were scanned; any change to the database or its journal changes it.
+     */
+    static final class Fingerprint {
+        final long length;
+        final long modified;
+        final long journal;
+
+        Fingerprint(final long length, final long modified, final long journal) {
+            this.length = length;
+            this.modified = modified;
+            this.journal = journal;
+        }
+
+        static Fingerprint of(final File file) {
+            final File log = new File(file.getPath()
+                    + (KeyValueStore.isKeyValue(file) ? KeyValueStore.WAL_EXTENSION : Journal.EXTENSION));
+            return new Fingerprint(file.length(), file.lastModified(), log.exists() ? log.length() : -1L);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Fingerprint)) {
+                return false;
+            }
+            final Fingerprint that = (Fingerprint) o;
+            return length == that.length && modified == that.modified && journal == that.journal;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(length, modified, journal);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package co.tjcelaya.shoelaces;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The whole database in one JSON ({@code .sldb}) or binary ({@code .slb}) file, rewritten on every save.
+ */
+public class FileStore implements ShoeLacesStore {
+
+    private final File file;
+    private final Durability durability;
+
+    public FileStore(final File file) {
+        this(file, Durability.GROUP);
+    }
+
+    public FileStore(final File file, final Durability durability) {
+        this.file = file;
+        this.durability = durability;
+    }
+
+    @Override
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public ShoeLaces load() throws IOException, ClassNotFoundException {
+        // named after the whole file name, as new databases always have been
+        return file.length() > 0L ? ShoeLaces.load(file) : new ShoeLaces(file.getName());
+    }
+
+    @Override
+    public void save(final ShoeLaces db) throws IOException {
+        write(db);
+    }
+
+    @Override
+    public void write(final ShoeLaces db) throws IOException {
+        db.save(file, durability);
+    }
+}
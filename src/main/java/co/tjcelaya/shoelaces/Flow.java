@@ -0,0 +1,48 @@
+package co.tjcelaya.shoelaces;
+
+/**
+ * The publish-subscribe interfaces of {@code java.util.concurrent.Flow}, which is not in Java 8, with the same
+ * methods and contracts, so that on a later JVM an adapter is a method reference per call.
+ */
+public final class Flow {
+
+    private Flow() {
+    }
+
+    public interface Publisher<T> {
+        /**
+         * Add a subscriber, which is handed its {@link Subscription} through
+         * {@link Subscriber#onSubscribe(Subscription)} before anything else.
+         */
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    public interface Subscriber<T> {
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * Called, one item at a time, only as far as {@link Subscription#request(long)} has allowed.
+         */
+        void onNext(T item);
+
+        /**
+         * Called once, in place of any further items or {@link #onComplete()}.
+         */
+        void onError(Throwable throwable);
+
+        void onComplete();
+    }
+
+    public interface Subscription {
+        /**
+         * Allow {@code n} more items to be delivered. A non-positive {@code n} ends the subscription with an
+         * {@link IllegalArgumentException}.
+         */
+        void request(long n);
+
+        /**
+         * Stop delivering items, possibly after a few already on their way.
+         */
+        void cancel();
+    }
+}
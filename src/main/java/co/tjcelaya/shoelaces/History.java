@@ -0,0 +1,518 @@
+package co.tjcelaya.shoelaces;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Undo and redo, kept in a {@code .undo} file next to the database as one step per change. A step holds only what
+ * the change touched: the threads it registered, the statuses it changed as they were before and after, and each
+ * entry it pushed on the attention stack or took off it, with where it was. Each version of the database is its
+ * predecessor plus one step, so however large the database a change costs a few records, and going back or forward a
+ * step costs only what that step touched.
+ * <pre>
+ * header  magic "SLU1", int most steps kept, int steps that can be undone, long offset of the end of the last of them
+ * step    int length, the body, the length again, so that steps can be walked in either direction
+ * body    int threads before and after, each name registered (UTF);
+ *         int statuses changed, each an int tid and the status before and after (UTF);
+ *         int stack size before, int stack edits, each the int tid of the entry, -1 for a pause, and for a
+ *         removal the int tid of the nearest thread below it, -1 if none, and the int pause markers in between;
+ *         for a push -1 and -1
+ * </pre>
+ * Steps past the header's offset have been undone and can be redone until the next change is recorded. Recording a
+ * change when the most steps are already kept first drops the older half of them, so the file stays bounded while at
+ * least the newer half can always be undone. Like the timeline, the file is never synced, so a crash can leave it out
+ * of step with the database. Before a step is applied the database is checked against what the step says the change
+ * left or found, so such a history refuses to apply rather than corrupting the database.
+ */
+final class History {
+
+    static final String EXTENSION = ".undo";
+
+    static final int MAGIC = 0x534c5531; // "SLU1"
+    static final int HEADER_BYTES = 20;
+    static final int DEFAULT_LIMIT = 1000;
+
+    private final File file;
+    private final int limit;
+
+    /**
+     * The change being recorded, from {@link #begin(ShoeLaces)}.
+     */
+    private int threadsBefore;
+    private int stackBefore = -1;
+
+    /**
+     * Where undoing or redoing has left the history, until {@link #save()}; -1 if nothing is pending.
+     */
+    private int pendingSteps = -1;
+    private long pendingOffset;
+
+    History(final File db) {
+        this(db, DEFAULT_LIMIT);
+    }
+
+    /**
+     * @param limit the most steps a new history file keeps; an existing one keeps the limit it was created with
+     */
+    History(final File db, final int limit) {
+        if (limit < 2) {
+            throw new IllegalArgumentException("limit must be at least 2: " + limit);
+        }
+        this.file = fileFor(db);
+        this.limit = limit;
+    }
+
+    static File fileFor(final File db) {
+        return new File(db.getPath() + EXTENSION);
+    }
+
+    /**
+     * Start recording a change to {@code db}.
+     */
+    void begin(final ShoeLaces db) {
+        threadsBefore = db.threads().size();
+        stackBefore = db.attention().size();
+        db.threads().keepOriginals();
+        db.attention().recordEdits();
+    }
+
+    /**
+     * Add the change since {@link #begin(ShoeLaces)}, if there was one, as the latest step, dropping any steps that
+     * could have been redone.
+     *
+     * @return true if anything had changed
+     */
+    boolean commit(final ShoeLaces db) throws IOException {
+        if (stackBefore < 0) {
+            throw new IllegalStateException("no change begun");
+        }
+
+        final Step step = Step.between(db, threadsBefore, stackBefore, db.threads().takeOriginals(),
+                db.attention().takeEdits());
+        stackBefore = -1;
+        if (step.isEmpty()) {
+            return false;
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        step.write(new DataOutputStream(bytes));
+
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            final long[] header = header(out);
+            int steps = (int) header[0];
+            long end = header[1];
+            if (steps >= header[2]) {
+                end = dropOldest(out, steps - (int) header[2] / 2, end);
+                steps = (int) header[2] / 2;
+            }
+
+            out.seek(end);
+            out.writeInt(bytes.size());
+            out.write(bytes.toByteArray());
+            out.writeInt(bytes.size());
+            out.setLength(out.getFilePointer());
+            header(out, (int) header[2], steps + 1, out.getFilePointer());
+        }
+        pendingSteps = -1;
+        return true;
+    }
+
+    /**
+     * Undo up to {@code steps} of the latest changes to {@code db}, in memory; {@link #save()} records that they
+     * were undone.
+     *
+     * @return the number of steps undone, fewer than asked if the history runs out
+     * @throws IllegalStateException if the latest step does not match the database
+     */
+    int undo(final ShoeLaces db, final int steps) throws IOException {
+        return travel(db, steps, true);
+    }
+
+    /**
+     * Redo up to {@code steps} of the changes last undone, in memory; {@link #save()} records that they were redone.
+     *
+     * @return the number of steps redone, fewer than asked if there are no more
+     * @throws IllegalStateException if the next step does not match the database
+     */
+    int redo(final ShoeLaces db, final int steps) throws IOException {
+        return travel(db, steps, false);
+    }
+
+    private int travel(final ShoeLaces db, final int steps, final boolean back) throws IOException {
+        if (!file.exists() || file.length() == 0L) {
+            return 0;
+        }
+
+        final int threadsWere = db.threads().size();
+        int moved = 0;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            final long[] header = header(in);
+            int done = pendingSteps >= 0 ? pendingSteps : (int) header[0];
+            long offset = pendingSteps >= 0 ? pendingOffset : header[1];
+
+            while (moved < steps && (back ? done > 0 : offset < in.length())) {
+                final long start;
+                final int length;
+                if (back) {
+                    in.seek(offset - 4L);
+                    length = in.readInt();
+                    start = offset - length - 8L;
+                } else {
+                    in.seek(offset);
+                    length = in.readInt();
+                    start = offset;
+                }
+                if (length < 0 || start < HEADER_BYTES || start + length + 8L > in.length()) {
+                    throw new IOException("corrupt undo history " + file + " at " + offset);
+                }
+
+                final byte[] body = new byte[length];
+                in.seek(start + 4L);
+                in.readFully(body);
+                final Step step;
+                try {
+                    step = Step.read(new DataInputStream(new ByteArrayInputStream(body)));
+                } catch (IOException | RuntimeException e) {
+                    throw new IOException("corrupt undo history " + file + " at " + offset, e);
+                }
+
+                try {
+                    if (back) {
+                        step.undo(db);
+                    } else {
+                        step.redo(db);
+                    }
+                } catch (IllegalStateException e) {
+                    if (moved == 0) {
+                        throw e;
+                    }
+                    break; // keep the steps that did apply
+                }
+
+                moved++;
+                done += back ? -1 : 1;
+                offset = back ? start : start + length + 8L;
+            }
+
+            if (moved > 0) {
+                pendingSteps = done;
+                pendingOffset = offset;
+            }
+        }
+
+        if (moved > 0) {
+            db.restored(threadsWere);
+        }
+        return moved;
+    }
+
+    /**
+     * Record how far the history has been undone or redone, once the database has been saved.
+     */
+    void save() throws IOException {
+        if (pendingSteps < 0) {
+            return;
+        }
+
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            header(out, (int) header(out)[2], pendingSteps, pendingOffset);
+        }
+        pendingSteps = -1;
+    }
+
+    /**
+     * Move the steps after the oldest {@code drop} up to the header, leaving whatever follows {@code end} to be
+     * overwritten.
+     *
+     * @return the new offset of the end of the steps
+     */
+    private long dropOldest(final RandomAccessFile file, final int drop, final long end) throws IOException {
+        long from = HEADER_BYTES;
+        for (int i = 0; i < drop; i++) {
+            file.seek(from);
+            final int length = file.readInt();
+            from += length + 8L;
+            if (length < 0 || from > end) {
+                throw new IOException("corrupt undo history " + this.file + " at " + from);
+            }
+        }
+
+        final byte[] kept = new byte[(int) (end - from)];
+        file.seek(from);
+        file.readFully(kept);
+        file.seek(HEADER_BYTES);
+        file.write(kept);
+        return HEADER_BYTES + kept.length;
+    }
+
+    /**
+     * @return the steps that can be undone, the offset of the end of the last and the most steps kept, writing an
+     * empty header to a new file
+     */
+    private long[] header(final RandomAccessFile file) throws IOException {
+        if (file.length() == 0L) {
+            header(file, limit, 0, HEADER_BYTES);
+            return new long[]{0L, HEADER_BYTES, limit};
+        }
+
+        file.seek(0L);
+        if (file.length() < HEADER_BYTES || file.readInt() != MAGIC) {
+            throw new IOException("not an undo history: " + this.file);
+        }
+        final int kept = file.readInt();
+        final int steps = file.readInt();
+        final long offset = file.readLong();
+        if (kept < 2 || steps < 0 || steps > kept || offset < HEADER_BYTES || offset > file.length()) {
+            throw new IOException("corrupt undo history: " + this.file);
+        }
+        return new long[]{steps, offset, kept};
+    }
+
+    private static void header(final RandomAccessFile file, final int kept, final int steps, final long offset)
+            throws IOException {
+        file.seek(0L);
+        file.writeInt(MAGIC);
+        file.writeInt(kept);
+        file.writeInt(steps);
+        file.writeLong(offset);
+    }
+
+    /**
+     * One change, as what it touched looked before and after, and the edits it made to the attention stack.
+     */
+    private static final class Step {
+        private static final String CHANGED = "the database has changed since its undo history was written";
+
+        private final int threadsBefore;
+        private final String[] registered;
+        private final int[] tids;
+        private final String[] before;
+        private final String[] after;
+        private final int stackBefore;
+        private final int[] edited;
+        private final int[] anchors;
+        private final int[] markers;
+
+        private Step(final int threadsBefore, final String[] registered,
+                     final int[] tids, final String[] before, final String[] after,
+                     final int stackBefore, final int[] edited, final int[] anchors, final int[] markers) {
+            this.threadsBefore = threadsBefore;
+            this.registered = registered;
+            this.tids = tids;
+            this.before = before;
+            this.after = after;
+            this.stackBefore = stackBefore;
+            this.edited = edited;
+            this.anchors = anchors;
+            this.markers = markers;
+        }
+
+        static Step between(final ShoeLaces db, final int threadsBefore, final int stackBefore,
+                            final Map<Integer, ThreadStatus> originals, final List<AttentionStack.Edit> stackEdits) {
+            final ThreadRegistry threads = db.threads();
+            final String[] registered = threads.names().subList(threadsBefore, threads.size()).toArray(new String[0]);
+
+            final List<Integer> changed = new ArrayList<>();
+            for (Map.Entry<Integer, ThreadStatus> original : originals.entrySet()) {
+                final int tid = original.getKey();
+                if (tid < threadsBefore && !original.getValue().toString().equals(threads.status(tid).toString())) {
+                    changed.add(tid);
+                }
+            }
+            for (int tid = threadsBefore; tid < threads.size(); tid++) {
+                if (!threads.status(tid).toString().isEmpty()) {
+                    changed.add(tid);
+                }
+            }
+
+            final int[] tids = new int[changed.size()];
+            final String[] before = new String[tids.length];
+            final String[] after = new String[tids.length];
+            for (int i = 0; i < tids.length; i++) {
+                tids[i] = changed.get(i);
+                before[i] = tids[i] < threadsBefore ? originals.get(tids[i]).toString() : "";
+                after[i] = threads.status(tids[i]).toString();
+            }
+
+            final int[] edited = new int[stackEdits.size()];
+            final int[] anchors = new int[edited.length];
+            final int[] markers = new int[edited.length];
+            for (int i = 0; i < edited.length; i++) {
+                final AttentionStack.Edit edit = stackEdits.get(i);
+                edited[i] = tid(threads, edit.name);
+                anchors[i] = edit.anchor != null ? tid(threads, edit.anchor) : -1;
+                markers[i] = edit.removed ? edit.markers : -1;
+            }
+
+            return new Step(threadsBefore, registered, tids, before, after, stackBefore, edited, anchors, markers);
+        }
+
+        private static int tid(final ThreadRegistry threads, final String name) {
+            return name.equals(AttentionStack.PAUSE_MARKER) ? -1 : threads.tid(name);
+        }
+
+        boolean isEmpty() {
+            return registered.length == 0 && tids.length == 0 && edited.length == 0;
+        }
+
+        private int stackAfter() {
+            int size = stackBefore;
+            for (int marker : markers) {
+                size += marker < 0 ? 1 : -1;
+            }
+            return size;
+        }
+
+        void undo(final ShoeLaces db) {
+            check(db, true);
+            // the stack first, while the names it refers to are still registered
+            edit(db, true);
+
+            final ThreadRegistry threads = db.threads();
+            threads.truncate(threadsBefore);
+            for (int i = 0; i < tids.length; i++) {
+                if (tids[i] < threadsBefore) {
+                    threads.put(tids[i], ThreadStatus.parse(before[i]));
+                }
+            }
+        }
+
+        void redo(final ShoeLaces db) {
+            check(db, false);
+            edit(db, false);
+
+            final ThreadRegistry threads = db.threads();
+            for (String name : registered) {
+                threads.register(name);
+            }
+            for (int i = 0; i < tids.length; i++) {
+                threads.put(tids[i], ThreadStatus.parse(after[i]));
+            }
+        }
+
+        /**
+         * @throws IllegalStateException unless the threads and statuses are as this step left them, when undoing, or
+         *                               found them, when redoing
+         */
+        private void check(final ShoeLaces db, final boolean undoing) {
+            final ThreadRegistry threads = db.threads();
+            final String[] statuses = undoing ? after : before;
+            final int size = undoing ? threadsBefore + registered.length : threadsBefore;
+            boolean matches = threads.size() == size
+                    && db.attention().size() == (undoing ? stackAfter() : stackBefore);
+            for (int i = 0; matches && i < tids.length; i++) {
+                matches = tids[i] >= size || threads.status(tids[i]).toString().equals(statuses[i]);
+            }
+
+            if (!matches) {
+                throw new IllegalStateException(CHANGED);
+            }
+        }
+
+        /**
+         * Replay the stack edits, backwards and inverted when undoing. If one no longer fits the stack, those already
+         * made are put back before giving up, so the stack is either fully moved or left alone.
+         *
+         * @throws IllegalStateException if an edit does not fit
+         */
+        private void edit(final ShoeLaces db, final boolean undoing) {
+            for (int e = 0; e < edited.length; e++) {
+                if (!edit(db, undoing ? edited.length - 1 - e : e, undoing)) {
+                    for (int back = e - 1; back >= 0; back--) {
+                        edit(db, undoing ? edited.length - 1 - back : back, !undoing);
+                    }
+                    throw new IllegalStateException(CHANGED);
+                }
+            }
+        }
+
+        /**
+         * @return false, changing nothing, if the edit does not fit the stack
+         */
+        private boolean edit(final ShoeLaces db, final int i, final boolean undoing) {
+            final AttentionStack stack = db.attention();
+            final String name = name(db.threads(), edited[i]);
+            if (markers[i] < 0) { // pushed
+                if (undoing) {
+                    if (!name.equals(stack.peek())) {
+                        return false;
+                    }
+                    stack.pop();
+                } else {
+                    if (!name.equals(AttentionStack.PAUSE_MARKER) && stack.contains(name)) {
+                        return false;
+                    }
+                    stack.push(name);
+                }
+                return true;
+            }
+
+            final String anchor = anchors[i] < 0 ? null : name(db.threads(), anchors[i]);
+            return undoing ? stack.insertAbove(name, anchor, markers[i]) : stack.removeAbove(name, anchor, markers[i]);
+        }
+
+        /**
+         * @return the name of the tid, which when redoing may be one of the threads this step is about to register
+         */
+        private String name(final ThreadRegistry threads, final int tid) {
+            if (tid < 0) {
+                return AttentionStack.PAUSE_MARKER;
+            }
+            return tid < threads.size() ? threads.name(tid) : registered[tid - threadsBefore];
+        }
+
+        void write(final DataOutputStream out) throws IOException {
+            out.writeInt(threadsBefore);
+            out.writeInt(threadsBefore + registered.length);
+            for (String name : registered) {
+                out.writeUTF(name);
+            }
+
+            out.writeInt(tids.length);
+            for (int i = 0; i < tids.length; i++) {
+                out.writeInt(tids[i]);
+                out.writeUTF(before[i]);
+                out.writeUTF(after[i]);
+            }
+
+            out.writeInt(stackBefore);
+            out.writeInt(edited.length);
+            for (int i = 0; i < edited.length; i++) {
+                out.writeInt(edited[i]);
+                out.writeInt(anchors[i]);
+                out.writeInt(markers[i]);
+            }
+            out.flush();
+        }
+
+        static Step read(final DataInputStream in) throws IOException {
+            final int threadsBefore = in.readInt();
+            final String[] registered = new String[in.readInt() - threadsBefore];
+            for (int i = 0; i < registered.length; i++) {
+                registered[i] = in.readUTF();
+            }
+
+            final int[] tids = new int[in.readInt()];
+            final String[] before = new String[tids.length];
+            final String[] after = new String[tids.length];
+            for (int i = 0; i < tids.length; i++) {
+                tids[i] = in.readInt();
+                before[i] = in.readUTF();
+                after[i] = in.readUTF();
+            }
+
+            final int stackBefore = in.readInt();
+            final int[] edited = new int[in.readInt()];
+            final int[] anchors = new int[edited.length];
+            final int[] markers = new int[edited.length];
+            for (int i = 0; i < edited.length; i++) {
+                edited[i] = in.readInt();
+                anchors[i] = in.readInt();
+                markers[i] = in.readInt();
+            }
+            return new Step(threadsBefore, registered, tids, before, after, stackBefore, edited, anchors, markers);
+        }
+    }
+}
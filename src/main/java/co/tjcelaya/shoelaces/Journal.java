@@ -0,0 +1,343 @@
+package co.tjcelaya.shoelaces;
+
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Journaled storage: a snapshot ({@code .sldb}) plus an append-only log of {@link Transition}s applied since.
+ * <p>
+ * Saving appends only the transitions recorded since the last save, so the cost follows the size of the change
+ * rather than the size of the database, and syncs the log as often as the {@link Durability} asks. Once the log grows
+ * past the compaction threshold the whole state is written out as a fresh snapshot and the log is truncated.
+ * <p>
+ * Every step survives a crash: {@link #load()} drops a record torn by a crash mid-append, and compaction writes the
+ * new snapshot to a {@code .checkpoint} file that only replaces the snapshot once the log it covers is gone.
+ */
+public class Journal implements ShoeLacesStore, Consumer<Transition> {
+
+    public static final String EXTENSION = ".journal";
+    public static final String CHECKPOINT_EXTENSION = ".checkpoint";
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 1000;
+
+    private final File snapshot;
+    private final File log;
+    private final File checkpoint;
+    private final int compactionThreshold;
+    private final Durability durability;
+    private final List<Transition> pending = new ArrayList<>();
+
+    /**
+     * Whether the state was replaced in a way no record describes, so that the next save must compact.
+     */
+    private boolean resynced;
+
+    /**
+     * Number of records currently in the log on disk.
+     */
+    private int logged;
+
+    private FileChannel channel;
+    private int unsynced;
+    private long oldestUnsyncedNanos;
+
+    public Journal(final File snapshot) {
+        this(snapshot, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    public Journal(final File snapshot, final int compactionThreshold) {
+        this(snapshot, compactionThreshold, Durability.GROUP);
+    }
+
+    public Journal(final File snapshot, final int compactionThreshold, final Durability durability) {
+        if (compactionThreshold < 1) {
+            throw new IllegalArgumentException("compaction threshold must be positive: " + compactionThreshold);
+        }
+
+        this.snapshot = snapshot;
+        this.log = new File(snapshot.getPath() + EXTENSION);
+        this.checkpoint = new File(snapshot.getPath() + CHECKPOINT_EXTENSION);
+        this.compactionThreshold = compactionThreshold;
+        this.durability = durability;
+    }
+
+    @Override
+    public File getFile() {
+        return snapshot;
+    }
+
+    public File getLog() {
+        return log;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Rebuild the state by loading the snapshot and replaying the log over it, then start recording the returned
+     * database's transitions.
+     * <p>
+     * A checkpoint left by a compaction that crashed is finished if the old log had already been removed, and
+     * discarded otherwise. A partial record at the end of the log, as left by a crash mid-append, is cut off.
+     *
+     * @throws IOException if a complete record in the log cannot be applied
+     */
+    @Override
+    public ShoeLaces load() throws IOException, ClassNotFoundException {
+        closeChannel();
+        recoverCheckpoint();
+
+        final ShoeLaces db = snapshot.exists()
+                ? ShoeLaces.load(snapshot)
+                : new ShoeLaces(FilenameUtils.getBaseName(snapshot.getName()));
+
+        logged = 0;
+        pending.clear();
+        resynced = false;
+
+        if (log.exists()) {
+            replay(db, true);
+        }
+
+        db.addListener(this);
+        return db;
+    }
+
+    /**
+     * Rebuild the state as {@link #load()} would, but without repairing anything on disk or recording changes, for
+     * readers that do not hold the database lock.
+     */
+    ShoeLaces read() throws IOException, ClassNotFoundException {
+        final boolean finishedCheckpoint = checkpoint.exists() && !log.exists();
+        final File base = finishedCheckpoint ? checkpoint : snapshot;
+
+        final ShoeLaces db;
+        if (!base.exists() || base.length() == 0L) {
+            db = new ShoeLaces(FilenameUtils.getBaseName(snapshot.getName()));
+        } else if (BinaryCodec.isBinary(snapshot)) {
+            db = BinaryCodec.read(base);
+        } else {
+            db = ShoeLacesCodec.read(base);
+        }
+
+        if (log.exists()) {
+            final int wasLogged = logged;
+            replay(db, false);
+            logged = wasLogged;
+        }
+        return db;
+    }
+
+    private void recoverCheckpoint() throws IOException {
+        if (!checkpoint.exists()) {
+            return;
+        }
+
+        if (log.exists()) {
+            // the crash came before the checkpoint was complete, and the log still holds everything it would have
+            if (!checkpoint.delete()) {
+                throw new IOException("could not remove incomplete checkpoint " + checkpoint);
+            }
+        } else {
+            AtomicFile.move(checkpoint, snapshot, durability.syncsSnapshots());
+        }
+    }
+
+    private void replay(final ShoeLaces db, final boolean repair) throws IOException {
+        final byte[] bytes = Files.readAllBytes(log.toPath());
+
+        int start = 0;
+        while (start < bytes.length) {
+            int end = start;
+            while (end < bytes.length && bytes[end] != '\n') {
+                end++;
+            }
+
+            // a crash mid-append leaves an unterminated record, or file space that was never written
+            if (end == bytes.length || isUnwritten(bytes, start, bytes.length)) {
+                if (repair) {
+                    truncate(start);
+                }
+                return;
+            }
+
+            final String line = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+            logged++;
+            try {
+                Transition.fromRecord(line).applyTo(db);
+            } catch (RuntimeException e) {
+                throw new IOException("corrupt journal " + log + " at record " + logged + ": " + line, e);
+            }
+
+            start = end + 1;
+        }
+    }
+
+    private static boolean isUnwritten(final byte[] bytes, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] != 0 && bytes[i] != '\n') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void truncate(final long length) throws IOException {
+        try (FileChannel truncating = FileChannel.open(log.toPath(), StandardOpenOption.WRITE)) {
+            truncating.truncate(length);
+            if (durability.syncsSnapshots()) {
+                truncating.force(false);
+            }
+        }
+    }
+
+    @Override
+    public void accept(final Transition transition) {
+        if (transition.getKind() == Transition.Kind.RESYNC) {
+            resynced = true;
+        } else {
+            pending.add(transition);
+        }
+    }
+
+    /**
+     * Persist the transitions recorded since the last save, compacting when the log has grown too long.
+     */
+    @Override
+    public void save(final ShoeLaces db) throws IOException {
+        if (resynced || logged + pending.size() > compactionThreshold) {
+            compact(db);
+            return;
+        }
+
+        if (pending.isEmpty()) {
+            syncIfDue();
+            return;
+        }
+
+        final StringBuilder records = new StringBuilder(pending.size() * 16);
+        for (Transition t : pending) {
+            records.append(t.toRecord()).append('\n');
+        }
+
+        final ByteBuffer buffer = ByteBuffer.wrap(records.toString().getBytes(StandardCharsets.UTF_8));
+        final FileChannel out = channel();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+
+        if (unsynced == 0) {
+            oldestUnsyncedNanos = System.nanoTime();
+        }
+        unsynced += pending.size();
+        logged += pending.size();
+        pending.clear();
+
+        syncIfDue();
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(log.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+
+    /**
+     * Sync the records waiting for a group commit if enough of them, or the oldest of them, are due.
+     */
+    void syncIfDue() throws IOException {
+        if (durability.isDue(unsynced, oldestUnsyncedNanos)) {
+            sync();
+        }
+    }
+
+    /**
+     * @return nanoseconds until the records waiting for a group commit are due to be synced, 0 if they already are,
+     * or -1 if none are waiting
+     */
+    long nanosUntilSync() {
+        return durability.nanosUntilDue(unsynced, oldestUnsyncedNanos);
+    }
+
+    int unsynced() {
+        return unsynced;
+    }
+
+    /**
+     * Force every record appended so far to stable storage, whatever the durability level.
+     */
+    public void sync() throws IOException {
+        if (channel != null && unsynced > 0) {
+            channel.force(false);
+        }
+        unsynced = 0;
+    }
+
+    /**
+     * Make {@code db} the snapshot, with an empty log.
+     */
+    @Override
+    public void write(final ShoeLaces db) throws IOException {
+        compact(db);
+    }
+
+    /**
+     * Write the whole state as a new snapshot and discard the log.
+     */
+    public void compact(final ShoeLaces db) throws IOException {
+        final boolean sync = durability.syncsSnapshots();
+
+        // the log must exist while the checkpoint is written, so that recovery can tell a partial checkpoint apart
+        channel();
+        closeChannel();
+
+        final boolean binary = BinaryCodec.isBinary(snapshot);
+        AtomicFile.writeTo(checkpoint, sync, out -> db.write(out, binary));
+
+        if (!log.delete()) {
+            throw new IOException("could not truncate journal " + log);
+        }
+        AtomicFile.move(checkpoint, snapshot, sync);
+
+        logged = 0;
+        pending.clear();
+        resynced = false;
+    }
+
+    /**
+     * Sync any records still waiting for a group commit, unless durability is {@link Durability#NONE}, and release
+     * the log.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (durability.syncsSnapshots()) {
+                sync();
+            }
+        } finally {
+            closeChannel();
+        }
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            try {
+                channel.close();
+            } finally {
+                channel = null;
+                unsynced = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,659 @@
+package co.tjcelaya.shoelaces;
+
+import java.io.*;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Embedded key-value store in one {@code .slkv} file, keyed by tid, that saves a change by rewriting only the pages
+ * it touched.
+ * <p>
+ * Layout, in 4 KiB pages, all integers big-endian:
+ * <pre>
+ * header     page 0: magic "SLKV", version, page size, page count, thread count, first directory page,
+ *            heap tail page and offset, long name ref, attention page, attention page count, attention depth
+ * directory  int next directory page (0 for none), then the page numbers of the slot pages, in tid order
+ * slots      64 slots of 64 bytes per page, one per tid: long name ref, byte status length, status text; a status
+ *            longer than fits inline has length 255, a long ref to its text and the int bytes reserved there instead
+ * heap       records of int byte length and UTF-8 bytes; names never change, so they are written once, and a status
+ *            is rewritten in place for as long as it fits the bytes reserved for it
+ * attention  a run of pages of tids, bottom first so that pushes and pops touch only its end, -1 for a pause
+ * </pre>
+ * A "ref" is an absolute file offset. Spawning a thread touches the header, one slot page, the heap tail page and,
+ * if the stack changed, the attention entries from the lowest one that moved, whatever the size of the database.
+ * <p>
+ * Space is never freed in place. A status that outgrows its record moves to one with twice the room, and an attention
+ * stack that outgrows its run of pages moves to a run twice as long, so what is left behind is at most what is in
+ * use. A migration writes a store without it.
+ * <p>
+ * A save first writes the pages it is about to change, with a checksum, to a {@code .wal} file next to the store,
+ * and only then overwrites them in place. Loading finishes a save that was interrupted after its log was complete
+ * and ignores one that was not, so the store always holds either the old or the new state.
+ */
+public class KeyValueStore implements ShoeLacesStore {
+
+    public static final String EXTENSION = ".slkv";
+    public static final String WAL_EXTENSION = ".wal";
+
+    static final int PAGE_SIZE = 4096;
+    static final int MAGIC = 0x534c4b56; // "SLKV"
+    static final int VERSION = 1;
+    static final int SLOT_BYTES = 64;
+    static final int SLOTS_PER_PAGE = PAGE_SIZE / SLOT_BYTES;
+    static final int DIRECTORY_ENTRIES = PAGE_SIZE / 4 - 1;
+    static final int INLINE_STATUS_BYTES = SLOT_BYTES - 9;
+    static final int OVERFLOW = 0xff;
+    static final int MIN_OVERFLOW_BYTES = 64;
+    static final int PAUSE_TID = -1;
+
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_PAGE_SIZE = 8;
+    private static final int HEADER_PAGE_COUNT = 12;
+    private static final int HEADER_THREADS = 16;
+    private static final int HEADER_DIRECTORY = 20;
+    private static final int HEADER_HEAP_PAGE = 24;
+    private static final int HEADER_HEAP_OFFSET = 28;
+    private static final int HEADER_NAME = 32;
+    private static final int HEADER_ATTENTION_PAGE = 40;
+    private static final int HEADER_ATTENTION_PAGES = 44;
+    private static final int HEADER_ATTENTION_DEPTH = 48;
+
+    private final File file;
+    private final File wal;
+    private final Durability durability;
+
+    /**
+     * What is on disk as of the last load or save.
+     */
+    private Layout stored = new Layout();
+
+    public KeyValueStore(final File file) {
+        this(file, Durability.GROUP);
+    }
+
+    public KeyValueStore(final File file, final Durability durability) {
+        this.file = file;
+        this.wal = new File(file.getPath() + WAL_EXTENSION);
+        this.durability = durability;
+    }
+
+    public static boolean isKeyValue(final File file) {
+        return file.getName().endsWith(EXTENSION);
+    }
+
+    @Override
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Finish or discard an interrupted save, then read every thread and start tracking changes.
+     */
+    @Override
+    public ShoeLaces load() throws IOException {
+        final Map<Integer, ByteBuffer> logged = readWal();
+        if (logged != null) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                writePages(channel, logged);
+                channel.force(false);
+            }
+        }
+        if (wal.exists() && !wal.delete()) {
+            throw new IOException("could not remove " + wal);
+        }
+
+        final ShoeLaces db = read(Collections.emptyMap());
+        db.threads().trackChanges();
+        db.attention().trackChanges();
+        return db;
+    }
+
+    /**
+     * Read the database without repairing anything, applying any complete log of an interrupted save on the fly,
+     * for readers that do not hold the database lock.
+     */
+    ShoeLaces read() throws IOException {
+        final Map<Integer, ByteBuffer> logged = readWal();
+        final Layout current = stored;
+        try {
+            return read(logged != null ? logged : Collections.emptyMap());
+        } finally {
+            stored = current;
+        }
+    }
+
+    private ShoeLaces read(final Map<Integer, ByteBuffer> overlay) throws IOException {
+        if (!file.exists() || (file.length() == 0L && overlay.isEmpty())) {
+            stored = new Layout();
+            return new ShoeLaces(file.getName());
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final Reader reader = new Reader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), overlay);
+            final ByteBuffer header = reader.page(0);
+            if (header.getInt(HEADER_MAGIC) != MAGIC) {
+                throw new IOException("not a key-value shoelaces store: " + file);
+            }
+            if (header.getInt(HEADER_VERSION) != VERSION || header.getInt(HEADER_PAGE_SIZE) != PAGE_SIZE) {
+                throw new IOException("unsupported key-value shoelaces store version: " + file);
+            }
+
+            final Layout layout = new Layout(header);
+
+            int directory = header.getInt(HEADER_DIRECTORY);
+            final int slotPageCount = (layout.threads + SLOTS_PER_PAGE - 1) / SLOTS_PER_PAGE;
+            layout.slotPages = new int[slotPageCount];
+            final List<Integer> directories = new ArrayList<>();
+            for (int i = 0; i < slotPageCount; i++) {
+                if (i % DIRECTORY_ENTRIES == 0) {
+                    if (i > 0) {
+                        directory = reader.page(directory).getInt(0);
+                    }
+                    directories.add(directory);
+                }
+                layout.slotPages[i] = reader.page(directory).getInt(4 + (i % DIRECTORY_ENTRIES) * 4);
+            }
+            layout.directoryPages = directories.stream().mapToInt(Integer::intValue).toArray();
+
+            final ThreadRegistry threads = new ThreadRegistry(layout.threads);
+            for (int tid = 0; tid < layout.threads; tid++) {
+                final ByteBuffer slots = reader.page(layout.slotPages[tid / SLOTS_PER_PAGE]);
+                final int slot = (tid % SLOTS_PER_PAGE) * SLOT_BYTES;
+
+                final String name = reader.string(slots.getLong(slot));
+                final int length = slots.get(slot + 8) & 0xff;
+                final String status;
+                if (length == OVERFLOW) {
+                    status = reader.string(slots.getLong(slot + 9));
+                } else {
+                    final byte[] text = new byte[length];
+                    for (int i = 0; i < length; i++) {
+                        text[i] = slots.get(slot + 9 + i);
+                    }
+                    status = new String(text, StandardCharsets.UTF_8);
+                }
+
+                if (threads.register(name) != tid) {
+                    throw new IOException("corrupt key-value shoelaces store: duplicate thread " + name);
+                }
+                threads.put(tid, ThreadStatus.parse(status));
+            }
+
+            final AttentionStack attention = new AttentionStack();
+            for (int i = 0; i < layout.attention.length; i++) {
+                final long at = (long) layout.attentionPage * PAGE_SIZE + i * 4L;
+                layout.attention[i] = reader.page((int) (at / PAGE_SIZE)).getInt((int) (at % PAGE_SIZE));
+            }
+            for (int i = layout.attention.length - 1; i >= 0; i--) {
+                attention.addBottom(layout.attention[i] == PAUSE_TID
+                        ? AttentionStack.PAUSE_MARKER
+                        : threads.name(layout.attention[i]));
+            }
+
+            stored = layout;
+            return new ShoeLaces(reader.string(header.getLong(HEADER_NAME)), threads, attention);
+        } catch (IndexOutOfBoundsException | NoSuchElementException | IllegalArgumentException e) {
+            throw new IOException("corrupt key-value shoelaces store: " + file, e);
+        }
+    }
+
+    /**
+     * Write the slots of the threads registered or changed since the last load or save, and the attention stack if
+     * it changed.
+     */
+    @Override
+    public void save(final ShoeLaces db) throws IOException {
+        final BitSet changed = db.threads().changed();
+        if (changed == null) {
+            throw new IllegalStateException("not loaded from this store");
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final Writer writer = new Writer(channel, stored.copy());
+            writer.write(db, changed, db.attention().unchanged());
+            if (writer.pages.isEmpty()) {
+                return;
+            }
+
+            final boolean sync = durability.syncsSnapshots();
+            writeWal(writer.pages, sync);
+            writePages(channel, writer.pages);
+            if (sync) {
+                channel.force(false);
+            }
+            if (!wal.delete()) {
+                throw new IOException("could not remove " + wal);
+            }
+
+            stored = writer.layout;
+            changed.clear();
+            db.attention().trackChanges();
+        }
+    }
+
+    /**
+     * Build a new store holding {@code db} next to the old one and rename it into place.
+     */
+    @Override
+    public void write(final ShoeLaces db) throws IOException {
+        final File temp = new File(file.getPath() + AtomicFile.TEMP_EXTENSION);
+        final boolean sync = durability.syncsSnapshots();
+        final Layout layout;
+        try {
+            try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                final BitSet all = new BitSet();
+                all.set(0, db.threads().size());
+
+                final Writer writer = new Writer(channel, new Layout());
+                writer.write(db, all, 0);
+                writePages(channel, writer.pages);
+                if (sync) {
+                    channel.force(false);
+                }
+                layout = writer.layout;
+            }
+
+            // a log left by a crashed save belongs to the file being replaced
+            if (wal.exists() && !wal.delete()) {
+                throw new IOException("could not remove " + wal);
+            }
+            AtomicFile.move(temp, file, sync);
+        } finally {
+            temp.delete();
+        }
+
+        stored = layout;
+    }
+
+    // Write-ahead log: per page an int page number and the page, then an int page count and a long CRC32 of it all
+
+    private void writeWal(final Map<Integer, ByteBuffer> pages, final boolean sync) throws IOException {
+        AtomicFile.writeTo(wal, sync, stream -> {
+            final CRC32 crc = new CRC32();
+            final DataOutputStream out = new DataOutputStream(stream);
+            for (Map.Entry<Integer, ByteBuffer> page : pages.entrySet()) {
+                final byte[] bytes = page.getValue().array();
+                out.writeInt(page.getKey());
+                out.write(bytes);
+                crc.update(page.getKey() >>> 24);
+                crc.update(page.getKey() >>> 16);
+                crc.update(page.getKey() >>> 8);
+                crc.update(page.getKey());
+                crc.update(bytes);
+            }
+            out.writeInt(pages.size());
+            out.writeLong(crc.getValue());
+            out.flush();
+        });
+    }
+
+    /**
+     * @return the pages of a complete log, or null if there is none or it was cut short
+     */
+    private Map<Integer, ByteBuffer> readWal() throws IOException {
+        if (!wal.exists()) {
+            return null;
+        }
+
+        final ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(wal.toPath()));
+        final int entry = 4 + PAGE_SIZE;
+        if (log.limit() < 12 || (log.limit() - 12) % entry != 0) {
+            return null;
+        }
+
+        final int count = (log.limit() - 12) / entry;
+        if (log.getInt(log.limit() - 12) != count) {
+            return null;
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(log.array(), 0, log.limit() - 12);
+        if (crc.getValue() != log.getLong(log.limit() - 8)) {
+            return null;
+        }
+
+        final Map<Integer, ByteBuffer> pages = new TreeMap<>();
+        for (int i = 0; i < count; i++) {
+            final int at = i * entry;
+            pages.put(log.getInt(at), ByteBuffer.wrap(Arrays.copyOfRange(log.array(), at + 4, at + entry)));
+        }
+        return pages;
+    }
+
+    private static void writePages(final FileChannel channel, final Map<Integer, ByteBuffer> pages)
+            throws IOException {
+        for (Map.Entry<Integer, ByteBuffer> page : pages.entrySet()) {
+            final ByteBuffer bytes = ByteBuffer.wrap(page.getValue().array());
+            long position = (long) page.getKey() * PAGE_SIZE;
+            while (bytes.hasRemaining()) {
+                position += channel.write(bytes, position);
+            }
+        }
+    }
+
+    /**
+     * Where things are in the file: the header fields that change, plus the directory and slot page numbers and the
+     * stored attention stack.
+     */
+    private static final class Layout {
+        int pageCount;
+        int threads;
+        int heapPage;
+        int heapOffset;
+        int attentionPage;
+        int attentionPages;
+        int[] attention = new int[0];
+        int[] slotPages = new int[0];
+        int[] directoryPages = new int[0];
+
+        Layout() {
+        }
+
+        Layout(final ByteBuffer header) {
+            pageCount = header.getInt(HEADER_PAGE_COUNT);
+            threads = header.getInt(HEADER_THREADS);
+            heapPage = header.getInt(HEADER_HEAP_PAGE);
+            heapOffset = header.getInt(HEADER_HEAP_OFFSET);
+            attentionPage = header.getInt(HEADER_ATTENTION_PAGE);
+            attentionPages = header.getInt(HEADER_ATTENTION_PAGES);
+            attention = new int[header.getInt(HEADER_ATTENTION_DEPTH)];
+        }
+
+        Layout copy() {
+            final Layout copy = new Layout();
+            copy.pageCount = pageCount;
+            copy.threads = threads;
+            copy.heapPage = heapPage;
+            copy.heapOffset = heapOffset;
+            copy.attentionPage = attentionPage;
+            copy.attentionPages = attentionPages;
+            copy.attention = attention;
+            copy.slotPages = slotPages;
+            copy.directoryPages = directoryPages;
+            return copy;
+        }
+    }
+
+    /**
+     * Pages of a mapped file, with pages from a write-ahead log taking precedence.
+     */
+    private static final class Reader {
+        private final MappedByteBuffer file;
+        private final Map<Integer, ByteBuffer> overlay;
+
+        Reader(final MappedByteBuffer file, final Map<Integer, ByteBuffer> overlay) {
+            this.file = file;
+            this.overlay = overlay;
+        }
+
+        ByteBuffer page(final int page) {
+            final ByteBuffer logged = overlay.get(page);
+            if (logged != null) {
+                return logged;
+            }
+
+            final ByteBuffer view = file.duplicate();
+            // Buffer's signatures, so the class still links on Java 8
+            ((Buffer) view).limit(Math.min(view.capacity(), (page + 1) * PAGE_SIZE));
+            ((Buffer) view).position(page * PAGE_SIZE);
+            return view.slice();
+        }
+
+        String string(final long ref) {
+            final int length = page((int) (ref / PAGE_SIZE)).getInt((int) (ref % PAGE_SIZE));
+            final byte[] bytes = new byte[length];
+            long at = ref + 4;
+            for (int i = 0; i < length; ) {
+                final ByteBuffer page = page((int) (at / PAGE_SIZE));
+                final int offset = (int) (at % PAGE_SIZE);
+                final int n = Math.min(length - i, PAGE_SIZE - offset);
+                for (int j = 0; j < n; j++) {
+                    bytes[i + j] = page.get(offset + j);
+                }
+                i += n;
+                at += n;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * The pages one save changes, kept in memory until they are logged and written.
+     */
+    private static final class Writer {
+        final FileChannel channel;
+        final Layout layout;
+        final Map<Integer, ByteBuffer> pages = new TreeMap<>();
+        private final int pagesOnDisk;
+
+        Writer(final FileChannel channel, final Layout layout) throws IOException {
+            this.channel = channel;
+            this.layout = layout;
+            this.pagesOnDisk = (int) (channel.size() / PAGE_SIZE);
+        }
+
+        /**
+         * @param changed     tids to write
+         * @param unchanged   number of entries at the bottom of the attention stack known to be as stored
+         */
+        void write(final ShoeLaces db, final BitSet changed, final int unchanged) throws IOException {
+            final ThreadRegistry threads = db.threads();
+            final int from = Math.min(unchanged, layout.attention.length);
+            final int[] attention = attention(db.attention(), threads, from);
+            final boolean attentionChanged = attention.length != layout.attention.length
+                    || differs(attention, layout.attention, from);
+            if (changed.isEmpty() && !attentionChanged && layout.pageCount > 0) {
+                return;
+            }
+
+            final ByteBuffer header = page(0);
+            if (layout.pageCount == 0) {
+                layout.pageCount = 1;
+                header.putInt(HEADER_MAGIC, MAGIC);
+                header.putInt(HEADER_VERSION, VERSION);
+                header.putInt(HEADER_PAGE_SIZE, PAGE_SIZE);
+                header.putLong(HEADER_NAME, append(db.getName()));
+            }
+
+            for (int tid = changed.nextSetBit(0); tid >= 0; tid = changed.nextSetBit(tid + 1)) {
+                if (tid >= threads.size()) {
+                    break;
+                }
+
+                final long nameRef;
+                if (tid < layout.threads) {
+                    nameRef = slots(tid).getLong(slot(tid));
+                } else {
+                    nameRef = append(threads.name(tid));
+                    addSlot(tid);
+                }
+
+                final ByteBuffer slots = slots(tid);
+                final int slot = slot(tid);
+                slots.putLong(slot, nameRef);
+
+                final byte[] status = threads.status(tid).toString().getBytes(StandardCharsets.UTF_8);
+                if (status.length <= INLINE_STATUS_BYTES) {
+                    slots.put(slot + 8, (byte) status.length);
+                    for (int i = 0; i < status.length; i++) {
+                        slots.put(slot + 9 + i, status[i]);
+                    }
+                } else if (tid < layout.threads && (slots.get(slot + 8) & 0xff) == OVERFLOW
+                        && status.length <= slots.getInt(slot + 17)) {
+                    put(slots.getLong(slot + 9), status); // still fits where it was
+                } else {
+                    int reserved = MIN_OVERFLOW_BYTES;
+                    while (reserved < status.length) {
+                        reserved *= 2;
+                    }
+                    slots.put(slot + 8, (byte) OVERFLOW);
+                    slots.putLong(slot + 9, append(status, reserved));
+                    slots.putInt(slot + 17, reserved);
+                }
+            }
+            layout.threads = Math.max(layout.threads, threads.size());
+
+            if (attentionChanged) {
+                final int pagesNeeded = Math.max(1, (attention.length * 4 + PAGE_SIZE - 1) / PAGE_SIZE);
+                final boolean moved = pagesNeeded > layout.attentionPages;
+                if (moved) {
+                    // the old run is abandoned, see the class comment
+                    layout.attentionPages = Math.max(pagesNeeded, layout.attentionPages * 2);
+                    layout.attentionPage = allocate(layout.attentionPages);
+                }
+                for (int i = moved ? 0 : from; i < attention.length; i++) {
+                    if (moved || i >= layout.attention.length || attention[i] != layout.attention[i]) {
+                        final long at = (long) layout.attentionPage * PAGE_SIZE + i * 4L;
+                        page((int) (at / PAGE_SIZE)).putInt((int) (at % PAGE_SIZE), attention[i]);
+                    }
+                }
+                layout.attention = attention;
+            }
+
+            header.putInt(HEADER_PAGE_COUNT, layout.pageCount);
+            header.putInt(HEADER_THREADS, layout.threads);
+            header.putInt(HEADER_DIRECTORY, layout.directoryPages.length > 0 ? layout.directoryPages[0] : 0);
+            header.putInt(HEADER_HEAP_PAGE, layout.heapPage);
+            header.putInt(HEADER_HEAP_OFFSET, layout.heapOffset);
+            header.putInt(HEADER_ATTENTION_PAGE, layout.attentionPage);
+            header.putInt(HEADER_ATTENTION_PAGES, layout.attentionPages);
+            header.putInt(HEADER_ATTENTION_DEPTH, layout.attention.length);
+        }
+
+        /**
+         * @return the stack's tids bottom first, the bottom {@code from} copied from the stored stack
+         */
+        private int[] attention(final AttentionStack stack, final ThreadRegistry threads, final int from) {
+            final int[] tids = Arrays.copyOf(layout.attention, stack.size());
+            int i = tids.length;
+            for (String at : stack) {
+                if (i == from) {
+                    break;
+                }
+                tids[--i] = at.equals(AttentionStack.PAUSE_MARKER) ? PAUSE_TID : threads.tid(at);
+            }
+            return tids;
+        }
+
+        private static boolean differs(final int[] a, final int[] b, final int from) {
+            for (int i = from; i < a.length; i++) {
+                if (a[i] != b[i]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private ByteBuffer slots(final int tid) throws IOException {
+            return page(layout.slotPages[tid / SLOTS_PER_PAGE]);
+        }
+
+        private static int slot(final int tid) {
+            return (tid % SLOTS_PER_PAGE) * SLOT_BYTES;
+        }
+
+        private void addSlot(final int tid) throws IOException {
+            final int index = tid / SLOTS_PER_PAGE;
+            if (index < layout.slotPages.length) {
+                return;
+            }
+
+            final int slotPage = allocate(1);
+            layout.slotPages = Arrays.copyOf(layout.slotPages, index + 1);
+            layout.slotPages[index] = slotPage;
+
+            final int directoryIndex = index / DIRECTORY_ENTRIES;
+            if (directoryIndex >= layout.directoryPages.length) {
+                final int directoryPage = allocate(1);
+                if (directoryIndex > 0) {
+                    page(layout.directoryPages[directoryIndex - 1]).putInt(0, directoryPage);
+                }
+                layout.directoryPages = Arrays.copyOf(layout.directoryPages, directoryIndex + 1);
+                layout.directoryPages[directoryIndex] = directoryPage;
+            }
+            page(layout.directoryPages[directoryIndex]).putInt(4 + (index % DIRECTORY_ENTRIES) * 4, slotPage);
+        }
+
+        private long append(final String s) throws IOException {
+            final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            return append(bytes, bytes.length);
+        }
+
+        /**
+         * Add a record to the heap with room for {@code reserved} bytes, within the tail page if it fits, or else
+         * starting a new page or run of pages.
+         */
+        private long append(final byte[] bytes, final int reserved) throws IOException {
+            final int needed = 4 + reserved;
+            if (layout.heapPage == 0 || layout.heapOffset + needed > PAGE_SIZE) {
+                layout.heapPage = allocate((needed + PAGE_SIZE - 1) / PAGE_SIZE);
+                layout.heapOffset = 0;
+            }
+
+            final long ref = (long) layout.heapPage * PAGE_SIZE + layout.heapOffset;
+            put(ref, bytes);
+
+            if (needed > PAGE_SIZE) {
+                // the run is full; start the next record on a fresh page
+                layout.heapPage = 0;
+                layout.heapOffset = 0;
+            } else {
+                layout.heapOffset += needed;
+            }
+            return ref;
+        }
+
+        /**
+         * Write a heap record at {@code ref}.
+         */
+        private void put(final long ref, final byte[] bytes) throws IOException {
+            page((int) (ref / PAGE_SIZE)).putInt((int) (ref % PAGE_SIZE), bytes.length);
+            long at = ref + 4;
+            for (byte b : bytes) {
+                page((int) (at / PAGE_SIZE)).put((int) (at % PAGE_SIZE), b);
+                at++;
+            }
+        }
+
+        private int allocate(final int count) {
+            final int first = layout.pageCount;
+            layout.pageCount += count;
+            for (int i = first; i < layout.pageCount; i++) {
+                pages.put(i, ByteBuffer.allocate(PAGE_SIZE));
+            }
+            return first;
+        }
+
+        /**
+         * @return the page, read from disk the first time this save touches it
+         */
+        private ByteBuffer page(final int page) throws IOException {
+            ByteBuffer buffer = pages.get(page);
+            if (buffer == null) {
+                buffer = ByteBuffer.allocate(PAGE_SIZE);
+                if (page < pagesOnDisk) {
+                    long position = (long) page * PAGE_SIZE;
+                    while (buffer.hasRemaining()) {
+                        final int read = channel.read(buffer, position);
+                        if (read < 0) {
+                            break;
+                        }
+                        position += read;
+                    }
+                }
+                pages.put(page, buffer);
+            }
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package co.tjcelaya.shoelaces;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static co.tjcelaya.shoelaces.BinaryCodec.*;
+
+/**
+ * Read-only view of a memory-mapped {@code .slb} file that decodes only the entries it is asked about.
+ * <p>
+ * Opening the file reads just the header; {@link #lookup(int)} and {@link #current()} each decode a single pool
+ * entry, and {@link #print(Appendable, PrintOptions)} decodes only the rows it prints. Decoded names are cached, so
+ * repeated reads of the same tid do not allocate.
+ */
+public class MappedShoeLaces {
+
+    private final ByteBuffer buffer;
+    private final int threadCount;
+    private final int attentionCount;
+    private final int nameRef;
+    private final int longestName;
+    private final String[] names;
+
+    private MappedShoeLaces(final ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("not a binary shoelaces file");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("unsupported binary shoelaces version: " + buffer.getInt(4));
+        }
+
+        this.nameRef = buffer.getInt(8);
+        this.threadCount = buffer.getInt(12);
+        this.attentionCount = buffer.getInt(16);
+        this.longestName = buffer.getInt(20);
+
+        final long tablesEnd = HEADER_BYTES
+                + (long) threadCount * THREAD_ENTRY_BYTES
+                + (long) attentionCount * ATTENTION_ENTRY_BYTES;
+        if (threadCount < 0 || attentionCount < 0 || longestName < 0 || tablesEnd > buffer.limit()) {
+            throw new IOException("truncated binary shoelaces file");
+        }
+
+        this.names = new String[threadCount];
+    }
+
+    static MappedShoeLaces open(final File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedShoeLaces(mapped);
+        }
+    }
+
+    public String getName() throws IOException {
+        return string(nameRef);
+    }
+
+    public int size() {
+        return threadCount;
+    }
+
+    public String lookup(final int tid) throws IOException {
+        if (tid < 0 || tid >= threadCount) {
+            throw new NoSuchElementException("tid not found: " + tid);
+        }
+
+        String name = names[tid];
+        if (name == null) {
+            name = string(nameRef(tid));
+            names[tid] = name;
+        }
+        return name;
+    }
+
+    /**
+     * @return how many names have been decoded so far
+     */
+    int decodedNames() {
+        int decoded = 0;
+        for (String name : names) {
+            if (name != null) {
+                decoded++;
+            }
+        }
+        return decoded;
+    }
+
+    public String status(final int tid) throws IOException {
+        return string(statusRef(tid));
+    }
+
+    /**
+     * @return the pool reference of the thread's status, shared by every thread with the same status text
+     */
+    int statusRef(final int tid) {
+        if (tid < 0 || tid >= threadCount) {
+            throw new NoSuchElementException("tid not found: " + tid);
+        }
+        return buffer.getInt(HEADER_BYTES + tid * THREAD_ENTRY_BYTES + 4);
+    }
+
+    /**
+     * Find a thread's tid. Unlike {@link ShoeLaces#tid(String)} this scans the thread table, comparing pool entries
+     * without decoding them.
+     *
+     * @return the tid, or -1 if there is no such thread
+     */
+    public int tid(final String thread) {
+        final byte[] wanted = thread.getBytes(StandardCharsets.UTF_8);
+        for (int tid = 0; tid < threadCount; tid++) {
+            if (matches(nameRef(tid), wanted)) {
+                return tid;
+            }
+        }
+        return -1;
+    }
+
+    public int attentionDepth() {
+        return attentionCount;
+    }
+
+    /**
+     * @param index position on the attention stack, 0 being the top
+     * @return the thread there, or {@link AttentionStack#PAUSE_MARKER}
+     */
+    public String attention(final int index) throws IOException {
+        if (index < 0 || index >= attentionCount) {
+            throw new NoSuchElementException("attention index out of range: " + index);
+        }
+
+        final int ref = attentionRef(index);
+        return ref == PAUSE_REF ? AttentionStack.PAUSE_MARKER : string(ref);
+    }
+
+    /**
+     * @return the running thread, or null when paused or idle
+     */
+    public String current() throws IOException {
+        if (attentionCount == 0) {
+            return null;
+        }
+
+        final int ref = attentionRef(0);
+        return ref == PAUSE_REF ? null : string(ref);
+    }
+
+    public boolean isPaused() {
+        return attentionCount > 0 && attentionRef(0) == PAUSE_REF;
+    }
+
+    public boolean isRunning() {
+        return attentionCount > 0 && attentionRef(0) != PAUSE_REF;
+    }
+
+    /**
+     * Decode everything into a mutable database.
+     */
+    public ShoeLaces toShoeLaces() throws IOException {
+        final ThreadRegistry threads = new ThreadRegistry(threadCount);
+        for (int tid = 0; tid < threadCount; tid++) {
+            threads.put(threads.register(lookup(tid)), parseStatus(status(tid)));
+        }
+
+        final AttentionStack attention = new AttentionStack();
+        for (int i = 0; i < attentionCount; i++) {
+            attention.addBottom(attention(i));
+        }
+
+        return new ShoeLaces(getName(), threads, attention);
+    }
+
+    public String print() throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        print(sb, PrintOptions.all());
+        return sb.toString();
+    }
+
+    /**
+     * Write the same text as {@link ShoeLaces#print(Appendable, PrintOptions)} without decoding the database: only
+     * the attention stack and the rows that are printed are decoded, and the rest are skipped over in the mapping.
+     */
+    public void print(final Appendable out, final PrintOptions options) throws IOException {
+        out.append("name: ").append(getName()).append("\n\nstatus: ");
+        if (attentionCount == 0) {
+            out.append(" - EMPTY -");
+        } else {
+            out.append(isPaused() ? " - PAUSED - " : " RUN: ");
+            for (int i = 0; i < attentionCount; i++) {
+                if (i > 0) {
+                    out.append(" < ");
+                }
+                out.append(attention(i));
+            }
+        }
+        out.append("\n\n");
+
+        if (threadCount == 0) {
+            return;
+        }
+
+        new ThreadTable() {
+            private Set<Integer> stacked;
+
+            @Override
+            int size() {
+                return threadCount;
+            }
+
+            @Override
+            int longestName() {
+                return longestName;
+            }
+
+            @Override
+            int[] subtree(final String prefix) {
+                final byte[] wanted = prefix.getBytes(StandardCharsets.UTF_8);
+                int[] tids = new int[16];
+                int found = 0;
+                for (int tid = 0; tid < threadCount; tid++) {
+                    if (isUnder(nameRef(tid), wanted)) {
+                        if (found == tids.length) {
+                            tids = Arrays.copyOf(tids, found * 2);
+                        }
+                        tids[found++] = tid;
+                    }
+                }
+                return Arrays.copyOf(tids, found);
+            }
+
+            @Override
+            String name(final int tid) throws IOException {
+                return lookup(tid);
+            }
+
+            @Override
+            char last(final int tid) throws IOException {
+                final int ref = statusRef(tid);
+                final int length = entryLength(ref);
+                final char last = length == 0 ? 0 : (char) buffer.get(ref + 4 + length - 1);
+                if (length == 0 || last == 'I' || last == 'E' || last == 'K') {
+                    return last;
+                }
+                return parseStatus(string(ref)).last(); // counts without recent letters
+            }
+
+            @Override
+            boolean isOnStack(final int tid) {
+                if (stacked == null) {
+                    // every distinct string is pooled once, so a thread on the stack shares its name's ref
+                    stacked = new HashSet<>();
+                    for (int i = 0; i < attentionCount; i++) {
+                        stacked.add(attentionRef(i));
+                    }
+                }
+                return stacked.contains(nameRef(tid));
+            }
+
+            @Override
+            void appendStatus(final Appendable out, final int tid) throws IOException {
+                final int ref = statusRef(tid);
+                final int length = entryLength(ref);
+                for (int i = 0; i < length; i++) {
+                    out.append((char) buffer.get(ref + 4 + i)); // status text is ASCII
+                }
+            }
+        }.print(out, options, current());
+    }
+
+    private int nameRef(final int tid) {
+        return buffer.getInt(HEADER_BYTES + tid * THREAD_ENTRY_BYTES);
+    }
+
+    /**
+     * @return whether the pool entry is {@code prefix} itself or a name below it in the dotted namespace
+     */
+    private boolean isUnder(final int ref, final byte[] prefix) {
+        if (ref < 0 || ref > buffer.limit() - 4) {
+            return false;
+        }
+
+        final int length = buffer.getInt(ref);
+        if (length < prefix.length || length > buffer.limit() - ref - 4
+                || (length > prefix.length && buffer.get(ref + 4 + prefix.length) != '.')) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(ref + 4 + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int attentionRef(final int index) {
+        return buffer.getInt(HEADER_BYTES + threadCount * THREAD_ENTRY_BYTES + index * ATTENTION_ENTRY_BYTES);
+    }
+
+    private int entryLength(final int ref) throws IOException {
+        if (ref < 0 || ref > buffer.limit() - 4) {
+            throw new IOException("corrupt binary shoelaces file: bad reference " + ref);
+        }
+
+        final int length = buffer.getInt(ref);
+        if (length < 0 || length > buffer.limit() - ref - 4) {
+            throw new IOException("corrupt binary shoelaces file: bad length at " + ref);
+        }
+        return length;
+    }
+
+    String string(final int ref) throws IOException {
+        final byte[] bytes = new byte[entryLength(ref)];
+        final ByteBuffer view = buffer.duplicate();
+        ((Buffer) view).position(ref + 4); // Buffer's signature, so the class still links on Java 8
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean matches(final int ref, final byte[] wanted) {
+        if (ref < 0 || ref > buffer.limit() - 4 || buffer.getInt(ref) != wanted.length) {
+            return false;
+        }
+
+        for (int i = 0; i < wanted.length; i++) {
+            if (buffer.get(ref + 4 + i) != wanted[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ThreadStatus parseStatus(final String text) throws IOException {
+        try {
+            return ThreadStatus.parse(text);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("corrupt binary shoelaces file: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package co.tjcelaya.shoelaces;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide timers and counters for every mutation, lookup and persistence call.
+ * <p>
+ * Off until {@link #enable()}d, when recording costs a field read and the counters are not even created. Once on,
+ * each operation costs two {@link System#nanoTime()} calls and a few uncontended adds; the coarse persistence and
+ * command spans also read the thread's allocated bytes, where the JVM reports them. Only operations that complete are
+ * recorded.
+ * <p>
+ * The numbers are shown by {@code sl --stats}, written in the Prometheus text format to a {@code .metrics} file next
+ * to the database by batches and the daemon, and served over JMX by the daemon.
+ */
+public final class Metrics {
+
+    public static final String EXTENSION = ".metrics";
+    public static final String OBJECT_NAME = "co.tjcelaya.shoelaces:type=Metrics";
+
+    public enum Operation {
+        STARTUP(false), SPAWN(false), INTERRUPT(false), EXIT(false), KILL(false), EXIT_TREE(false), KILL_TREE(false),
+        PAUSE(false), RESUME(false), LOOKUP(false), LOAD(true), SAVE(true), WRITE(true), COMMAND(true);
+
+        private final boolean coarse;
+        private final String label = name().toLowerCase(Locale.ROOT).replace('_', '-');
+
+        Operation(final boolean coarse) {
+            this.coarse = coarse;
+        }
+
+        public String label() {
+            return label;
+        }
+    }
+
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final Span NONE = new Span(null, 0L, -1L);
+
+    private static volatile boolean enabled;
+
+    private Metrics() {
+    }
+
+    /**
+     * The counters, created the first time anything is recorded or read so that a plain invocation never pays for
+     * them.
+     */
+    private static final class Counters {
+        static final LongAdder[] COUNTS = adders();
+        static final LongAdder[] NANOS = adders();
+        static final LongAdder[] ALLOCATED = adders();
+        static final LongAccumulator[] MAX_NANOS = new LongAccumulator[OPERATIONS.length];
+
+        static {
+            for (int i = 0; i < MAX_NANOS.length; i++) {
+                MAX_NANOS[i] = new LongAccumulator(Math::max, 0L);
+            }
+        }
+
+        private static LongAdder[] adders() {
+            final LongAdder[] adders = new LongAdder[OPERATIONS.length];
+            for (int i = 0; i < adders.length; i++) {
+                adders[i] = new LongAdder();
+            }
+            return adders;
+        }
+    }
+
+    public static void enable() {
+        enabled = true;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return a start time to hand to {@link #record(Operation, long)}, or 0 when disabled
+     */
+    static long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    static void record(final Operation operation, final long start) {
+        if (start != 0L) {
+            add(operation, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Time a coarse operation, and count what the current thread allocates during it, until the span is closed.
+     */
+    static Span span(final Operation operation) {
+        return enabled ? new Span(operation, System.nanoTime(), Allocations.current()) : NONE;
+    }
+
+    /**
+     * Record the time from JVM start to now, once, as {@link Operation#STARTUP}.
+     */
+    static void recordStartup() {
+        if (enabled && Counters.COUNTS[Operation.STARTUP.ordinal()].sum() == 0L) {
+            add(Operation.STARTUP, TimeUnit.MILLISECONDS.toNanos(ManagementFactory.getRuntimeMXBean().getUptime()));
+        }
+    }
+
+    private static void add(final Operation operation, final long nanos) {
+        final int i = operation.ordinal();
+        Counters.COUNTS[i].increment();
+        Counters.NANOS[i].add(nanos);
+        Counters.MAX_NANOS[i].accumulate(nanos);
+    }
+
+    public static long count(final Operation operation) {
+        return Counters.COUNTS[operation.ordinal()].sum();
+    }
+
+    public static long nanos(final Operation operation) {
+        return Counters.NANOS[operation.ordinal()].sum();
+    }
+
+    public static long maxNanos(final Operation operation) {
+        return Counters.MAX_NANOS[operation.ordinal()].get();
+    }
+
+    /**
+     * @return bytes allocated by the calling threads during the operation, or -1 if not measured
+     */
+    public static long allocatedBytes(final Operation operation) {
+        return operation.coarse && Allocations.SUPPORTED ? Counters.ALLOCATED[operation.ordinal()].sum() : -1L;
+    }
+
+    /**
+     * @return the number of operations recorded so far, to tell whether anything changed
+     */
+    static long total() {
+        long total = 0L;
+        for (LongAdder count : Counters.COUNTS) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    static void reset() {
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            Counters.COUNTS[i].reset();
+            Counters.NANOS[i].reset();
+            Counters.ALLOCATED[i].reset();
+            Counters.MAX_NANOS[i].reset();
+        }
+    }
+
+    // Output
+
+    /**
+     * Write a table of the operations seen so far, for {@code --stats}.
+     */
+    static void printTable(final PrintStream out) {
+        out.println(String.format("%-10s %8s %12s %10s %10s %12s",
+                "operation", "count", "total ms", "mean us", "max us", "allocated"));
+        for (Operation operation : OPERATIONS) {
+            final long count = count(operation);
+            if (count == 0L) {
+                continue;
+            }
+
+            final long allocated = allocatedBytes(operation);
+            out.println(String.format(Locale.ROOT, "%-10s %8d %12.3f %10.1f %10.1f %12s",
+                    operation.label(),
+                    count,
+                    nanos(operation) / 1e6,
+                    nanos(operation) / 1e3 / count,
+                    maxNanos(operation) / 1e3,
+                    allocated < 0L ? "-" : allocated / 1024 + " KiB"));
+        }
+    }
+
+    /**
+     * Write every operation's numbers, and the JVM's collector totals, in the Prometheus text exposition format.
+     */
+    static void writePrometheus(final Appendable out) throws IOException {
+        family(out, "shoelaces_operations_total", "counter", "Completed operations.");
+        for (Operation operation : OPERATIONS) {
+            sample(out, "shoelaces_operations_total", operation, Long.toString(count(operation)));
+        }
+
+        family(out, "shoelaces_operation_seconds_total", "counter", "Time spent in completed operations.");
+        for (Operation operation : OPERATIONS) {
+            sample(out, "shoelaces_operation_seconds_total", operation, seconds(nanos(operation)));
+        }
+
+        family(out, "shoelaces_operation_max_seconds", "gauge", "Longest single operation.");
+        for (Operation operation : OPERATIONS) {
+            sample(out, "shoelaces_operation_max_seconds", operation, seconds(maxNanos(operation)));
+        }
+
+        if (Allocations.SUPPORTED) {
+            family(out, "shoelaces_operation_allocated_bytes_total", "counter",
+                    "Bytes allocated by the calling thread during load, save, write and command spans.");
+            for (Operation operation : OPERATIONS) {
+                if (operation.coarse) {
+                    sample(out, "shoelaces_operation_allocated_bytes_total", operation,
+                            Long.toString(allocatedBytes(operation)));
+                }
+            }
+        }
+
+        family(out, "shoelaces_jvm_gc_collections_total", "counter", "Garbage collections, per collector.");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            out.append("shoelaces_jvm_gc_collections_total{gc=\"").append(escape(gc.getName())).append("\"} ")
+                    .append(Long.toString(Math.max(0L, gc.getCollectionCount()))).append('\n');
+        }
+
+        family(out, "shoelaces_jvm_gc_seconds_total", "counter", "Time spent in garbage collection, per collector.");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            out.append("shoelaces_jvm_gc_seconds_total{gc=\"").append(escape(gc.getName())).append("\"} ")
+                    .append(seconds(TimeUnit.MILLISECONDS.toNanos(Math.max(0L, gc.getCollectionTime()))))
+                    .append('\n');
+        }
+    }
+
+    static String prometheus() {
+        final StringBuilder sb = new StringBuilder();
+        try {
+            writePrometheus(sb);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Replace the database's {@code .metrics} file with the current numbers.
+     */
+    static void dump(final File db) throws IOException {
+        AtomicFile.write(dumpFileFor(db), false, stream -> {
+            final Writer out = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+            writePrometheus(out);
+            out.flush();
+        });
+    }
+
+    static File dumpFileFor(final File db) {
+        return new File(db.getPath() + EXTENSION);
+    }
+
+    /**
+     * Serve the numbers over JMX as {@value #OBJECT_NAME}, unless something already is.
+     */
+    static void registerMBean() {
+        try {
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), name);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("could not register " + OBJECT_NAME, e);
+        }
+    }
+
+    private static void family(final Appendable out, final String name, final String type, final String help)
+            throws IOException {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(final Appendable out, final String name, final Operation operation,
+                               final String value) throws IOException {
+        out.append(name).append("{operation=\"").append(operation.label()).append("\"} ").append(value).append('\n');
+    }
+
+    private static String seconds(final long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    private static String escape(final String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * A coarse operation in progress.
+     */
+    static final class Span implements AutoCloseable {
+        private final Operation operation;
+        private final long start;
+        private final long allocated;
+
+        private Span(final Operation operation, final long start, final long allocated) {
+            this.operation = operation;
+            this.start = start;
+            this.allocated = allocated;
+        }
+
+        @Override
+        public void close() {
+            if (operation == null) {
+                return;
+            }
+
+            add(operation, System.nanoTime() - start);
+            if (allocated >= 0L) {
+                final long now = Allocations.current();
+                if (now >= allocated) {
+                    Counters.ALLOCATED[operation.ordinal()].add(now - allocated);
+                }
+            }
+        }
+    }
+
+    /**
+     * The HotSpot per-thread allocation counter, looked up only once metrics are in use.
+     */
+    private static final class Allocations {
+        private static final com.sun.management.ThreadMXBean THREADS = threads();
+        static final boolean SUPPORTED = THREADS != null;
+
+        private static com.sun.management.ThreadMXBean threads() {
+            try {
+                final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+                if (threads instanceof com.sun.management.ThreadMXBean) {
+                    final com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+                    if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                        return hotspot;
+                    }
+                }
+            } catch (LinkageError | UnsupportedOperationException ignored) {
+                // not HotSpot
+            }
+            return null;
+        }
+
+        /**
+         * @return bytes the current thread has allocated so far, or -1 if unknown
+         */
+        static long current() {
+            return SUPPORTED ? THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1L;
+        }
+    }
+
+    public interface MetricsMXBean {
+        Map<String, Long> getCounts();
+
+        Map<String, Long> getTotalNanos();
+
+        Map<String, Long> getMaxNanos();
+
+        Map<String, Long> getAllocatedBytes();
+
+        String getPrometheus();
+
+        void reset();
+    }
+
+    private static final class Bean implements MetricsMXBean {
+        @Override
+        public Map<String, Long> getCounts() {
+            return byOperation(Metrics::count, false);
+        }
+
+        @Override
+        public Map<String, Long> getTotalNanos() {
+            return byOperation(Metrics::nanos, false);
+        }
+
+        @Override
+        public Map<String, Long> getMaxNanos() {
+            return byOperation(Metrics::maxNanos, false);
+        }
+
+        @Override
+        public Map<String, Long> getAllocatedBytes() {
+            return byOperation(Metrics::allocatedBytes, true);
+        }
+
+        @Override
+        public String getPrometheus() {
+            return prometheus();
+        }
+
+        @Override
+        public void reset() {
+            Metrics.reset();
+        }
+
+        private static Map<String, Long> byOperation(final ToLongFunction<Operation> value, final boolean coarse) {
+            final Map<String, Long> values = new LinkedHashMap<>();
+            for (Operation operation : OPERATIONS) {
+                if (operation.coarse || !coarse) {
+                    values.put(operation.label(), value.applyAsLong(operation));
+                }
+            }
+            return values;
+        }
+    }
+}
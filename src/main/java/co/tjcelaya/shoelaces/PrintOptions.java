@@ -0,0 +1,113 @@
+package co.tjcelaya.shoelaces;
+
+/**
+ * Which rows of the thread table {@link ShoeLaces#print(Appendable, PrintOptions)} writes.
+ * <p>
+ * Filters apply first; {@link #offset(int)} and {@link #limit(int)} then page through the matching rows. Rows always
+ * show the thread's real tid.
+ */
+public final class PrintOptions {
+
+    public enum Filter {
+        /**
+         * Threads on the attention stack, or not exited or killed since their last interrupt.
+         */
+        LIVE,
+        EXITED,
+        KILLED;
+
+        /**
+         * @param last    the thread's most recent transition letter
+         * @param onStack whether the thread is on the attention stack, which has the final say: a finished thread
+         *                can be interrupted again without recording it
+         */
+        boolean matches(final char last, final boolean onStack) {
+            if (onStack) {
+                return this == LIVE;
+            }
+
+            switch (this) {
+                case EXITED:
+                    return last == 'E';
+                case KILLED:
+                    return last == 'K';
+                default:
+                    return last != 'E' && last != 'K';
+            }
+        }
+
+        public static Filter parse(final String filter) {
+            try {
+                return valueOf(filter.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("unknown filter: " + filter + ", expected live, exited or killed");
+            }
+        }
+    }
+
+    private int offset;
+    private int limit = Integer.MAX_VALUE;
+    private Filter filter;
+    private String prefix;
+
+    /**
+     * @return options printing every thread
+     */
+    public static PrintOptions all() {
+        return new PrintOptions();
+    }
+
+    public PrintOptions offset(final int offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("negative offset: " + offset);
+        }
+        this.offset = offset;
+        return this;
+    }
+
+    public PrintOptions limit(final int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("negative limit: " + limit);
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    public PrintOptions filter(final Filter filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    /**
+     * Only print {@code prefix} itself and the threads below it in the dotted namespace, so {@code proj} matches
+     * {@code proj} and {@code proj.sub.task} but not {@code project}.
+     */
+    public PrintOptions prefix(final String prefix) {
+        this.prefix = prefix == null || prefix.isEmpty() ? null : prefix;
+        return this;
+    }
+
+    int getOffset() {
+        return offset;
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    Filter getFilter() {
+        return filter;
+    }
+
+    String getPrefix() {
+        return prefix;
+    }
+
+    boolean isFiltered() {
+        return filter != null || prefix != null;
+    }
+
+    boolean isPaged() {
+        return offset > 0 || limit != Integer.MAX_VALUE;
+    }
+}
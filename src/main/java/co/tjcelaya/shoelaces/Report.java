@@ -0,0 +1,322 @@
+package co.tjcelaya.shoelaces;
+
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.ToLongFunction;
+import java.util.regex.Pattern;
+
+/**
+ * Statistics across every database in a directory: which threads were interrupted, exited and killed most, how
+ * often attention switched between threads, and which threads stayed alive the longest.
+ * <p>
+ * Each day's thread table and timeline is read into its own {@link Tally} on a fork/join pool, and the tallies are
+ * merged pairwise as the tasks complete, so the days are read in parallel and nothing is shared between them until
+ * they are combined. The thread tables are streamed as in {@link Federation#scan(File)}, without building a
+ * {@link ShoeLaces}.
+ */
+public final class Report {
+
+    public static final int DEFAULT_TOP = 10;
+
+    /**
+     * Days read in a row by one task rather than split further.
+     */
+    private static final int DAYS_PER_TASK = 4;
+
+    private static final Pattern DAY = Pattern.compile("^\\d{4}-\\d{2}-\\d{2}$");
+
+    private Report() {
+    }
+
+    public static Tally run(final File home) throws IOException {
+        return run(home, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Read every database in {@code home} on {@code pool}.
+     */
+    public static Tally run(final File home, final ForkJoinPool pool) throws IOException {
+        final File[] files = home.listFiles((dir, name) -> Federation.isDatabase(name));
+        if (files == null) {
+            throw new IOException("not a directory: " + home);
+        }
+
+        return files.length == 0 ? new Tally() : pool.invoke(new Task(files, 0, files.length));
+    }
+
+    /**
+     * Splits the files in halves down to a few days each, reading one half while the other is forked.
+     */
+    private static final class Task extends RecursiveTask<Tally> {
+        private final File[] files;
+        private final int from;
+        private final int to;
+
+        private Task(final File[] files, final int from, final int to) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Tally compute() {
+            if (to - from <= DAYS_PER_TASK) {
+                Tally tally = day(files[from]);
+                for (int i = from + 1; i < to; i++) {
+                    tally = tally.merge(day(files[i]));
+                }
+                return tally;
+            }
+
+            final int middle = (from + to) >>> 1;
+            final Task left = new Task(files, from, middle);
+            left.fork();
+            final Tally right = new Task(files, middle, to).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    /**
+     * Tally one day's database and timeline. A database that cannot be read is counted as skipped.
+     */
+    static Tally day(final File file) {
+        final Tally tally = new Tally();
+        final String day = FilenameUtils.getBaseName(file.getName());
+
+        final Federation.Scan scan;
+        final Timeline timeline;
+        try {
+            scan = Federation.scan(file);
+            timeline = Timeline.read(file);
+        } catch (IOException | RuntimeException | ClassNotFoundException e) {
+            tally.skipped++;
+            return tally;
+        }
+
+        tally.days++;
+        for (Map.Entry<String, String> thread : scan.statuses.entrySet()) {
+            tally.thread(thread.getKey()).add(day, ThreadStatus.parse(thread.getValue()));
+        }
+
+        int running = -1;
+        for (int i = 0; i < timeline.size(); i++) {
+            if (timeline.running(i) != running) {
+                running = timeline.running(i);
+                if (running >= 0) {
+                    tally.switches++;
+                }
+            }
+            if (running >= 0 && i + 1 < timeline.size()) {
+                tally.trackedMillis += Math.max(0L, timeline.time(i + 1) - timeline.time(i));
+            }
+        }
+        return tally;
+    }
+
+    /**
+     * Totals over some set of days. Tallies are built up one day at a time and combined with {@link #merge(Tally)},
+     * which gives the same result whatever the order.
+     */
+    public static final class Tally {
+        private int days;
+        private int skipped;
+        private long switches;
+        private long trackedMillis;
+        private final HashMap<String, ThreadTally> threads = new HashMap<>();
+
+        Tally() {
+        }
+
+        private ThreadTally thread(final String name) {
+            return threads.computeIfAbsent(name, ThreadTally::new);
+        }
+
+        /**
+         * Add {@code other} into whichever of the two is larger, and return that one.
+         */
+        Tally merge(final Tally other) {
+            if (other.threads.size() > threads.size()) {
+                return other.merge(this);
+            }
+
+            days += other.days;
+            skipped += other.skipped;
+            switches += other.switches;
+            trackedMillis += other.trackedMillis;
+            for (ThreadTally thread : other.threads.values()) {
+                final ThreadTally mine = threads.putIfAbsent(thread.name, thread);
+                if (mine != null) {
+                    mine.merge(thread);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * @return the number of databases read
+         */
+        public int days() {
+            return days;
+        }
+
+        /**
+         * @return the number of databases that could not be read
+         */
+        public int skipped() {
+            return skipped;
+        }
+
+        /**
+         * @return how many times a different thread started running, over the days that have timelines
+         */
+        public long switches() {
+            return switches;
+        }
+
+        /**
+         * @return milliseconds during which some thread was running, over the days that have timelines
+         */
+        public long trackedMillis() {
+            return trackedMillis;
+        }
+
+        public int threadCount() {
+            return threads.size();
+        }
+
+        public ThreadTally get(final String thread) {
+            return threads.get(thread);
+        }
+
+        public long interrupts() {
+            return sum(t -> t.interrupts);
+        }
+
+        public long exits() {
+            return sum(t -> t.exits);
+        }
+
+        public long kills() {
+            return sum(t -> t.kills);
+        }
+
+        private long sum(final ToLongFunction<ThreadTally> value) {
+            long sum = 0L;
+            for (ThreadTally thread : threads.values()) {
+                sum += value.applyAsLong(thread);
+            }
+            return sum;
+        }
+
+        /**
+         * @return the {@code n} threads with the highest {@code value}, highest first, ties broken by name; threads
+         * whose value is 0 are left out
+         */
+        public List<ThreadTally> top(final int n, final ToLongFunction<ThreadTally> value) {
+            final PriorityQueue<ThreadTally> best = new PriorityQueue<>(Math.max(1, n),
+                    Comparator.comparingLong(value).thenComparing(ThreadTally::getName, Comparator.reverseOrder()));
+            for (ThreadTally thread : threads.values()) {
+                if (value.applyAsLong(thread) == 0L) {
+                    continue;
+                }
+                best.add(thread);
+                if (best.size() > n) {
+                    best.poll();
+                }
+            }
+
+            final ArrayList<ThreadTally> top = new ArrayList<>(best);
+            top.sort(Comparator.comparingLong(value).reversed().thenComparing(ThreadTally::getName));
+            return top;
+        }
+    }
+
+    /**
+     * One thread's totals over the days it appears on.
+     */
+    public static final class ThreadTally {
+        private final String name;
+        private long interrupts;
+        private long exits;
+        private long kills;
+        private int days;
+        private String first;
+        private String last;
+
+        private ThreadTally(final String name) {
+            this.name = name;
+        }
+
+        private void add(final String day, final ThreadStatus status) {
+            interrupts += status.getInterrupts();
+            exits += status.getExits();
+            kills += status.getKills();
+            days++;
+            first = first == null || day.compareTo(first) < 0 ? day : first;
+            last = last == null || day.compareTo(last) > 0 ? day : last;
+        }
+
+        private void merge(final ThreadTally other) {
+            interrupts += other.interrupts;
+            exits += other.exits;
+            kills += other.kills;
+            days += other.days;
+            first = other.first.compareTo(first) < 0 ? other.first : first;
+            last = other.last.compareTo(last) > 0 ? other.last : last;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getInterrupts() {
+            return interrupts;
+        }
+
+        public long getExits() {
+            return exits;
+        }
+
+        public long getKills() {
+            return kills;
+        }
+
+        /**
+         * @return the number of databases the thread appears in
+         */
+        public int getDays() {
+            return days;
+        }
+
+        public String getFirst() {
+            return first;
+        }
+
+        public String getLast() {
+            return last;
+        }
+
+        /**
+         * @return calendar days from the first day the thread appears on to the last, both included, or the number of
+         * days it appears on when the databases are not named for dates
+         */
+        public long getLifespan() {
+            if (!DAY.matcher(first).matches() || !DAY.matcher(last).matches()) {
+                return days;
+            }
+            try {
+                return ChronoUnit.DAYS.between(LocalDate.parse(first), LocalDate.parse(last)) + 1L;
+            } catch (DateTimeParseException e) {
+                return days;
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package co.tjcelaya.shoelaces;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Start a new day's database from the live part of the previous one: its attention stack and the threads whose last
+ * transition was not an exit or a kill. Carried threads start the day with an empty status.
+ * <p>
+ * The previous database is streamed rather than loaded, keeping only live entries, so the first command of the day
+ * does not pay for the whole of yesterday's history.
+ */
+final class Rollover {
+
+    private static final Pattern DAY = Pattern.compile("^\\d{4}-\\d{2}-\\d{2}$");
+
+    private Rollover() {
+    }
+
+    /**
+     * @return the latest dated database before {@code file} in the same directory, or null if {@code file} is not
+     * named for a day or there is none
+     */
+    static File previous(final File file) {
+        final String day = FilenameUtils.getBaseName(file.getName());
+        if (!DAY.matcher(day).matches()) {
+            return null;
+        }
+
+        final File[] candidates = file.getAbsoluteFile().getParentFile().listFiles((dir, name) -> {
+            final String base = FilenameUtils.getBaseName(name);
+            return Federation.isDatabase(name) && DAY.matcher(base).matches() && base.compareTo(day) < 0;
+        });
+
+        File previous = null;
+        for (File candidate : candidates != null ? candidates : new File[0]) {
+            if (previous == null || candidate.getName().compareTo(previous.getName()) > 0) {
+                previous = candidate;
+            }
+        }
+        return previous;
+    }
+
+    /**
+     * @return a database named {@code name} holding the live entries of {@code previous}
+     */
+    static ShoeLaces carryOver(final File previous, final String name) throws IOException, ClassNotFoundException {
+        final ThreadRegistry threads = new ThreadRegistry();
+        final AttentionStack attention = new AttentionStack();
+
+        if (KeyValueStore.isKeyValue(previous) || new File(previous.getPath() + Journal.EXTENSION).exists()) {
+            final ShoeLaces db = KeyValueStore.isKeyValue(previous)
+                    ? new KeyValueStore(previous).read()
+                    : new Journal(previous).read();
+            final ThreadRegistry old = db.threads();
+            for (int tid = 0; tid < old.size(); tid++) {
+                keep(threads, old.name(tid), old.status(tid).last());
+            }
+            for (String at : db.attention()) {
+                attention.addBottom(at);
+            }
+        } else if (previous.length() == 0L) {
+            // never saved
+        } else if (BinaryCodec.isBinary(previous)) {
+            final MappedShoeLaces mapped = BinaryCodec.open(previous);
+            // statuses are pooled, so most threads share a handful of status entries: decide once per entry, and
+            // decode only the names of threads that are kept
+            final Map<Integer, Boolean> live = new HashMap<>();
+            for (int tid = 0; tid < mapped.size(); tid++) {
+                final int ref = mapped.statusRef(tid);
+                Boolean keep = live.get(ref);
+                if (keep == null) {
+                    keep = isLive(last(mapped.string(ref)));
+                    live.put(ref, keep);
+                }
+                if (keep) {
+                    threads.register(mapped.lookup(tid));
+                }
+            }
+            for (int i = 0; i < mapped.attentionDepth(); i++) {
+                attention.addBottom(mapped.attention(i));
+            }
+        } else {
+            readJson(previous, threads, attention);
+        }
+
+        // a finished thread that was interrupted again is back on the stack without a new status letter
+        for (String at : attention) {
+            if (!at.equals(AttentionStack.PAUSE_MARKER)) {
+                threads.register(at);
+            }
+        }
+
+        return new ShoeLaces(name, threads, attention);
+    }
+
+    private static void readJson(final File file, final ThreadRegistry threads, final AttentionStack attention)
+            throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file));
+             JsonParser parser = ShoeLacesCodec.FACTORY.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException("expected an object", parser.getCurrentLocation());
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+
+                if ("threads".equals(field) && value == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        final String thread = parser.getCurrentName();
+                        final JsonToken status = parser.nextToken();
+                        keep(threads, thread, status == JsonToken.VALUE_NULL ? 0 : last(parser.getText()));
+                    }
+                } else if ("attention".equals(field) && value == JsonToken.START_ARRAY) {
+                    JsonToken entry;
+                    while ((entry = parser.nextToken()) != JsonToken.END_ARRAY) {
+                        attention.addBottom(entry == JsonToken.VALUE_NULL
+                                ? AttentionStack.PAUSE_MARKER
+                                : parser.getText());
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the last transition letter of a status in either text form, or 0 for none
+     */
+    static char last(final String status) {
+        return status.isEmpty() ? 0 : status.charAt(status.length() - 1);
+    }
+
+    private static boolean isLive(final char last) {
+        return last != 'E' && last != 'K';
+    }
+
+    private static void keep(final ThreadRegistry threads, final String thread, final char last) {
+        if (isLive(last)) {
+            threads.register(thread);
+        }
+    }
+}
@@ -1,42 +1,50 @@
 package co.tjcelaya.shoelaces;
 
 import com.fasterxml.jackson.annotation.*;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.time.Clock;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 /**
  * Created by tomascelaya on 5/28/17.
  */
 public class ShoeLaces implements Serializable {
 
+    /**
+     * The grammar of database and thread names, for callers that want it as a pattern; {@link #isValidName(String)}
+     * checks it without one.
+     */
     public static final Pattern REGEX_THREAD_NAME =
             Pattern.compile("^([0-9a-z-]+\\.)*[0-9a-z-]+$");
 
-    private final LinkedHashMap<String, String> threads;
-    private final Deque<String> attention;
+    private final ThreadRegistry threads;
+    private final AttentionStack attention;
     private final String name;
 
-    private static final ObjectMapper MAPPER;
-    private static final String NULLFOCUS = "";
+    @JsonIgnore
+    private transient List<Consumer<Transition>> listeners;
+
+    @JsonIgnore
+    private transient Clock clock = Clock.systemUTC();
+
+    @JsonIgnore
+    private transient Timeline timeline = new Timeline();
+
+    private static final String NULLFOCUS = AttentionStack.PAUSE_MARKER;
 
     public static final String INTERRUPT = "I";
     public static final String EXIT = "E";
     public static final String KILL = "K";
 
-    static {
-        MAPPER = new ObjectMapper();
-        MAPPER.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
-    }
-
     /**
      * The laces are not concerned with "faster" UUID generation, you can worry about that.
      */
@@ -45,36 +53,68 @@ public class ShoeLaces implements Serializable {
     }
 
     ShoeLaces(final String name) {
-        this(name, new LinkedHashMap<>(), new ArrayDeque<>());
+        this(name, new ThreadRegistry(), new AttentionStack());
     }
 
     @JsonCreator
     ShoeLaces(@JsonProperty("name") final String name,
-              @JsonProperty("threads") final LinkedHashMap<String, String> threads,
-              @JsonProperty("attention") final Deque<String> attention) {
+              @JsonProperty("threads") final ThreadRegistry threads,
+              @JsonProperty("attention") final AttentionStack attention) {
 
-        if (!REGEX_THREAD_NAME.matcher(name).matches()) {
+        if (!isValidName(name)) {
             throw new IllegalArgumentException(name);
         }
 
         this.name = name;
         this.threads = threads;
         this.attention = attention;
+        attention.intern(threads);
+    }
+
+    /**
+     * Check a name against {@link #REGEX_THREAD_NAME} without a matcher: dot-separated segments of lower-case
+     * letters, digits and dashes, none of them empty.
+     */
+    public static boolean isValidName(final String name) {
+        final int length = name.length();
+        if (length == 0 || name.charAt(0) == '.' || name.charAt(length - 1) == '.') {
+            return false;
+        }
+
+        char previous = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = name.charAt(i);
+            if (c == '.') {
+                if (previous == '.') {
+                    return false;
+                }
+            } else if ((c < 'a' || c > 'z') && (c < '0' || c > '9') && c != '-') {
+                return false;
+            }
+            previous = c;
+        }
+        return true;
     }
 
     public void spawn(final String thread) {
-        if (!REGEX_THREAD_NAME.matcher(thread).matches()) {
+        final long start = Metrics.start();
+        if (!isValidName(thread)) {
             throw new IllegalArgumentException("invalid thread name: " + thread);
         }
 
-        threads.put(thread, threads.getOrDefault(thread,""));
+        final int tid = threads.register(thread);
 
         if (attention.isEmpty()) {
-            attention.push(thread);
+            attention.push(threads.name(tid)); // the registry's copy of the name, so it is held once
         }
+
+        mark(Transition.Kind.SPAWN, thread);
+        emit(Transition.Kind.SPAWN, thread);
+        Metrics.record(Metrics.Operation.SPAWN, start);
     }
 
     public void interrupt(final String thread) {
+        final long start = Metrics.start();
         final String focus = attention.peek();
         if (focus != null && focus.equals(NULLFOCUS)) {
             attention.pop(); // refocus
@@ -82,71 +122,152 @@ public class ShoeLaces implements Serializable {
 
         if (attention.contains(thread)) {
             updateThread(thread, INTERRUPT);
-            attention.removeFirstOccurrence(thread);
-            attention.push(thread);
+            attention.moveToTop(thread);
+            mark(Transition.Kind.INTERRUPT, thread);
+            emit(Transition.Kind.INTERRUPT, thread);
+            Metrics.record(Metrics.Operation.INTERRUPT, start);
             return;
         }
 
-        if (!REGEX_THREAD_NAME.matcher(thread).matches()) {
+        if (!isValidName(thread)) {
             throw new IllegalArgumentException("invalid thread name: " + thread);
         }
 
-        threads.put(thread, threads.getOrDefault(thread,""));
-        attention.push(thread);
+        attention.push(threads.name(threads.register(thread)));
+        mark(Transition.Kind.INTERRUPT, thread);
+        emit(Transition.Kind.INTERRUPT, thread);
+        Metrics.record(Metrics.Operation.INTERRUPT, start);
     }
 
     public void exit() {
+        final long start = Metrics.start();
         if (!isPaused() && !isRunning()) {
             throw new IllegalStateException("Nothing from which to exit");
         }
 
-        exit(attention.pop());
+        mark(Transition.Kind.EXIT, exitThread(attention.pop()));
+        emit(Transition.Kind.EXIT, null);
+        Metrics.record(Metrics.Operation.EXIT, start);
     }
 
     public void exit(final String thread) {
+        final long start = Metrics.start();
+        mark(Transition.Kind.EXIT, exitThread(thread));
+        emit(Transition.Kind.EXIT, thread);
+        Metrics.record(Metrics.Operation.EXIT, start);
+    }
+
+    /**
+     * @return the thread exited
+     */
+    private String exitThread(final String thread) {
         final String t = tumble(thread);
 
-        if (!threads.containsKey(t)) {
+        if (!threads.contains(t)) {
             throw new NoSuchElementException("thread not found: " + t);
         }
 
         updateThread(t, EXIT);
 
-        if (attention.contains(t)) {
-            attention.removeLastOccurrence(t);
-        }
+        attention.remove(t);
+        return t;
     }
 
     private void updateThread(final String thread, final String status) {
-        threads.put(thread, threads.getOrDefault(thread, "") + status);
+        threads.record(thread, status.charAt(0));
     }
 
     public void kill() {
+        final long start = Metrics.start();
         if (!isPaused() && !isRunning()) {
             throw new IllegalStateException("Nothing running to kill");
         }
 
-        exit(attention.pop());
+        mark(Transition.Kind.KILL, exitThread(attention.pop()));
+        emit(Transition.Kind.KILL, null);
+        Metrics.record(Metrics.Operation.KILL, start);
     }
 
     public void kill(final String thread) {
+        final long start = Metrics.start();
         final String t = tumble(thread);
 
-        if (!threads.containsKey(t)) {
+        if (!threads.contains(t)) {
             throw new NoSuchElementException("thread not found: " + t);
         }
 
         updateThread(t, KILL);
-        attention.removeFirstOccurrence(t);
+        attention.remove(t);
+        mark(Transition.Kind.KILL, t);
+        emit(Transition.Kind.KILL, thread);
+        Metrics.record(Metrics.Operation.KILL, start);
+    }
+
+    /**
+     * Kill {@code prefix} and every thread below it in the dotted namespace that has not already finished, as if by
+     * {@link #kill(String)} on each.
+     *
+     * @return the number of threads killed
+     */
+    public int killTree(final String prefix) {
+        final long start = Metrics.start();
+        int killed = 0;
+        for (int tid : liveSubtree(prefix)) {
+            kill(threads.name(tid));
+            killed++;
+        }
+        Metrics.record(Metrics.Operation.KILL_TREE, start);
+        return killed;
+    }
+
+    /**
+     * Exit {@code prefix} and every thread below it that has not already finished, as if by {@link #exit(String)} on
+     * each.
+     *
+     * @return the number of threads exited
+     */
+    public int exitTree(final String prefix) {
+        final long start = Metrics.start();
+        int exited = 0;
+        for (int tid : liveSubtree(prefix)) {
+            exit(threads.name(tid));
+            exited++;
+        }
+        Metrics.record(Metrics.Operation.EXIT_TREE, start);
+        return exited;
+    }
+
+    private int[] liveSubtree(final String prefix) {
+        if (!isValidName(prefix)) {
+            throw new IllegalArgumentException("invalid thread name: " + prefix);
+        }
+
+        final int[] subtree = threads.subtree(prefix);
+        int live = 0;
+        for (int tid : subtree) {
+            final char last = threads.status(tid).last();
+            // a finished thread can be interrupted again without recording it, so the stack has the final say
+            if ((last != EXIT.charAt(0) && last != KILL.charAt(0)) || attention.contains(threads.name(tid))) {
+                subtree[live++] = tid;
+            }
+        }
+        return Arrays.copyOf(subtree, live);
     }
 
     public void pause() {
+        final long start = Metrics.start();
+        final String paused = current();
         if (!attention.peek().equals(NULLFOCUS)) {
             attention.push(NULLFOCUS);
         }
+
+        mark(Transition.Kind.PAUSE, paused);
+        emit(Transition.Kind.PAUSE, null);
+        Metrics.record(Metrics.Operation.PAUSE, start);
     }
 
     public void resume() {
+        final long start = Metrics.start();
         final String focus = attention.peek();
         if (focus == null) {
             throw new IllegalStateException("Nothing to resume");
@@ -157,6 +278,9 @@ public class ShoeLaces implements Serializable {
         }
 
         // noop if not paused
+        mark(Transition.Kind.RESUME, current());
+        emit(Transition.Kind.RESUME, null);
+        Metrics.record(Metrics.Operation.RESUME, start);
     }
 
     /**
@@ -179,12 +303,144 @@ public class ShoeLaces implements Serializable {
         throw new NoSuchElementException("fell flat");
     }
 
+    // Time
+
+    /**
+     * Note when a transition happened, against the thread it concerned and the thread left running.
+     */
+    private void mark(final Transition.Kind kind, final String thread) {
+        if (timeline == null) {
+            return;
+        }
+
+        final String running = current();
+        final int tid = thread == null ? -1 : threads.tid(thread);
+        timeline.record(clock.millis(), kind, tid,
+                running == null ? -1 : running.equals(thread) ? tid : threads.tid(running));
+    }
+
+    /**
+     * Catch up after an undo or redo replaced part of the state, which no call describes: forget the time of any
+     * threads it unregistered, credit the time from here on to whatever now runs, as a resume would, and tell
+     * listeners with a {@link Transition.Kind#RESYNC}.
+     *
+     * @param threadsWere the number of threads before
+     */
+    void restored(final int threadsWere) {
+        attention.intern(threads);
+        if (timeline != null) {
+            if (threads.size() < threadsWere) {
+                timeline.forget(threads.size());
+            }
+            mark(Transition.Kind.RESUME, current());
+        }
+        emit(Transition.Kind.RESYNC, null);
+    }
+
+    /**
+     * @return milliseconds the thread has spent running, as recorded by this database's timeline
+     */
+    public long timeSpent(final String thread) {
+        final int tid = threads.tid(thread);
+        if (tid < 0) {
+            throw new NoSuchElementException("thread not found: " + thread);
+        }
+        return timeSpent(tid);
+    }
+
+    /**
+     * @return milliseconds spent running {@code prefix} and every thread under it
+     */
+    public long timeSpentUnder(final String prefix) {
+        if (timeline == null) {
+            return 0L;
+        }
+
+        final long now = clock.millis();
+        long total = 0L;
+        for (int tid : threads.subtree(prefix)) {
+            total += timeline.spent(tid, now);
+        }
+        return total;
+    }
+
+    long timeSpent(final int tid) {
+        return timeline == null ? 0L : timeline.spent(tid, clock.millis());
+    }
+
+    /**
+     * @return the timeline, or null if times are not being recorded
+     */
+    Timeline timeline() {
+        return timeline;
+    }
+
+    /**
+     * Replace the timeline, with one read back from disk, or stop recording times with null, for a database kept
+     * only in memory.
+     */
+    void timeline(final Timeline timeline) {
+        this.timeline = timeline;
+    }
+
+    /**
+     * Use another source of time for the timeline, e.g. a fixed clock in tests.
+     */
+    void clock(final Clock clock) {
+        this.clock = Objects.requireNonNull(clock);
+    }
+
+    // Listeners
+
+    /**
+     * Register a listener to be told about every successful mutation, after it has been applied.
+     */
+    public void addListener(final Consumer<Transition> listener) {
+        if (listeners == null) {
+            listeners = new ArrayList<>();
+        }
+
+        listeners.add(Objects.requireNonNull(listener));
+    }
+
+    public void removeListener(final Consumer<Transition> listener) {
+        if (listeners != null) {
+            listeners.remove(listener);
+        }
+    }
+
+    private void emit(final Transition.Kind kind, final String thread) {
+        if (listeners == null || listeners.isEmpty()) {
+            return;
+        }
+
+        final Transition transition = new Transition(kind, thread, clock.millis(), current());
+        for (Consumer<Transition> listener : listeners) {
+            listener.accept(transition);
+        }
+    }
+
     // Reads
 
     public String getName() {
         return name;
     }
 
+    ThreadRegistry threads() {
+        return threads;
+    }
+
+    AttentionStack attention() {
+        return attention;
+    }
+
+    /**
+     * @return an independent database with the same name, threads and attention stack, but no timeline or listeners
+     */
+    ShoeLaces copy() {
+        return new ShoeLaces(name, threads.copy(), AttentionStack.fromList(attention.toList()));
+    }
+
     // Thread reads
 
     public String current() {
@@ -195,20 +451,22 @@ public class ShoeLaces implements Serializable {
                 : focus;
     }
 
-    private String status() {
+    private void status(final Appendable out) throws IOException {
         if (attention.isEmpty()) {
-            return " - EMPTY -";
+            out.append(" - EMPTY -");
+            return;
         }
 
-        final String attentionStack = attention.stream()
-                .map(at -> ObjectUtils.firstNonNull(at, "PAUSED"))
-                .collect(Collectors.joining(" < "));
+        out.append(attention.peek().equals(NULLFOCUS) ? " - PAUSED - " : " RUN: ");
 
-        if (attention.peek().equals(NULLFOCUS)) {
-            return " - PAUSED - " + attentionStack;
+        boolean first = true;
+        for (String at : attention) {
+            if (!first) {
+                out.append(" < ");
+            }
+            out.append(at);
+            first = false;
         }
-
-        return " RUN: " + attentionStack;
     }
 
     boolean isPaused() {
@@ -225,73 +483,116 @@ public class ShoeLaces implements Serializable {
     // Utility
 
     public String print() {
-        final StringBuilder sb = new StringBuilder("name: ")
+        final StringBuilder sb = new StringBuilder();
+        try {
+            print(sb, PrintOptions.all());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringBuilder does not throw
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write the name, attention stack and the selected rows of the thread table straight to {@code out}.
+     */
+    public void print(final Appendable out, final PrintOptions options) throws IOException {
+        out.append("name: ")
                 .append(getName())
-                .append("\n\nstatus: ")
-                .append(status()).append("\n\n");
+                .append("\n\nstatus: ");
+        status(out);
+        out.append("\n\n");
 
         if (threads.isEmpty()) {
-            return sb.toString();
+            return;
         }
 
-        final Set<String> threadNames = threads.keySet();
-        final int longestNameLength = threadNames.stream().map(String::length).max(Integer::compare).get();
-        int tid = 0;
+        table().print(out, options, current());
+    }
 
-        final int COL_WIDTH_TID = 5;
-        final int COL_WIDTH_THREAD = Math.max(longestNameLength, "thread".length()) + 1;
+    private ThreadTable table() {
+        return new ThreadTable() {
+            @Override
+            int size() {
+                return threads.size();
+            }
 
-        sb
-                .append(StringUtils.rightPad("tid", COL_WIDTH_TID))
-                .append(StringUtils.rightPad("thread", COL_WIDTH_THREAD))
-                .append("status")
-                .append("\n")
+            @Override
+            int longestName() {
+                return threads.longestName();
+            }
 
-                .append(StringUtils.repeat("=", COL_WIDTH_TID - 1)).append(" ")
-                .append(StringUtils.repeat("=", COL_WIDTH_THREAD - 1)).append(" ")
-                .append(StringUtils.repeat("=", "status".length())).append(" ").append('\n');
+            @Override
+            int[] subtree(final String prefix) {
+                return threads.subtree(prefix); // through the name index instead of a scan
+            }
 
-        for (String threadName : threadNames) {
-            sb.append(StringUtils.rightPad(String.valueOf(tid), COL_WIDTH_TID)); // tid
-            sb.append(StringUtils.rightPad(threadName, COL_WIDTH_THREAD)); // thread
-            sb.append(
-                    Objects.equals(attention.peek(), threadName)
-                            ? "RUNNING"
-                            : threads.get(threadName)); // status
-            sb.append('\n');
-            tid++;
-        }
+            @Override
+            String name(final int tid) {
+                return threads.name(tid);
+            }
+
+            @Override
+            char last(final int tid) {
+                return threads.status(tid).last();
+            }
 
-        return sb.append('\n').toString();
+            @Override
+            boolean isOnStack(final int tid) {
+                return attention.contains(threads.name(tid));
+            }
+
+            @Override
+            void appendStatus(final Appendable out, final int tid) throws IOException {
+                threads.status(tid).appendTo(out);
+            }
+        };
     }
 
     public String lookup(final int tid) {
-        final Iterator<String> s = threads.keySet().iterator();
-        int i = 0;
-        String threadName;
-
-        while (s.hasNext()) {
-            threadName = s.next();
-            if (i == tid) {
-                return threadName;
-            }
-            i++;
-        }
+        final long start = Metrics.start();
+        final String name = threads.name(tid);
+        Metrics.record(Metrics.Operation.LOOKUP, start);
+        return name;
+    }
 
-        throw new NoSuchElementException("tid not found: " + tid);
+    /**
+     * @return the thread's tid, or -1 if there is no such thread
+     */
+    public int tid(final String thread) {
+        return threads.tid(thread);
     }
 
     // Persistence
 
+    /**
+     * Write the database as JSON, or in the binary format if the file has the {@link BinaryCodec#EXTENSION}.
+     */
     public void save(final File file) throws IOException {
-        MAPPER.writeValue(file, this);
+        save(file, Durability.GROUP);
+    }
+
+    /**
+     * Replace the file atomically with the database, in the format its extension names.
+     */
+    public void save(final File file, final Durability durability) throws IOException {
+        final boolean binary = BinaryCodec.isBinary(file);
+        AtomicFile.write(file, durability.syncsSnapshots(), out -> write(out, binary));
+    }
+
+    void write(final OutputStream out, final boolean binary) throws IOException {
+        if (binary) {
+            BinaryCodec.write(this, out);
+        } else {
+            ShoeLacesCodec.write(this, out);
+        }
     }
 
     public static ShoeLaces load(final File file) throws IOException, ClassNotFoundException {
         if (file.length() == 0L) {
-            ;
             return new ShoeLaces(FilenameUtils.getBaseName(file.getName()));
         }
-        return MAPPER.readValue(file, ShoeLaces.class);
+        return BinaryCodec.isBinary(file)
+                ? BinaryCodec.read(file)
+                : ShoeLacesCodec.read(file);
     }
 }
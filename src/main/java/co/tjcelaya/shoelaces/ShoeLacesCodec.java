@@ -0,0 +1,190 @@
+package co.tjcelaya.shoelaces;
+
+import com.fasterxml.jackson.core.*;
+
+import java.io.*;
+
+/**
+ * Token-level reader and writer for the JSON {@code .sldb} format.
+ * <p>
+ * Reading fills the thread registry and attention stack straight from the parser, without building an intermediate
+ * tree or map of the whole file, and writing emits the same bytes that data binding produced:
+ * {@code {"name":...,"threads":{name:status,...},"attention":[...]}}.
+ */
+public final class ShoeLacesCodec {
+
+    /**
+     * Thread names are the field names of the thread table and nearly all distinct, so caching and interning them
+     * costs far more than it saves.
+     */
+    static final JsonFactory FACTORY = new JsonFactory()
+            .disable(JsonFactory.Feature.INTERN_FIELD_NAMES)
+            .disable(JsonFactory.Feature.CANONICALIZE_FIELD_NAMES);
+
+    private static final String FIELD_NAME = "name";
+    private static final String FIELD_THREADS = "threads";
+    private static final String FIELD_ATTENTION = "attention";
+
+    private ShoeLacesCodec() {
+    }
+
+    /**
+     * Write the database, synced, replacing the file atomically.
+     */
+    public static void write(final ShoeLaces db, final File file) throws IOException {
+        AtomicFile.write(file, true, out -> write(db, out));
+    }
+
+    public static void write(final ShoeLaces db, final OutputStream out) throws IOException {
+        try (JsonGenerator gen = FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+            gen.writeStartObject();
+            gen.writeStringField(FIELD_NAME, db.getName());
+
+            gen.writeObjectFieldStart(FIELD_THREADS);
+            final ThreadRegistry threads = db.threads();
+            for (int tid = 0; tid < threads.size(); tid++) {
+                gen.writeStringField(threads.name(tid), threads.status(tid).toString());
+            }
+            gen.writeEndObject();
+
+            gen.writeArrayFieldStart(FIELD_ATTENTION);
+            for (String name : db.attention()) {
+                gen.writeString(name);
+            }
+            gen.writeEndArray();
+
+            gen.writeEndObject();
+        }
+    }
+
+    public static ShoeLaces read(final File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return read(in);
+        }
+    }
+
+    public static ShoeLaces read(final InputStream in) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(in)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+
+            String name = null;
+            ThreadRegistry threads = null;
+            AttentionStack attention = null;
+
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+
+                if (FIELD_NAME.equals(field)) {
+                    name = value == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+                } else if (FIELD_THREADS.equals(field)) {
+                    threads = readThreads(parser, value);
+                } else if (FIELD_ATTENTION.equals(field)) {
+                    attention = readAttention(parser, value);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            expect(parser, token, JsonToken.END_OBJECT);
+
+            if (name == null) {
+                throw new JsonParseException("missing " + FIELD_NAME, parser.getCurrentLocation());
+            }
+
+            return new ShoeLaces(
+                    name,
+                    threads != null ? threads : new ThreadRegistry(),
+                    attention != null ? attention : new AttentionStack());
+        }
+    }
+
+    /**
+     * Read just the top of the attention stack, skipping over the thread table without building anything from it.
+     *
+     * @return the running thread, or null if paused or empty
+     */
+    public static String current(final File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return current(in);
+        }
+    }
+
+    public static String current(final InputStream in) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(in)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+
+                if (FIELD_ATTENTION.equals(field)) {
+                    expect(parser, value, JsonToken.START_ARRAY);
+                    final JsonToken top = parser.nextToken();
+                    if (top == JsonToken.END_ARRAY || top == JsonToken.VALUE_NULL) {
+                        return null;
+                    }
+                    expect(parser, top, JsonToken.VALUE_STRING);
+                    final String current = parser.getText();
+                    return current.equals(AttentionStack.PAUSE_MARKER) ? null : current;
+                }
+                parser.skipChildren();
+            }
+            expect(parser, token, JsonToken.END_OBJECT);
+
+            return null;
+        }
+    }
+
+    private static ThreadRegistry readThreads(final JsonParser parser, final JsonToken start) throws IOException {
+        expect(parser, start, JsonToken.START_OBJECT);
+
+        final ThreadRegistry threads = new ThreadRegistry();
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            final String thread = parser.getCurrentName();
+            final JsonToken value = parser.nextToken();
+            final int tid = threads.register(thread);
+
+            if (value != JsonToken.VALUE_NULL) {
+                expect(parser, value, JsonToken.VALUE_STRING);
+                try {
+                    threads.put(tid, ThreadStatus.parse(parser.getText()));
+                } catch (IllegalArgumentException e) {
+                    throw new JsonParseException(e.getMessage(), parser.getCurrentLocation(), e);
+                }
+            }
+        }
+        expect(parser, token, JsonToken.END_OBJECT);
+
+        return threads;
+    }
+
+    private static AttentionStack readAttention(final JsonParser parser, final JsonToken start) throws IOException {
+        expect(parser, start, JsonToken.START_ARRAY);
+
+        final AttentionStack attention = new AttentionStack();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == JsonToken.VALUE_NULL) {
+                attention.addBottom(AttentionStack.PAUSE_MARKER);
+                continue;
+            }
+
+            expect(parser, token, JsonToken.VALUE_STRING);
+            attention.addBottom(parser.getText());
+        }
+
+        return attention;
+    }
+
+    private static void expect(final JsonParser parser, final JsonToken actual, final JsonToken expected)
+            throws JsonParseException {
+        if (actual != expected) {
+            throw new JsonParseException("expected " + expected + " but found " + actual, parser.getCurrentLocation());
+        }
+    }
+}
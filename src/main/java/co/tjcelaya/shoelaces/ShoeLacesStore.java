@@ -0,0 +1,39 @@
+package co.tjcelaya.shoelaces;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Where a database lives between invocations.
+ * <p>
+ * A store hands out the database with {@link #load()} and is then told to {@link #save(ShoeLaces)} that same instance
+ * after changes, which lets it persist only what changed. {@link #write(ShoeLaces)} replaces the stored database
+ * with any other, for migrations and new days.
+ */
+public interface ShoeLacesStore extends Closeable {
+
+    /**
+     * @return the file that names the database, and that {@link DatabaseLock} locks
+     */
+    File getFile();
+
+    /**
+     * @return the stored database, or a new one named after the file if nothing has been stored yet
+     */
+    ShoeLaces load() throws IOException, ClassNotFoundException;
+
+    /**
+     * Persist the changes made to {@code db}, as returned by the last {@link #load()}, since it was loaded or saved.
+     */
+    void save(ShoeLaces db) throws IOException;
+
+    /**
+     * Replace whatever is stored with {@code db}.
+     */
+    void write(ShoeLaces db) throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,331 @@
+package co.tjcelaya.shoelaces;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Insertion-ordered thread names and their statuses, addressable by name or by tid in constant time.
+ * <p>
+ * A thread's tid is its registration position and never changes, since threads are only ever removed, by undo, in
+ * reverse order of registration. Serializes as the plain {@code name -> status} JSON object used by earlier versions.
+ * <p>
+ * Names are also kept in a sorted index, built on the first {@link #descendants(String)} query and maintained by
+ * {@link #register(String)} from then on, so that the threads under a dotted prefix are one range of the index.
+ */
+public class ThreadRegistry implements Serializable {
+
+    private final ArrayList<String> names;
+    private final ArrayList<ThreadStatus> statuses;
+    private final HashMap<String, Integer> tids;
+    private int longestName;
+    private transient TreeMap<String, Integer> sorted;
+    private transient BitSet changed;
+    private transient Map<Integer, ThreadStatus> originals;
+
+    public ThreadRegistry() {
+        this(16);
+    }
+
+    public ThreadRegistry(final int expectedSize) {
+        names = new ArrayList<>(expectedSize);
+        statuses = new ArrayList<>(expectedSize);
+        tids = new HashMap<>(Math.max(16, (int) (expectedSize / 0.75f) + 1));
+    }
+
+    @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+    static ThreadRegistry fromMap(final Map<String, String> threads) {
+        final ThreadRegistry registry = new ThreadRegistry(threads.size());
+        for (Map.Entry<String, String> entry : threads.entrySet()) {
+            registry.put(registry.register(entry.getKey()), ThreadStatus.parse(entry.getValue()));
+        }
+        return registry;
+    }
+
+    /**
+     * @return a live, ordered, read-only view of names to statuses
+     */
+    @JsonValue
+    Map<String, String> asMap() {
+        return new AbstractMap<String, String>() {
+            @Override
+            public Set<Entry<String, String>> entrySet() {
+                return new AbstractSet<Entry<String, String>>() {
+                    @Override
+                    public Iterator<Entry<String, String>> iterator() {
+                        return new Iterator<Entry<String, String>>() {
+                            private int tid = 0;
+
+                            @Override
+                            public boolean hasNext() {
+                                return tid < names.size();
+                            }
+
+                            @Override
+                            public Entry<String, String> next() {
+                                if (!hasNext()) {
+                                    throw new NoSuchElementException();
+                                }
+                                final int i = tid++;
+                                return new SimpleImmutableEntry<>(names.get(i), statuses.get(i).toString());
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return names.size();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return names.size();
+            }
+
+            @Override
+            public boolean containsKey(final Object key) {
+                return tids.containsKey(key);
+            }
+
+            @Override
+            public String get(final Object key) {
+                final Integer tid = tids.get(key);
+                return tid == null ? null : statuses.get(tid).toString();
+            }
+        };
+    }
+
+    /**
+     * @return an independent registry with the same threads, tids and statuses. The copy's sorted index is built up
+     * front, from this registry's, so that the copy never changes once made, even when read.
+     */
+    ThreadRegistry copy() {
+        final ThreadRegistry copy = new ThreadRegistry(names.size());
+        copy.names.addAll(names);
+        copy.tids.putAll(tids);
+        for (ThreadStatus status : statuses) {
+            copy.statuses.add(status.copy());
+        }
+        copy.longestName = longestName;
+
+        if (sorted == null) {
+            sorted = new TreeMap<>(tids);
+        }
+        copy.sorted = new TreeMap<>(sorted); // linear from a sorted map
+        return copy;
+    }
+
+    /**
+     * Add the thread with an empty status, unless it is already registered.
+     *
+     * @return the thread's tid
+     */
+    public int register(final String thread) {
+        final Integer existing = tids.get(thread);
+        if (existing != null) {
+            return existing;
+        }
+
+        final int tid = names.size();
+        names.add(thread);
+        statuses.add(new ThreadStatus());
+        tids.put(thread, tid);
+        longestName = Math.max(longestName, thread.length());
+        if (sorted != null) {
+            sorted.put(thread, tid);
+        }
+        if (changed != null) {
+            changed.set(tid);
+        }
+        return tid;
+    }
+
+    public boolean contains(final String thread) {
+        return tids.containsKey(thread);
+    }
+
+    /**
+     * @return the thread's tid, or -1 if it is not registered
+     */
+    public int tid(final String thread) {
+        final Integer tid = tids.get(thread);
+        return tid == null ? -1 : tid;
+    }
+
+    public String name(final int tid) {
+        if (tid < 0 || tid >= names.size()) {
+            throw new NoSuchElementException("tid not found: " + tid);
+        }
+
+        return names.get(tid);
+    }
+
+    public ThreadStatus status(final String thread) {
+        final Integer tid = tids.get(thread);
+        return tid == null ? null : statuses.get(tid);
+    }
+
+    public ThreadStatus status(final int tid) {
+        name(tid);
+        return statuses.get(tid);
+    }
+
+    void put(final int tid, final ThreadStatus status) {
+        name(tid);
+        keepOriginal(tid);
+        statuses.set(tid, status);
+        if (changed != null) {
+            changed.set(tid);
+        }
+    }
+
+    /**
+     * Record a transition in the thread's status.
+     */
+    void record(final String thread, final char status) {
+        final int tid = require(thread);
+        keepOriginal(tid);
+        statuses.get(tid).record(status);
+        if (changed != null) {
+            changed.set(tid);
+        }
+    }
+
+    /**
+     * Start remembering which tids are registered or change status from here on, for stores that save only those.
+     */
+    void trackChanges() {
+        changed = new BitSet();
+    }
+
+    /**
+     * @return the tids registered or changed since tracking started or was last cleared, or null when not tracking
+     */
+    BitSet changed() {
+        return changed;
+    }
+
+    /**
+     * Start keeping a copy of each status as it was before its first change from here on, for undo.
+     */
+    void keepOriginals() {
+        originals = new HashMap<>();
+    }
+
+    /**
+     * Stop keeping originals.
+     *
+     * @return the statuses, by tid, as they were before the changes since {@link #keepOriginals()}
+     */
+    Map<Integer, ThreadStatus> takeOriginals() {
+        final Map<Integer, ThreadStatus> taken = originals != null ? originals : Collections.emptyMap();
+        originals = null;
+        return taken;
+    }
+
+    private void keepOriginal(final int tid) {
+        if (originals != null && !originals.containsKey(tid)) {
+            originals.put(tid, statuses.get(tid).copy());
+        }
+    }
+
+    /**
+     * Forget the threads registered last, so that only the first {@code size} remain, as when undoing the change
+     * that registered them.
+     */
+    void truncate(final int size) {
+        if (size < 0 || size > names.size()) {
+            throw new IndexOutOfBoundsException(size + " of " + names.size());
+        }
+
+        boolean longestRemoved = false;
+        while (names.size() > size) {
+            final String thread = names.remove(names.size() - 1);
+            statuses.remove(statuses.size() - 1);
+            tids.remove(thread);
+            if (sorted != null) {
+                sorted.remove(thread);
+            }
+            longestRemoved |= thread.length() == longestName;
+        }
+        if (changed != null) {
+            changed.clear(size, Math.max(size, changed.length()));
+        }
+
+        if (longestRemoved) {
+            longestName = 0;
+            for (String thread : names) {
+                longestName = Math.max(longestName, thread.length());
+            }
+        }
+    }
+
+    private int require(final String thread) {
+        final Integer tid = tids.get(thread);
+        if (tid == null) {
+            throw new NoSuchElementException("thread not found: " + thread);
+        }
+        return tid;
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * @return the length of the longest thread name, kept up to date as threads are registered
+     */
+    public int longestName() {
+        return longestName;
+    }
+
+    /**
+     * Threads below {@code prefix} in the dotted namespace, so {@code proj} covers {@code proj.sub} and
+     * {@code proj.sub.task} but not {@code proj} itself, {@code project} or {@code proj-x}.
+     *
+     * @return a read-only, name-ordered view of names to tids, which follows later registrations
+     */
+    public SortedMap<String, Integer> descendants(final String prefix) {
+        if (sorted == null) {
+            sorted = new TreeMap<>(tids);
+        }
+
+        // '/' follows '.', so this range is exactly the names continuing the prefix with a dot
+        return Collections.unmodifiableSortedMap(sorted.subMap(prefix + '.', prefix + '/'));
+    }
+
+    /**
+     * @return the tids of {@code prefix} itself, if registered, and of its {@link #descendants(String)}, ascending
+     */
+    public int[] subtree(final String prefix) {
+        final SortedMap<String, Integer> descendants = descendants(prefix);
+        final Integer self = tids.get(prefix);
+
+        final int[] subtree = new int[descendants.size() + (self != null ? 1 : 0)];
+        int i = 0;
+        if (self != null) {
+            subtree[i++] = self;
+        }
+        for (Integer tid : descendants.values()) {
+            subtree[i++] = tid;
+        }
+
+        Arrays.sort(subtree);
+        return subtree;
+    }
+
+    public boolean isEmpty() {
+        return names.isEmpty();
+    }
+
+    /**
+     * @return the names in tid order
+     */
+    public List<String> names() {
+        return Collections.unmodifiableList(names);
+    }
+}
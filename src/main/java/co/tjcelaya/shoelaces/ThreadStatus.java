@@ -0,0 +1,238 @@
+package co.tjcelaya.shoelaces;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+
+/**
+ * A thread's transition history, kept as per-letter counters plus a bounded ring of the most recent letters.
+ * <p>
+ * While a thread has seen no more than {@link #HISTORY_CAPACITY} transitions its text form is the full history,
+ * e.g. {@code "IIEK"}, exactly as older versions stored it. Past that it becomes {@code "I<n>E<n>K<n>:<recent>"},
+ * e.g. {@code "I4970E30K0:IIEI"}, so the status stays a fixed size however busy the thread is.
+ */
+public final class ThreadStatus implements Serializable {
+
+    public static final int HISTORY_CAPACITY = 32;
+
+    private static final char COUNTS_SEPARATOR = ':';
+
+    private int interrupts;
+    private int exits;
+    private int kills;
+    private char last;
+
+    /**
+     * Most recent letters; slot {@code n % HISTORY_CAPACITY} holds the n-th transition. Allocated on first use.
+     */
+    private byte[] history;
+
+    public ThreadStatus() {
+    }
+
+    /**
+     * @return an independent status with the same counts and history
+     */
+    ThreadStatus copy() {
+        final ThreadStatus copy = new ThreadStatus();
+        copy.interrupts = interrupts;
+        copy.exits = exits;
+        copy.kills = kills;
+        copy.last = last;
+        copy.history = history == null ? null : history.clone();
+        return copy;
+    }
+
+    /**
+     * Parse either the plain letter history or the counted form produced by {@link #toString()}.
+     */
+    public static ThreadStatus parse(final String text) {
+        final ThreadStatus status = new ThreadStatus();
+        if (text == null || text.isEmpty()) {
+            return status;
+        }
+
+        final int separator = text.indexOf(COUNTS_SEPARATOR);
+        if (separator < 0) {
+            for (int i = 0; i < text.length(); i++) {
+                status.record(text.charAt(i));
+            }
+            return status;
+        }
+
+        final String recent = text.substring(separator + 1);
+        int interrupts = 0, exits = 0, kills = 0;
+        int i = 0;
+        while (i < separator) {
+            final char letter = text.charAt(i++);
+            final int start = i;
+            while (i < separator && Character.isDigit(text.charAt(i))) {
+                i++;
+            }
+            if (start == i) {
+                throw new IllegalArgumentException("malformed status: " + text);
+            }
+
+            final int count = Integer.parseInt(text.substring(start, i));
+            switch (letter) {
+                case 'I':
+                    interrupts = count;
+                    break;
+                case 'E':
+                    exits = count;
+                    break;
+                case 'K':
+                    kills = count;
+                    break;
+                default:
+                    throw new IllegalArgumentException("malformed status: " + text);
+            }
+        }
+
+        final int total = interrupts + exits + kills;
+        final int kept = Math.min(recent.length(), HISTORY_CAPACITY);
+        if (total < recent.length()) {
+            throw new IllegalArgumentException("malformed status: " + text);
+        }
+
+        status.interrupts = interrupts;
+        status.exits = exits;
+        status.kills = kills;
+
+        if (kept > 0) {
+            status.history = new byte[HISTORY_CAPACITY];
+            for (int r = 0; r < kept; r++) {
+                final char letter = recent.charAt(recent.length() - kept + r);
+                if (letter != 'I' && letter != 'E' && letter != 'K') {
+                    throw new IllegalArgumentException("malformed status: " + text);
+                }
+                status.history[(total - kept + r) % HISTORY_CAPACITY] = (byte) letter;
+                status.last = letter;
+            }
+        }
+
+        return status;
+    }
+
+    /**
+     * Record a transition.
+     *
+     * @param letter one of {@link ShoeLaces#INTERRUPT}, {@link ShoeLaces#EXIT} or {@link ShoeLaces#KILL}
+     */
+    public void record(final char letter) {
+        final int n = total();
+        switch (letter) {
+            case 'I':
+                interrupts++;
+                break;
+            case 'E':
+                exits++;
+                break;
+            case 'K':
+                kills++;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown status: " + letter);
+        }
+
+        if (history == null) {
+            history = new byte[HISTORY_CAPACITY];
+        }
+
+        history[n % HISTORY_CAPACITY] = (byte) letter;
+        last = letter;
+    }
+
+    public int getInterrupts() {
+        return interrupts;
+    }
+
+    public int getExits() {
+        return exits;
+    }
+
+    public int getKills() {
+        return kills;
+    }
+
+    public int total() {
+        return interrupts + exits + kills;
+    }
+
+    /**
+     * @return the most recent transition letter, or {@code 0} if there has been none
+     */
+    public char last() {
+        return last;
+    }
+
+    /**
+     * @return true when the whole history is still held and the text form is the plain letter sequence
+     */
+    public boolean isComplete() {
+        return total() <= HISTORY_CAPACITY;
+    }
+
+    @Override
+    public String toString() {
+        if (total() == 0) {
+            return "";
+        }
+
+        final StringBuilder sb = new StringBuilder(HISTORY_CAPACITY + 24);
+        try {
+            appendTo(sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringBuilder does not throw
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write the text form straight to {@code out}, without building it as a string first.
+     */
+    public void appendTo(final Appendable out) throws IOException {
+        final int total = total();
+        if (!isComplete()) {
+            appendDecimal(out.append('I'), interrupts);
+            appendDecimal(out.append('E'), exits);
+            appendDecimal(out.append('K'), kills);
+            out.append(COUNTS_SEPARATOR);
+        }
+
+        if (history != null) {
+            final int kept = Math.min(total, HISTORY_CAPACITY);
+            for (int n = total - kept; n < total; n++) {
+                final byte letter = history[n % HISTORY_CAPACITY];
+                if (letter != 0) { // a parsed status may hold fewer recent letters than the ring
+                    out.append((char) letter);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write a non-negative number in decimal, a digit at a time.
+     */
+    static Appendable appendDecimal(final Appendable out, final int value) throws IOException {
+        int divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.append((char) ('0' + value / divisor % 10));
+        }
+        return out;
+    }
+
+    /**
+     * @return the number of digits {@link #appendDecimal(Appendable, int)} writes for the value
+     */
+    static int decimalLength(final int value) {
+        int length = 1;
+        for (int rest = value; rest >= 10; rest /= 10) {
+            length++;
+        }
+        return length;
+    }
+}
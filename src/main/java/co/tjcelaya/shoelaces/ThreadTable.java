@@ -0,0 +1,117 @@
+package co.tjcelaya.shoelaces;
+
+import java.io.IOException;
+
+/**
+ * The thread table as {@link ShoeLaces#print(Appendable, PrintOptions)} lays it out, over whichever form the database
+ * is held in. Only the rows that are printed have their name and status read, so a form that decodes lazily, like
+ * {@link MappedShoeLaces}, decodes no more than a page.
+ */
+abstract class ThreadTable {
+
+    abstract int size();
+
+    /**
+     * @return the length of the longest thread name
+     */
+    abstract int longestName() throws IOException;
+
+    /**
+     * @return the tids of {@code prefix} and the threads below it, in tid order
+     */
+    abstract int[] subtree(String prefix) throws IOException;
+
+    abstract String name(int tid) throws IOException;
+
+    /**
+     * @return the thread's most recent transition letter, or {@code 0} if there has been none
+     */
+    abstract char last(int tid) throws IOException;
+
+    abstract boolean isOnStack(int tid) throws IOException;
+
+    abstract void appendStatus(Appendable out, int tid) throws IOException;
+
+    /**
+     * Write the header and the rows {@code options} select, marking {@code running} as such.
+     */
+    void print(final Appendable out, final PrintOptions options, final String running) throws IOException {
+        final int COL_WIDTH_TID = 5;
+        final int COL_WIDTH_THREAD = Math.max(longestName(), "thread".length()) + 1;
+
+        pad(out.append("tid"), "tid".length(), COL_WIDTH_TID);
+        pad(out.append("thread"), "thread".length(), COL_WIDTH_THREAD);
+        out.append("status").append('\n');
+
+        repeat(out, '=', COL_WIDTH_TID - 1).append(' ');
+        repeat(out, '=', COL_WIDTH_THREAD - 1).append(' ');
+        repeat(out, '=', "status".length()).append(' ').append('\n');
+
+        final PrintOptions.Filter filter = options.getFilter();
+        // a prefix narrows the rows before the filter looks at them
+        final int[] candidates = options.getPrefix() != null ? subtree(options.getPrefix()) : null;
+        final int count = candidates != null ? candidates.length : size();
+
+        int skip = options.getOffset();
+        int remaining = options.getLimit();
+        int matched = 0;
+        int i = filter != null ? 0 : Math.min(skip, count);
+        if (filter == null) {
+            skip = 0;
+            matched = i;
+        }
+
+        for (; i < count; i++) {
+            final int tid = candidates != null ? candidates[i] : i;
+            if (filter != null && !filter.matches(last(tid), isOnStack(tid))) {
+                continue;
+            }
+
+            matched++;
+            if (skip > 0) {
+                skip--;
+                continue;
+            }
+            if (remaining == 0) {
+                if (filter != null) {
+                    continue; // keep counting matches for the footer
+                }
+                matched = count;
+                break;
+            }
+            remaining--;
+
+            final String threadName = name(tid);
+            pad(ThreadStatus.appendDecimal(out, tid), ThreadStatus.decimalLength(tid), COL_WIDTH_TID); // tid
+            pad(out.append(threadName), threadName.length(), COL_WIDTH_THREAD); // thread
+            if (threadName.equals(running)) { // status
+                out.append("RUNNING");
+            } else {
+                appendStatus(out, tid);
+            }
+            out.append('\n');
+        }
+
+        if (options.isFiltered() || options.isPaged()) {
+            final int shown = Math.max(0, Math.min(options.getLimit(), matched - options.getOffset()));
+            out.append('\n').append(String.valueOf(shown)).append(" of ").append(String.valueOf(matched))
+                    .append(options.isFiltered() ? " matching" : "").append(" threads shown\n");
+        }
+
+        out.append('\n');
+    }
+
+    private static Appendable pad(final Appendable out, final int length, final int width) throws IOException {
+        for (int i = length; i < width; i++) {
+            out.append(' ');
+        }
+        return out;
+    }
+
+    private static Appendable repeat(final Appendable out, final char c, final int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            out.append(c);
+        }
+        return out;
+    }
+}
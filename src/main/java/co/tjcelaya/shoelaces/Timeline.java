@@ -0,0 +1,238 @@
+package co.tjcelaya.shoelaces;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * When each transition happened, kept in parallel primitive columns: the time, the kind, the thread it named and the
+ * thread running afterwards, both by tid (-1 for none). A thread is credited with the time from each transition that
+ * leaves it running to the next one, and those totals are kept up to date per tid as transitions are recorded, so
+ * asking how long a thread or a subtree has run costs a lookup per thread.
+ * <p>
+ * Stored next to the database in a {@code .timeline} file that saves only ever append to:
+ * <pre>
+ * header  magic "SLT1"
+ * record  long epoch millis, byte transition code, int tid, int running tid
+ * </pre>
+ * The file is written after the database, without a sync of its own, so a crash can lose the times of the last
+ * changes but never the changes. A record torn by a crash is dropped when the file is next read.
+ */
+final class Timeline {
+
+    static final String EXTENSION = ".timeline";
+
+    static final int MAGIC = 0x534c5431; // "SLT1"
+    static final int HEADER_BYTES = 4;
+    static final int RECORD_BYTES = 17;
+
+    private long[] times;
+    private byte[] kinds;
+    private int[] tids;
+    private int[] running;
+    private int size;
+
+    /**
+     * Milliseconds each tid has been running, up to the latest transition.
+     */
+    private long[] spent;
+
+    /**
+     * Number of records already in the file.
+     */
+    private int persisted;
+
+    Timeline() {
+        this(16);
+    }
+
+    private Timeline(final int capacity) {
+        times = new long[capacity];
+        kinds = new byte[capacity];
+        tids = new int[capacity];
+        running = new int[capacity];
+        spent = new long[capacity];
+    }
+
+    void record(final long at, final Transition.Kind kind, final int tid, final int runningTid) {
+        if (size > 0) {
+            credit(running[size - 1], at - times[size - 1]);
+        }
+
+        if (size == times.length) {
+            final int capacity = size * 2;
+            times = Arrays.copyOf(times, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+            tids = Arrays.copyOf(tids, capacity);
+            running = Arrays.copyOf(running, capacity);
+        }
+
+        times[size] = at;
+        kinds[size] = (byte) kind.code();
+        tids[size] = tid;
+        running[size] = runningTid;
+        size++;
+    }
+
+    private void credit(final int tid, final long millis) {
+        if (tid < 0 || millis <= 0L) {
+            return; // paused, or the clock went back
+        }
+        if (tid >= spent.length) {
+            spent = Arrays.copyOf(spent, Math.max(tid + 1, spent.length * 2));
+        }
+        spent[tid] += millis;
+    }
+
+    /**
+     * Drop every tid from {@code tids} up, after an undo unregistered those threads, so that threads registered later
+     * under the same tids are not credited with their time. The records keep their times, naming no thread.
+     */
+    void forget(final int tids) {
+        boolean forgot = false;
+        for (int i = 0; i < size; i++) {
+            if (this.tids[i] >= tids) {
+                this.tids[i] = -1;
+                forgot = true;
+            }
+            if (running[i] >= tids) {
+                running[i] = -1;
+                forgot = true;
+            }
+        }
+        if (tids < spent.length) {
+            Arrays.fill(spent, tids, spent.length, 0L);
+        }
+        if (forgot) {
+            persisted = 0; // records already in the file changed, so the next save rewrites it
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    long time(final int i) {
+        return times[check(i)];
+    }
+
+    Transition.Kind kind(final int i) {
+        return Transition.Kind.fromCode((char) kinds[check(i)]);
+    }
+
+    /**
+     * @return the tid the transition named or resolved to, or -1 for a pause or resume with nothing running
+     */
+    int tid(final int i) {
+        return tids[check(i)];
+    }
+
+    /**
+     * @return the tid running after the transition, or -1 if paused or nothing was left
+     */
+    int running(final int i) {
+        return running[check(i)];
+    }
+
+    private int check(final int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException(i + " of " + size);
+        }
+        return i;
+    }
+
+    /**
+     * @param now the current time, to count the stretch since the latest transition if the thread is still running
+     * @return milliseconds the thread has been running
+     */
+    long spent(final int tid, final long now) {
+        long total = tid < spent.length ? spent[tid] : 0L;
+        if (size > 0 && running[size - 1] == tid && now > times[size - 1]) {
+            total += now - times[size - 1];
+        }
+        return total;
+    }
+
+    // Persistence
+
+    static File fileFor(final File db) {
+        return new File(db.getPath() + EXTENSION);
+    }
+
+    /**
+     * Read the database's timeline, or an empty one if it has none.
+     */
+    static Timeline read(final File db) throws IOException {
+        final File file = fileFor(db);
+        if (!file.exists()) {
+            return new Timeline();
+        }
+
+        final ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        if (bytes.remaining() < HEADER_BYTES || bytes.getInt() != MAGIC) {
+            throw new IOException("not a timeline: " + file);
+        }
+
+        final int count = bytes.remaining() / RECORD_BYTES;
+        final Timeline timeline = new Timeline(Math.max(16, count));
+        for (int i = 0; i < count; i++) {
+            final long at = bytes.getLong();
+            final Transition.Kind kind = Transition.Kind.fromCode((char) bytes.get());
+            final int tid = bytes.getInt();
+            timeline.record(at, kind, tid, bytes.getInt());
+        }
+        timeline.persisted = count;
+        return timeline;
+    }
+
+    /**
+     * Add the transitions recorded since the last save to the database's timeline file, or rewrite it if it does not
+     * hold exactly the ones saved before.
+     */
+    void save(final File db) throws IOException {
+        final File file = fileFor(db);
+        if (persisted == size && (size == 0 || file.length() == HEADER_BYTES + (long) size * RECORD_BYTES)) {
+            return;
+        }
+
+        if (persisted == 0 || file.length() != HEADER_BYTES + (long) persisted * RECORD_BYTES) {
+            write(db);
+            return;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            writeRecords(out, persisted);
+        }
+        persisted = size;
+    }
+
+    /**
+     * Replace the database's timeline file with every transition recorded, or remove it if there are none.
+     */
+    void write(final File db) throws IOException {
+        persisted = 0;
+        if (size == 0) {
+            Files.deleteIfExists(fileFor(db).toPath());
+            return;
+        }
+
+        AtomicFile.write(fileFor(db), false, stream -> {
+            final DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(MAGIC);
+            writeRecords(out, 0);
+            out.flush();
+        });
+        persisted = size;
+    }
+
+    private void writeRecords(final DataOutputStream out, final int from) throws IOException {
+        for (int i = from; i < size; i++) {
+            out.writeLong(times[i]);
+            out.writeByte(kinds[i]);
+            out.writeInt(tids[i]);
+            out.writeInt(running[i]);
+        }
+    }
+}
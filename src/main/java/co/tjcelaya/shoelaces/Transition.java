@@ -0,0 +1,167 @@
+package co.tjcelaya.shoelaces;
+
+import java.util.Objects;
+
+/**
+ * A single mutation applied to a {@link ShoeLaces}, as issued by the caller.
+ * <p>
+ * Transitions record the call, not its effect: replaying them in order against the state they were recorded on
+ * reproduces the same threads and attention stack. Those told about a transition as it happens also get when it was
+ * applied and which thread was left running, which are neither journaled nor compared.
+ */
+public final class Transition {
+
+    public enum Kind {
+        SPAWN('S'),
+        INTERRUPT('I'),
+        EXIT('E'),
+        KILL('K'),
+        PAUSE('P'),
+        RESUME('R'),
+        /**
+         * Not a call: an undo or redo replaced part of the state, which listeners should reread. Never journaled and
+         * cannot be replayed.
+         */
+        RESYNC('Z');
+
+        private final char code;
+
+        Kind(final char code) {
+            this.code = code;
+        }
+
+        public char code() {
+            return code;
+        }
+
+        static Kind fromCode(final char code) {
+            for (Kind k : values()) {
+                if (k.code == code) {
+                    return k;
+                }
+            }
+
+            throw new IllegalArgumentException("unknown transition code: " + code);
+        }
+    }
+
+    private final Kind kind;
+    private final String thread;
+    private final long at;
+    private final String running;
+
+    Transition(final Kind kind, final String thread) {
+        this(kind, thread, 0L, null);
+    }
+
+    Transition(final Kind kind, final String thread, final long at, final String running) {
+        this.kind = Objects.requireNonNull(kind);
+        this.thread = thread;
+        this.at = at;
+        this.running = running;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the thread named by the caller, or null for the implicit (current thread) variants
+     */
+    public String getThread() {
+        return thread;
+    }
+
+    /**
+     * @return epoch milliseconds when the transition was applied, or 0 if it was read back from a journal
+     */
+    public long getAt() {
+        return at;
+    }
+
+    /**
+     * @return the thread running once the transition was applied, or null if none was or it is not known
+     */
+    public String getRunning() {
+        return running;
+    }
+
+    /**
+     * Re-issue the call against a database.
+     */
+    void applyTo(final ShoeLaces db) {
+        switch (kind) {
+            case SPAWN:
+                db.spawn(thread);
+                break;
+            case INTERRUPT:
+                db.interrupt(thread);
+                break;
+            case EXIT:
+                if (thread == null) {
+                    db.exit();
+                } else {
+                    db.exit(thread);
+                }
+                break;
+            case KILL:
+                if (thread == null) {
+                    db.kill();
+                } else {
+                    db.kill(thread);
+                }
+                break;
+            case PAUSE:
+                db.pause();
+                break;
+            case RESUME:
+                db.resume();
+                break;
+            case RESYNC:
+                throw new IllegalStateException("a resync cannot be replayed, reread the database");
+        }
+    }
+
+    /**
+     * Compact single-line form, e.g. {@code "I proj.task"} or {@code "P"}. Thread names never contain spaces.
+     */
+    String toRecord() {
+        return thread == null
+                ? String.valueOf(kind.code)
+                : kind.code + " " + thread;
+    }
+
+    static Transition fromRecord(final String record) {
+        if (record.isEmpty() || (record.length() > 1 && record.charAt(1) != ' ')) {
+            throw new IllegalArgumentException("malformed transition record: " + record);
+        }
+
+        final Kind kind = Kind.fromCode(record.charAt(0));
+        if (kind == Kind.RESYNC) {
+            throw new IllegalArgumentException("a resync is never journaled: " + record);
+        }
+        return new Transition(kind, record.length() > 1 ? record.substring(2) : null);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Transition)) {
+            return false;
+        }
+        final Transition that = (Transition) o;
+        return kind == that.kind && Objects.equals(thread, that.thread);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(kind, thread);
+    }
+
+    @Override
+    public String toString() {
+        return toRecord();
+    }
+}
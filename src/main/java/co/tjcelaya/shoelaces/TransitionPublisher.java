@@ -0,0 +1,225 @@
+package co.tjcelaya.shoelaces;
+
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Publishes a database's transitions, as they are applied, to any number of subscribers. Register it with
+ * {@link ShoeLaces#addListener(Consumer)}.
+ * <p>
+ * Each subscriber has its own fixed-size buffer and is signalled on the executor, one signal at a time, and only as
+ * far as it has requested, so a slow subscriber never holds up the database. Offering a transition costs a slot
+ * write and, when the subscriber is idle, an executor hand-off. A subscriber that falls a whole buffer behind is
+ * dropped with an {@link IllegalStateException} in place of the buffered transitions; it can subscribe again and
+ * reread the database to catch up.
+ * <p>
+ * Transitions must be offered by one thread at a time, as the database's own listeners are.
+ */
+public final class TransitionPublisher implements Flow.Publisher<Transition>, Consumer<Transition>, AutoCloseable {
+
+    public static final int DEFAULT_BUFFER = 256;
+
+    private final Executor executor;
+    private final int buffer;
+    private final CopyOnWriteArrayList<Delivery> deliveries = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    public TransitionPublisher(final Executor executor) {
+        this(executor, DEFAULT_BUFFER);
+    }
+
+    /**
+     * @param buffer transitions held for each subscriber before it is dropped
+     */
+    public TransitionPublisher(final Executor executor, final int buffer) {
+        if (buffer <= 0) {
+            throw new IllegalArgumentException("buffer must be positive: " + buffer);
+        }
+        this.executor = Objects.requireNonNull(executor);
+        this.buffer = buffer;
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super Transition> subscriber) {
+        final Delivery delivery = new Delivery(Objects.requireNonNull(subscriber));
+        deliveries.add(delivery);
+        if (closed) {
+            deliveries.remove(delivery);
+            delivery.done = true;
+        }
+        delivery.schedule(); // onSubscribe goes through the executor too, so signals never overlap
+    }
+
+    /**
+     * Offer the transition to every subscriber.
+     */
+    @Override
+    public void accept(final Transition transition) {
+        for (Delivery delivery : deliveries) {
+            delivery.offer(transition);
+        }
+    }
+
+    /**
+     * Complete every subscription once its buffered transitions are delivered, and any later ones straight away.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Delivery delivery : deliveries) {
+            deliveries.remove(delivery);
+            delivery.done = true;
+            delivery.schedule();
+        }
+    }
+
+    /**
+     * @return the number of subscriptions still receiving transitions
+     */
+    public int subscribers() {
+        return deliveries.size();
+    }
+
+    /**
+     * One subscription: a single-producer, single-consumer ring of transitions, and a drain loop that at most one
+     * executor task runs at a time.
+     */
+    private final class Delivery implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super Transition> subscriber;
+        private final Transition[] ring = new Transition[buffer];
+        private final AtomicLong produced = new AtomicLong();
+        private final AtomicLong consumed = new AtomicLong();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private volatile boolean cancelled;
+        private volatile boolean done;
+        private volatile Throwable error;
+
+        // touched only by the drain loop
+        private boolean subscribed;
+        private boolean terminated;
+
+        private Delivery(final Flow.Subscriber<? super Transition> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        private void offer(final Transition transition) {
+            if (cancelled || done || error != null) {
+                return;
+            }
+
+            final long p = produced.get();
+            if (p - consumed.get() == ring.length) {
+                fail(new IllegalStateException("subscriber fell " + ring.length + " transitions behind"));
+                return;
+            }
+
+            ring[(int) (p % ring.length)] = transition;
+            produced.set(p + 1); // publishes the slot
+            schedule();
+        }
+
+        @Override
+        public void request(final long n) {
+            if (n <= 0L) {
+                fail(new IllegalArgumentException("non-positive request: " + n));
+                return;
+            }
+
+            long current;
+            long next;
+            do {
+                current = requested.get();
+                next = current + n < 0L ? Long.MAX_VALUE : current + n;
+            } while (!requested.compareAndSet(current, next));
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            deliveries.remove(this);
+        }
+
+        private void fail(final Throwable throwable) {
+            error = throwable;
+            deliveries.remove(this);
+            schedule();
+        }
+
+        private void schedule() {
+            if (pending.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    cancel(); // the executor is shutting down; nothing more can be delivered
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                drain();
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            if (terminated) {
+                return;
+            }
+            try {
+                if (!subscribed) {
+                    subscribed = true;
+                    subscriber.onSubscribe(this);
+                }
+
+                while (!cancelled) {
+                    if (error != null) {
+                        terminate();
+                        subscriber.onError(error);
+                        return;
+                    }
+
+                    final long c = consumed.get();
+                    if (c == produced.get()) {
+                        if (done) {
+                            terminate();
+                            subscriber.onComplete();
+                        }
+                        return;
+                    }
+                    if (requested.get() == 0L) {
+                        return;
+                    }
+
+                    final int slot = (int) (c % ring.length);
+                    final Transition transition = ring[slot];
+                    ring[slot] = null;
+                    consumed.set(c + 1);
+                    if (requested.get() != Long.MAX_VALUE) {
+                        requested.decrementAndGet();
+                    }
+                    subscriber.onNext(transition);
+                }
+                terminate();
+            } catch (RuntimeException e) {
+                terminate(); // a subscriber that throws is treated as having cancelled
+            }
+        }
+
+        private void terminate() {
+            terminated = true;
+            cancelled = true;
+            deliveries.remove(this);
+        }
+    }
+}
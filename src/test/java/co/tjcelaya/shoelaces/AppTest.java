@@ -1,8 +1,22 @@
 package co.tjcelaya.shoelaces;
 
+import org.testng.annotations.Test;
+
+import java.time.LocalDate;
+
+import static org.testng.Assert.*;
+
 /**
  * Unit test for simple App.
  */
-public class AppTest 
-{
+@Test
+public class AppTest {
+
+    public void testTodayMatchesLocalDate() {
+        final LocalDate before = LocalDate.now();
+        final LocalDate today = App.today();
+        final LocalDate after = LocalDate.now();
+
+        assertTrue(today.equals(before) || today.equals(after), today + " is not " + before);
+    }
 }
@@ -0,0 +1,222 @@
+package co.tjcelaya.shoelaces;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static co.tjcelaya.shoelaces.AttentionStack.PAUSE_MARKER;
+import static org.testng.Assert.*;
+
+@Test
+public class AttentionStackTest {
+
+    public void testPushPopPeek() throws Exception {
+        final AttentionStack s = new AttentionStack();
+        assertTrue(s.isEmpty());
+        assertNull(s.peek());
+        assertThrows(NoSuchElementException.class, s::pop);
+
+        s.push("a");
+        s.push("b");
+        assertEquals(s.peek(), "b");
+        assertEquals(s.size(), 2);
+        assertThrows(IllegalStateException.class, () -> s.push("a"));
+
+        assertEquals(s.pop(), "b");
+        assertFalse(s.contains("b"));
+        assertEquals(s.pop(), "a");
+        assertTrue(s.isEmpty());
+    }
+
+    public void testMoveToTopAndRemoveAnywhere() throws Exception {
+        final AttentionStack s = AttentionStack.fromList(Arrays.asList("c", "b", "a"));
+
+        s.moveToTop("a");
+        assertEquals(s.toList(), Arrays.asList("a", "c", "b"));
+
+        s.moveToTop("a");
+        s.moveToTop("d");
+        assertEquals(s.toList(), Arrays.asList("d", "a", "c", "b"));
+
+        assertTrue(s.remove("c"));
+        assertFalse(s.remove("c"));
+        assertTrue(s.remove("b"));
+        assertTrue(s.remove("d"));
+        assertEquals(s.toList(), Arrays.asList("a"));
+        assertEquals(s.size(), 1);
+    }
+
+    public void testPauseMarkersAreNotIndexed() throws Exception {
+        final AttentionStack s = new AttentionStack();
+        assertFalse(s.contains(PAUSE_MARKER));
+
+        s.push("a");
+        s.push(PAUSE_MARKER);
+        s.push(PAUSE_MARKER);
+        assertTrue(s.contains(PAUSE_MARKER));
+        assertEquals(s.peek(), PAUSE_MARKER);
+
+        assertTrue(s.remove(PAUSE_MARKER));
+        assertEquals(s.pop(), PAUSE_MARKER);
+        assertFalse(s.contains(PAUSE_MARKER));
+        assertEquals(s.peek(), "a");
+    }
+
+    public void testFromListKeepsTopmostDuplicate() throws Exception {
+        final AttentionStack s = AttentionStack.fromList(Arrays.asList(PAUSE_MARKER, "a", "b", "a", null));
+        assertEquals(s.toList(), Arrays.asList(PAUSE_MARKER, "a", "b", PAUSE_MARKER));
+        assertEquals(s.stream().count(), 4L);
+    }
+
+    public void testUnchangedCountsUntouchedBottom() throws Exception {
+        final AttentionStack s = AttentionStack.fromList(Arrays.asList("e", "d", "c", "b", "a"));
+        assertEquals(s.unchanged(), 0, "not tracking");
+
+        s.trackChanges();
+        assertEquals(s.unchanged(), 5);
+
+        s.push("f");
+        s.pop();
+        assertEquals(s.unchanged(), 5, "pushing and popping leaves the bottom alone");
+
+        s.moveToTop("d");
+        assertEquals(s.unchanged(), 3);
+
+        s.remove("b");
+        assertEquals(s.unchanged(), 1);
+
+        s.trackChanges();
+        assertEquals(s.unchanged(), 4);
+    }
+
+    public void testUnchangedNeverCoversAMovedEntry() throws Exception {
+        final Random random = new Random(22);
+        final AttentionStack s = new AttentionStack();
+        for (int round = 0; round < 200; round++) {
+            s.trackChanges();
+            final List<String> before = s.toList();
+            for (int op = 0; op < 3; op++) {
+                final String name = "t" + random.nextInt(12);
+                switch (random.nextInt(4)) {
+                    case 0:
+                        s.moveToTop(name);
+                        break;
+                    case 1:
+                        s.remove(name);
+                        break;
+                    case 2:
+                        s.push(PAUSE_MARKER);
+                        break;
+                    default:
+                        if (!s.isEmpty()) {
+                            s.pop();
+                        }
+                }
+            }
+
+            final List<String> after = s.toList();
+            for (int i = 1; i <= s.unchanged(); i++) {
+                assertEquals(after.get(after.size() - i), before.get(before.size() - i), "round " + round);
+            }
+        }
+    }
+
+    public void testOnlyThreadsOnTheStackAreIndexed() throws Exception {
+        final AttentionStack s = new AttentionStack();
+        for (int i = 0; i < 100; i++) {
+            s.push("t" + i);
+            s.moveToTop("t" + (i / 2));
+            if (i % 3 == 0) {
+                s.remove("t" + (i / 3));
+            }
+        }
+        assertEquals(s.indexed(), s.size());
+
+        while (!s.isEmpty()) {
+            s.pop();
+        }
+        assertEquals(s.indexed(), 0);
+    }
+
+    public void testNodesAreReusedWhenThreadsComeBack() throws Exception {
+        final AttentionStack s = new AttentionStack();
+        s.push("a");
+        s.push("b");
+        s.remove("a");
+        assertFalse(s.contains("a"));
+        assertEquals(s.toList(), Arrays.asList("b"));
+
+        s.push("a");
+        s.push(PAUSE_MARKER);
+        s.pop();
+        s.push(PAUSE_MARKER);
+        assertEquals(s.toList(), Arrays.asList(PAUSE_MARKER, "a", "b"));
+        assertTrue(s.contains(PAUSE_MARKER));
+
+        s.pop();
+        s.pop();
+        s.moveToTop("a");
+        assertEquals(s.toList(), Arrays.asList("a", "b"));
+        assertFalse(s.remove("c"));
+        assertThrows(IllegalStateException.class, () -> s.push("b"));
+    }
+
+    public void testEditsCanBeReplayedEitherWay() throws Exception {
+        final AttentionStack s = AttentionStack.fromList(Arrays.asList("d", PAUSE_MARKER, "c", "b", "a"));
+        final List<String> before = s.toList();
+
+        s.recordEdits();
+        s.moveToTop("b");
+        s.push(PAUSE_MARKER);
+        s.remove("d");
+        s.remove("a");
+        final List<AttentionStack.Edit> edits = s.takeEdits();
+        final List<String> after = s.toList();
+        assertEquals(edits.size(), 5, "a move is a removal and a push");
+        assertEquals(edits.get(3).anchor, "c");
+        assertEquals(edits.get(3).markers, 1);
+        assertNull(edits.get(4).anchor);
+        assertTrue(s.takeEdits().isEmpty());
+
+        for (int i = edits.size() - 1; i >= 0; i--) {
+            final AttentionStack.Edit edit = edits.get(i);
+            if (edit.removed) {
+                assertTrue(s.insertAbove(edit.name, edit.anchor, edit.markers));
+            } else {
+                assertEquals(s.pop(), edit.name);
+            }
+        }
+        assertEquals(s.toList(), before);
+
+        for (AttentionStack.Edit edit : edits) {
+            if (edit.removed) {
+                assertTrue(s.removeAbove(edit.name, edit.anchor, edit.markers));
+            } else {
+                s.push(edit.name);
+            }
+        }
+        assertEquals(s.toList(), after);
+
+        assertFalse(s.insertAbove("b", "c", 0), "already on the stack");
+        assertFalse(s.insertAbove("e", "missing", 0));
+        assertFalse(s.insertAbove("e", "b", 2), "only one marker above b");
+        assertFalse(s.removeAbove("b", null, 0), "not at the bottom");
+        assertEquals(s.toList(), after);
+    }
+
+    public void testRemovalsAreAnchoredToTheThreadBelow() throws Exception {
+        final AttentionStack s = new AttentionStack();
+        for (int i = 0; i < 100_000; i++) {
+            s.push("t" + i);
+        }
+
+        s.recordEdits();
+        s.remove("t1");
+        final AttentionStack.Edit edit = s.takeEdits().get(0);
+        assertEquals(edit.anchor, "t0");
+        assertEquals(edit.markers, 0);
+    }
+}
@@ -0,0 +1,77 @@
+package co.tjcelaya.shoelaces;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import static org.testng.Assert.*;
+
+@Test
+public class BatchTest {
+
+    private static String[] run(final File file, final int saveEvery, final String commands) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final PrintStream sink = new PrintStream(NullOutputStream.NULL_OUTPUT_STREAM);
+        Batch.run(new FileStore(file), new StringReader(commands), saveEvery,
+                new PrintStream(out, true, "UTF-8"), sink);
+        return out.toString(StandardCharsets.UTF_8.name()).split("\n");
+    }
+
+    public void testAppliesCommandsAndReportsEach() throws Exception {
+        final File file = TempDatabase.create(".sldb");
+        final String[] results = run(file, 0,
+                "{\"id\":\"1\",\"op\":\"interrupt\",\"thread\":\"a\"}\n"
+                        + "\n"
+                        + "{\"id\":2,\"op\":\"spawn\",\"thread\":\"b\",\"note\":{\"ignored\":[1]}}\n"
+                        + "{\"op\":\"interrupt\",\"thread\":1}\n"
+                        + "{\"id\":\"4\",\"op\":\"kill\"}\n"
+                        + "{\"id\":\"5\",\"op\":\"pause\"}\n");
+
+        assertEquals(results, new String[]{
+                "{\"id\":\"1\",\"ok\":true,\"current\":\"a\"}",
+                "{\"id\":\"2\",\"ok\":true,\"current\":\"a\"}",
+                "{\"ok\":true,\"current\":\"b\"}",
+                "{\"id\":\"4\",\"ok\":true,\"current\":\"a\"}",
+                "{\"id\":\"5\",\"ok\":true,\"current\":null}",
+        });
+
+        final ShoeLaces db = ShoeLaces.load(file);
+        assertTrue(db.isPaused());
+        assertEquals(db.threads().size(), 2);
+    }
+
+    public void testFailuresAreReportedAndDoNotStopTheBatch() throws Exception {
+        final File file = TempDatabase.create(".sldb");
+        final String[] results = run(file, 0,
+                "{\"id\":\"1\",\"op\":\"kill\",\"thread\":\"missing\"}\n"
+                        + "not json\n"
+                        + "{\"id\":\"3\",\"op\":\"dance\"}\n"
+                        + "{\"id\":\"4\"}\n"
+                        + "{\"id\":\"5\",\"op\":\"spawn\"}\n"
+                        + "{\"id\":\"6\",\"op\":\"interrupt\",\"thread\":\"ok\"}\n");
+
+        assertEquals(results.length, 6);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(results[i].contains("\"ok\":false"), results[i]);
+        }
+        assertTrue(results[2].contains("unknown op: dance"));
+        assertEquals(results[5], "{\"id\":\"6\",\"ok\":true,\"current\":\"ok\"}");
+        assertEquals(ShoeLaces.load(file).current(), "ok");
+    }
+
+    public void testSavesEveryNCommands() throws Exception {
+        final File file = TempDatabase.create(".sldb");
+        final StringBuilder commands = new StringBuilder();
+        for (int i = 0; i < 5; i++) {
+            commands.append("{\"op\":\"spawn\",\"thread\":\"t").append(i).append("\"}\n");
+        }
+
+        run(file, 2, commands.toString());
+        assertEquals(ShoeLaces.load(file).threads().size(), 5);
+    }
+}
@@ -0,0 +1,195 @@
+package co.tjcelaya.shoelaces;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+import static org.testng.Assert.*;
+
+@Test
+public class BinaryCodecTest {
+
+    private static File temp(final String extension) throws Exception {
+        final File f = File.createTempFile(UUID.randomUUID().toString(), extension);
+        TempDatabase.track(f);
+        return f;
+    }
+
+    private static ShoeLaces sample() {
+        final ShoeLaces db = new ShoeLaces("sample");
+        db.spawn("proj.a");
+        db.interrupt("proj.b");
+        for (int i = 0; i < 50; i++) {
+            db.interrupt("proj.a");
+            db.interrupt("proj.b");
+        }
+        db.spawn("idle");
+        db.interrupt("other-thing");
+        db.kill("proj.a");
+        return db;
+    }
+
+    private static String json(final ShoeLaces db) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ShoeLacesCodec.write(db, out);
+        return out.toString(StandardCharsets.UTF_8.name());
+    }
+
+    public void testRoundTripIsLossless() throws Exception {
+        final ShoeLaces db = sample();
+        db.pause();
+        final File f = temp(BinaryCodec.EXTENSION);
+
+        db.save(f);
+        assertEquals(json(ShoeLaces.load(f)), json(db));
+    }
+
+    public void testMappedReadsDecodeOnDemand() throws Exception {
+        final ShoeLaces db = sample();
+        final File f = temp(BinaryCodec.EXTENSION);
+        BinaryCodec.write(db, f);
+
+        final MappedShoeLaces mapped = BinaryCodec.open(f);
+        assertEquals(mapped.getName(), "sample");
+        assertEquals(mapped.size(), 4);
+        assertEquals(mapped.lookup(3), "other-thing");
+        assertSame(mapped.lookup(3), mapped.lookup(3));
+        assertEquals(mapped.status(0), db.threads().status(0).toString());
+        assertEquals(mapped.tid("idle"), 2);
+        assertEquals(mapped.tid("missing"), -1);
+        assertThrows(NoSuchElementException.class, () -> mapped.lookup(4));
+
+        assertEquals(mapped.current(), "other-thing");
+        assertTrue(mapped.isRunning());
+        assertEquals(mapped.attentionDepth(), 2);
+        assertEquals(mapped.print(), db.print());
+    }
+
+    public void testMappedPrintMatchesEveryOption() throws Exception {
+        final ShoeLaces db = sample();
+        db.exit("other-thing");
+        db.interrupt("idle");
+        db.exit("idle");
+        db.interrupt("idle"); // finished, then back on the stack
+        final File f = temp(BinaryCodec.EXTENSION);
+        BinaryCodec.write(db, f);
+        final MappedShoeLaces mapped = BinaryCodec.open(f);
+
+        final PrintOptions[] options = {
+                PrintOptions.all(),
+                PrintOptions.all().offset(1).limit(2),
+                PrintOptions.all().offset(10),
+                PrintOptions.all().prefix("proj"),
+                PrintOptions.all().prefix("proj.a"),
+                PrintOptions.all().prefix("pro"),
+                PrintOptions.all().filter(PrintOptions.Filter.LIVE),
+                PrintOptions.all().filter(PrintOptions.Filter.EXITED),
+                PrintOptions.all().filter(PrintOptions.Filter.KILLED).prefix("proj"),
+        };
+        for (PrintOptions option : options) {
+            final StringBuilder expected = new StringBuilder();
+            db.print(expected, option);
+            final StringBuilder actual = new StringBuilder();
+            mapped.print(actual, option);
+            assertEquals(actual.toString(), expected.toString());
+        }
+    }
+
+    public void testMappedPrintDecodesOnlyThePage() throws Exception {
+        final ShoeLaces db = new ShoeLaces("big");
+        for (int i = 0; i < 1000; i++) {
+            db.spawn("proj.task-" + i);
+        }
+        final File f = temp(BinaryCodec.EXTENSION);
+        BinaryCodec.write(db, f);
+
+        final MappedShoeLaces mapped = BinaryCodec.open(f);
+        mapped.print(new StringBuilder(), PrintOptions.all().offset(500).limit(10));
+        assertEquals(mapped.decodedNames(), 10);
+    }
+
+    public void testMappedPrintSizesColumnsFromTheHeader() throws Exception {
+        final ShoeLaces db = new ShoeLaces("widths");
+        db.spawn("a");
+        db.spawn("a-much-longer-name");
+        final File f = temp(BinaryCodec.EXTENSION);
+        BinaryCodec.write(db, f);
+
+        final StringBuilder out = new StringBuilder();
+        BinaryCodec.open(f).print(out, PrintOptions.all().limit(1));
+        assertTrue(out.toString().contains("\ntid  " + StringUtils.rightPad("thread", 19) + "status\n"),
+                out.toString());
+
+        final byte[] bytes = FileUtils.readFileToByteArray(f);
+        bytes[23] = 30; // the longest name, as far as the header says
+        FileUtils.writeByteArrayToFile(f, bytes);
+        out.setLength(0);
+        BinaryCodec.open(f).print(out, PrintOptions.all().limit(1));
+        assertTrue(out.toString().contains("\ntid  " + StringUtils.rightPad("thread", 31) + "status\n"),
+                out.toString());
+    }
+
+    public void testPausedHead() throws Exception {
+        final ShoeLaces db = sample();
+        db.pause();
+        final File f = temp(BinaryCodec.EXTENSION);
+        BinaryCodec.write(db, f);
+
+        final MappedShoeLaces mapped = BinaryCodec.open(f);
+        assertNull(mapped.current());
+        assertTrue(mapped.isPaused());
+        assertFalse(mapped.isRunning());
+    }
+
+    public void testNamesAreStoredOnce() throws Exception {
+        final File f = temp(BinaryCodec.EXTENSION);
+        BinaryCodec.write(sample(), f);
+
+        final String raw = new String(FileUtils.readFileToByteArray(f), StandardCharsets.ISO_8859_1);
+        assertEquals(raw.indexOf("other-thing"), raw.lastIndexOf("other-thing"));
+    }
+
+    public void testRewriteDoesNotDisturbOpenMapping() throws Exception {
+        final File f = temp(BinaryCodec.EXTENSION);
+        BinaryCodec.write(sample(), f);
+        final MappedShoeLaces before = BinaryCodec.open(f);
+
+        BinaryCodec.write(new ShoeLaces("replaced"), f);
+
+        assertEquals(before.getName(), "sample");
+        assertEquals(BinaryCodec.open(f).getName(), "replaced");
+    }
+
+    public void testCorruptFilesAreRejected() throws Exception {
+        final File f = temp(BinaryCodec.EXTENSION);
+        FileUtils.writeStringToFile(f, "{\"name\":\"json\"}", StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> BinaryCodec.open(f));
+
+        BinaryCodec.write(sample(), f);
+        final byte[] bytes = FileUtils.readFileToByteArray(f);
+        FileUtils.writeByteArrayToFile(f, java.util.Arrays.copyOf(bytes, BinaryCodec.HEADER_BYTES + 4));
+        assertThrows(IOException.class, () -> BinaryCodec.open(f));
+    }
+
+    public void testConvertBothWays() throws Exception {
+        final ShoeLaces db = sample();
+        final File json = temp(".sldb");
+        db.save(json);
+
+        final File binary = App.convert(json);
+        TempDatabase.track(binary);
+        assertTrue(BinaryCodec.isBinary(binary));
+        assertEquals(BinaryCodec.open(binary).print(), db.print());
+
+        assertTrue(json.delete());
+        assertEquals(App.convert(binary), json);
+        assertEquals(json(ShoeLaces.load(json)), json(db));
+    }
+}
@@ -0,0 +1,148 @@
+package co.tjcelaya.shoelaces;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+@Test
+public class ConcurrentShoeLacesTest {
+
+    private static final int WRITERS = 4;
+    private static final int ROUNDS = 2_000;
+
+    public void testNoUpdateIsLost() throws Exception {
+        final ConcurrentShoeLaces shared = new ConcurrentShoeLaces(new ShoeLaces("day"));
+        final AtomicInteger transitions = new AtomicInteger();
+        shared.addListener(transition -> transitions.incrementAndGet());
+
+        final ExecutorService pool = Executors.newFixedThreadPool(WRITERS);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Future<?>> writers = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                final String thread = "w" + w;
+                writers.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < ROUNDS; i++) {
+                        shared.interrupt(thread); // the first spawns it, the rest are counted
+                    }
+                    shared.exit(thread);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> writer : writers) {
+                writer.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        final ConcurrentShoeLaces.Snapshot snapshot = shared.snapshot();
+        assertEquals(snapshot.size(), WRITERS);
+        for (int w = 0; w < WRITERS; w++) {
+            final ThreadStatus status = ThreadStatus.parse(snapshot.status("w" + w));
+            assertEquals(status.getInterrupts(), ROUNDS - 1);
+            assertEquals(status.getExits(), 1);
+        }
+        assertTrue(snapshot.attention().isEmpty());
+        assertNull(shared.current());
+        assertEquals(transitions.get(), WRITERS * (ROUNDS + 1));
+        assertEquals(snapshot.version(), WRITERS * (ROUNDS + 1) + 1L, "every mutation and the listener");
+    }
+
+    public void testSnapshotsAreConsistentWhileWritersRun() throws Exception {
+        final ConcurrentShoeLaces shared = new ConcurrentShoeLaces(new ShoeLaces("day"));
+        final AtomicBoolean running = new AtomicBoolean(true);
+
+        final ExecutorService pool = Executors.newFixedThreadPool(WRITERS + 1);
+        try {
+            final List<Future<?>> writers = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                final String thread = "proj.w" + w;
+                writers.add(pool.submit(() -> {
+                    for (int i = 0; i < ROUNDS / 4; i++) {
+                        shared.interrupt(thread);
+                        shared.pause();
+                        shared.resume();
+                        if (i % 10 == 9) {
+                            shared.kill(thread);
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            final Future<Integer> reader = pool.submit(() -> {
+                int checked = 0;
+                long version = -1L;
+                do {
+                    final ConcurrentShoeLaces.Snapshot snapshot = shared.snapshot();
+                    assertTrue(snapshot.version() >= version, "snapshots never go back");
+                    version = snapshot.version();
+
+                    final List<String> attention = snapshot.attention();
+                    final String top = attention.isEmpty() ? null : attention.get(0);
+                    assertEquals(snapshot.current(), AttentionStack.PAUSE_MARKER.equals(top) ? null : top);
+                    for (String thread : attention) {
+                        assertTrue(thread.isEmpty() || snapshot.tid(thread) >= 0, thread + " is not registered");
+                    }
+                    assertEquals(snapshot.print(), snapshot.print(), "a snapshot never changes");
+                    checked++;
+                } while (running.get());
+                return checked;
+            });
+
+            for (Future<?> writer : writers) {
+                writer.get(1, TimeUnit.MINUTES);
+            }
+            running.set(false);
+            assertTrue(reader.get(1, TimeUnit.MINUTES) > 0);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    public void testSnapshotIsSharedUntilTheNextChange() throws Exception {
+        final ConcurrentShoeLaces shared = new ConcurrentShoeLaces(new ShoeLaces("day"));
+        shared.interrupt("a.b");
+
+        final ConcurrentShoeLaces.Snapshot first = shared.snapshot();
+        assertSame(shared.snapshot(), first);
+        assertEquals(first.current(), "a.b");
+
+        shared.interrupt("c");
+        final ConcurrentShoeLaces.Snapshot second = shared.snapshot();
+        assertNotSame(second, first);
+        assertEquals(first.current(), "a.b", "an older snapshot keeps its state");
+        assertEquals(second.current(), "c");
+        assertEquals(shared.current(), "c");
+
+        final StringBuilder out = new StringBuilder();
+        second.print(out, PrintOptions.all().prefix("a"));
+        assertTrue(out.toString().contains("a.b"), out.toString());
+        assertFalse(out.toString().matches("(?s).*\\n\\d+ +c .*"), out.toString());
+    }
+
+    public void testFailuresReachTheCaller() {
+        final ConcurrentShoeLaces shared = new ConcurrentShoeLaces(new ShoeLaces("day"));
+
+        assertThrows(IllegalStateException.class, shared::exit);
+        assertThrows(IllegalArgumentException.class, () -> shared.interrupt("not valid!"));
+        assertThrows(java.util.NoSuchElementException.class, () -> shared.kill("missing"));
+
+        shared.interrupt("a");
+        assertEquals(shared.atomically(db -> db.threads().size()).intValue(), 1);
+        assertEquals(shared.current(), "a");
+    }
+}
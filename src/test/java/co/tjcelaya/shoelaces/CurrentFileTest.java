@@ -0,0 +1,124 @@
+package co.tjcelaya.shoelaces;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+@Test
+public class CurrentFileTest {
+
+    private static List<String> sidecar(final File db) throws Exception {
+        return Files.readAllLines(CurrentFile.fileFor(db).toPath(), StandardCharsets.UTF_8);
+    }
+
+    public void testSavesKeepItCurrent() throws Exception {
+        final FileStore store = new FileStore(TempDatabase.create(".sldb"));
+        final ShoeLaces db = store.load();
+        db.interrupt("a");
+        db.interrupt("b");
+        App.save(store, db);
+
+        assertEquals(sidecar(store.getFile()), Arrays.asList(CurrentFile.stamp(store), "b"));
+        assertEquals(CurrentFile.read(store), "b");
+
+        db.pause();
+        App.save(store, db);
+        assertEquals(sidecar(store.getFile()).get(1), "");
+        assertNull(CurrentFile.read(store));
+    }
+
+    public void testTrustsItWhileTheStampMatches() throws Exception {
+        final FileStore store = new FileStore(TempDatabase.create(".sldb"));
+        final ShoeLaces db = store.load();
+        db.interrupt("a");
+        App.save(store, db);
+
+        Files.write(CurrentFile.fileFor(store.getFile()).toPath(),
+                Arrays.asList(CurrentFile.stamp(store), "cached"), StandardCharsets.UTF_8);
+        assertEquals(CurrentFile.read(store), "cached");
+    }
+
+    public void testRereadsAStaleOneWithoutWritingTheDatabase() throws Exception {
+        final FileStore store = new FileStore(TempDatabase.create(".sldb"));
+        final ShoeLaces db = store.load();
+        db.interrupt("a");
+        App.save(store, db);
+
+        // changed behind the sidecar's back, as a migration would
+        db.interrupt("c");
+        store.write(db);
+        final File file = store.getFile();
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        final long modified = file.lastModified();
+
+        assertEquals(CurrentFile.read(store), "c");
+        assertEquals(sidecar(file), Arrays.asList(CurrentFile.stamp(store), "c"));
+        assertEquals(Files.readAllBytes(file.toPath()), bytes);
+        assertEquals(file.lastModified(), modified);
+    }
+
+    public void testLeavesItAloneWhileTheDatabaseIsLocked() throws Exception {
+        final FileStore store = new FileStore(TempDatabase.create(".sldb"));
+        final ShoeLaces db = store.load();
+        db.interrupt("a");
+        store.write(db);
+
+        try (DatabaseLock ignored = DatabaseLock.acquire(store.getFile())) {
+            assertEquals(CurrentFile.read(store), "a");
+        }
+        assertFalse(CurrentFile.fileFor(store.getFile()).exists());
+
+        assertEquals(CurrentFile.read(store), "a");
+        assertTrue(CurrentFile.fileFor(store.getFile()).exists());
+    }
+
+    public void testUnsavedOnlyCountsWhileTheDatabaseIsLocked() throws Exception {
+        final FileStore store = new FileStore(TempDatabase.create(".sldb"));
+        final ShoeLaces db = store.load();
+        db.interrupt("a");
+        App.save(store, db);
+
+        try (DatabaseLock ignored = DatabaseLock.acquire(store.getFile())) {
+            CurrentFile.writeUnsaved(store, "b");
+            assertEquals(CurrentFile.read(store), "b", "a daemon holds what it has not saved yet");
+        }
+        assertEquals(CurrentFile.read(store), "a", "the daemon died without saving it");
+        assertEquals(sidecar(store.getFile()), Arrays.asList(CurrentFile.stamp(store), "a"));
+    }
+
+    public void testMissingDatabaseIsNotCreated() throws Exception {
+        final FileStore store = new FileStore(TempDatabase.create(".sldb"));
+        assertNull(CurrentFile.read(store));
+        assertFalse(store.getFile().exists());
+        assertFalse(CurrentFile.fileFor(store.getFile()).exists());
+    }
+
+    public void testEveryBackend() throws Exception {
+        for (ShoeLacesStore store : new ShoeLacesStore[]{
+                new FileStore(TempDatabase.create(BinaryCodec.EXTENSION)),
+                new Journal(TempDatabase.create(".sldb")),
+                new KeyValueStore(TempDatabase.create(KeyValueStore.EXTENSION))}) {
+            try (ShoeLacesStore closing = store) {
+                final ShoeLaces db = store.load();
+                db.interrupt("a");
+                db.interrupt("b");
+                store.write(db);
+                assertEquals(CurrentFile.read(store), "b", store.getFile().getName());
+
+                db.kill();
+                store.save(db); // no sidecar update, so it has gone stale
+                assertEquals(CurrentFile.read(store), "a", store.getFile().getName());
+
+                db.pause();
+                App.save(store, db);
+                assertNull(CurrentFile.read(store), store.getFile().getName());
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package co.tjcelaya.shoelaces;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+@Test
+public class DaemonTest {
+
+    private static String forward(final File file, final String... args) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        final Integer status = Daemon.forward(file, args, new PrintStream(out), new PrintStream(err));
+        assertNotNull(status, "daemon not reached");
+        assertEquals(status.intValue(), 0, err.toString(StandardCharsets.UTF_8.name()));
+        return out.toString(StandardCharsets.UTF_8.name());
+    }
+
+    public void testForwardFallsBackWithoutDaemon() throws Exception {
+        assertNull(Daemon.forward(TempDatabase.create(".sldb"), new String[]{"-p"}, System.out, System.err));
+    }
+
+    public void testServesCommandsAndFlushesOnClose() throws Exception {
+        final File file = TempDatabase.create(".sldb");
+        final Daemon daemon = new Daemon(new FileStore(file), 60_000L);
+        final Thread loop = new Thread(daemon::run);
+        loop.start();
+
+        try {
+            assertTrue(Daemon.portFileFor(file).exists());
+            forward(file, "-i", "a");
+            final String output = forward(file, "-i", "b");
+            assertTrue(output.contains("RUN: b < a"), output);
+            assertEquals(file.length(), 0L, "save should be batched");
+        } finally {
+            daemon.close();
+            loop.join(5000L);
+        }
+
+        assertFalse(Daemon.portFileFor(file).exists());
+        assertEquals(ShoeLaces.load(file).current(), "b");
+        assertNull(Daemon.forward(file, new String[]{"-p"}, System.out, System.err));
+    }
+
+    public void testOnlyChangesAreSaved() throws Exception {
+        final File file = TempDatabase.create(".sldb");
+        final Daemon daemon = new Daemon(new FileStore(file), 60_000L);
+        final Thread loop = new Thread(daemon::run);
+        loop.start();
+
+        try {
+            forward(file, "-p");
+            assertEquals(Daemon.forward(file, new String[]{"-k", "missing"}, System.out, System.err),
+                    Integer.valueOf(1));
+            daemon.flush();
+            assertEquals(file.length(), 0L, "nothing changed");
+
+            forward(file, "-i", "a");
+            daemon.flush();
+            assertTrue(file.length() > 0L);
+        } finally {
+            daemon.close();
+            loop.join(5000L);
+        }
+    }
+
+    public void testAFailedStartReleasesEverything() throws Exception {
+        final File file = TempDatabase.create(".sldb");
+        assertTrue(EventsFile.fileFor(file).mkdir()); // the events file cannot be opened
+
+        assertThrows(IOException.class, () -> new Daemon(new FileStore(file), 60_000L));
+        assertFalse(Daemon.portFileFor(file).exists());
+        DatabaseLock.acquire(file, 50L).close();
+    }
+
+    public void testAQuietJournalIsStillSyncedOnTime() throws Exception {
+        final File file = TempDatabase.create(".sldb");
+        final Journal journal = new Journal(file, Journal.DEFAULT_COMPACTION_THRESHOLD, Durability.group(64, 20L));
+        final Daemon daemon = new Daemon(journal, 20L);
+        final Thread loop = new Thread(daemon::run);
+        loop.start();
+
+        try {
+            forward(file, "-i", "a");
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while ((journal.getLog().length() == 0L || journal.unsynced() > 0) && System.nanoTime() < deadline) {
+                Thread.sleep(10L);
+            }
+            assertTrue(journal.getLog().length() > 0L, "appended by the flush");
+            assertEquals(journal.unsynced(), 0, "synced with no further change to save");
+        } finally {
+            daemon.close();
+            loop.join(5000L);
+        }
+    }
+
+    public void testCurrentFollowsEveryCommand() throws Exception {
+        final File file = TempDatabase.create(".sldb");
+        final FileStore store = new FileStore(file);
+        final Daemon daemon = new Daemon(store, 60_000L);
+        final Thread loop = new Thread(daemon::run);
+        loop.start();
+
+        try {
+            forward(file, "-i", "a");
+            assertEquals(CurrentFile.read(store), "a");
+            forward(file, "-i", "b");
+            assertEquals(CurrentFile.read(store), "b", "before any save");
+            assertEquals(file.length(), 0L);
+            forward(file, "-p");
+            assertNull(CurrentFile.read(store));
+        } finally {
+            daemon.close();
+            loop.join(5000L);
+        }
+        assertNull(CurrentFile.read(store));
+    }
+
+    public void testErrorsDoNotStopTheDaemon() throws Exception {
+        final File file = TempDatabase.create(".sldb");
+        final Daemon daemon = new Daemon(new FileStore(file), 60_000L);
+        final Thread loop = new Thread(daemon::run);
+        loop.start();
+
+        try {
+            final ByteArrayOutputStream err = new ByteArrayOutputStream();
+            final Integer status = Daemon.forward(file, new String[]{"-k", "missing"},
+                    new PrintStream(new ByteArrayOutputStream()), new PrintStream(err));
+            assertEquals(status, Integer.valueOf(1));
+            assertTrue(err.toString(StandardCharsets.UTF_8.name()).contains("missing"));
+
+            forward(file, "-i", "a");
+        } finally {
+            daemon.close();
+            loop.join(5000L);
+        }
+    }
+
+    public void testChangesAreAppendedToTheEventsFileAndPublished() throws Exception {
+        final File file = TempDatabase.create(".sldb");
+        final Daemon daemon = new Daemon(new FileStore(file), 60_000L);
+        final Thread loop = new Thread(daemon::run);
+        loop.start();
+
+        final List<String> published = new ArrayList<>();
+        final CountDownLatch completed = new CountDownLatch(1);
+        daemon.events().subscribe(new Flow.Subscriber<Transition>() {
+            @Override
+            public void onSubscribe(final Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(final Transition item) {
+                published.add(item.getKind() + " " + item.getThread() + " " + item.getRunning());
+            }
+
+            @Override
+            public void onError(final Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+                completed.countDown();
+            }
+        });
+
+        try {
+            forward(file, "-i", "a");
+            forward(file, "-i", "b");
+            forward(file, "-p");
+            forward(file, "-k", "a");
+            forward(file, "--undo", "2");
+        } finally {
+            daemon.close();
+            loop.join(5000L);
+        }
+
+        assertTrue(completed.await(5, TimeUnit.SECONDS));
+        assertEquals(published,
+                Arrays.asList("INTERRUPT a a", "INTERRUPT b b", "PAUSE null null", "KILL a null", "RESYNC null b"));
+
+        final List<String> lines = Files.readAllLines(EventsFile.fileFor(file).toPath(), StandardCharsets.UTF_8);
+        assertEquals(lines.size(), 5, lines.toString());
+        assertTrue(lines.get(4).endsWith("\"op\":\"resync\",\"thread\":null,\"current\":\"b\"}"), lines.get(4));
+        assertTrue(lines.get(0).matches("\\{\"at\":\\d+,\"op\":\"interrupt\",\"thread\":\"a\",\"current\":\"a\"}"),
+                lines.get(0));
+        assertTrue(lines.get(2).endsWith("\"op\":\"pause\",\"thread\":null,\"current\":null}"), lines.get(2));
+    }
+}
@@ -0,0 +1,72 @@
+package co.tjcelaya.shoelaces;
+
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.io.output.NullOutputStream;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.testng.Assert.*;
+
+@Test
+public class DatabaseLockTest {
+
+    public void testLockIsExclusiveUntilClosed() throws Exception {
+        final File file = TempDatabase.create(".sldb");
+
+        try (DatabaseLock ignored = DatabaseLock.acquire(file)) {
+            assertThrows(IOException.class, () -> DatabaseLock.acquire(file, 50L));
+        }
+
+        final DatabaseLock again = DatabaseLock.acquire(file, 50L);
+        again.close();
+        again.close();
+        DatabaseLock.acquire(file, 50L).close();
+    }
+
+    public void testConcurrentInvocationsLoseNoUpdates() throws Exception {
+        assertNoLostUpdates(TempDatabase.create(".sldb"), false);
+    }
+
+    public void testConcurrentJournaledInvocationsLoseNoUpdates() throws Exception {
+        assertNoLostUpdates(TempDatabase.create(".sldb"), true);
+    }
+
+    private static void assertNoLostUpdates(final File file, final boolean journaled) throws Exception {
+        final int writers = 4;
+        final int perWriter = 10;
+        final PrintStream sink = new PrintStream(NullOutputStream.NULL_OUTPUT_STREAM);
+        final ExecutorService pool = Executors.newFixedThreadPool(writers);
+
+        try {
+            final List<Future<?>> results = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                final int writer = w;
+                results.add(pool.submit(() -> {
+                    for (int i = 0; i < perWriter; i++) {
+                        final String[] args = {"-s", "w" + writer + ".t" + i};
+                        App.run(journaled ? new Journal(file) : new FileStore(file),
+                                new DefaultParser().parse(App.options(), args), sink, sink);
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        final ShoeLaces db = journaled ? new Journal(file).load() : ShoeLaces.load(file);
+        assertEquals(db.threads().size(), writers * perWriter);
+    }
+}
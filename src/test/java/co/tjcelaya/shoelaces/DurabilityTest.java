@@ -0,0 +1,38 @@
+package co.tjcelaya.shoelaces;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+@Test
+public class DurabilityTest {
+
+    public void testParse() throws Exception {
+        assertSame(Durability.parse("none"), Durability.NONE);
+        assertSame(Durability.parse("always"), Durability.ALWAYS);
+        assertSame(Durability.parse("group"), Durability.GROUP);
+        assertEquals(Durability.parse("group:8").toString(), "group:8:" + Durability.DEFAULT_GROUP_DELAY_MILLIS);
+        assertEquals(Durability.parse("group:8:5").toString(), "group:8:5");
+
+        for (String bad : new String[]{"", "sometimes", "none:1", "group:x", "group:0", "group:1:2:3"}) {
+            assertThrows(IllegalArgumentException.class, () -> Durability.parse(bad));
+        }
+    }
+
+    public void testGroupIsDueByCountOrAge() throws Exception {
+        final Durability group = Durability.group(3, 60_000L);
+        final long now = System.nanoTime();
+
+        assertFalse(group.isDue(0, now));
+        assertFalse(group.isDue(2, now));
+        assertTrue(group.isDue(3, now));
+        assertTrue(group.isDue(1, now - 61_000_000_000L));
+    }
+
+    public void testLevels() throws Exception {
+        assertFalse(Durability.NONE.isDue(100, 0L));
+        assertFalse(Durability.NONE.syncsSnapshots());
+        assertTrue(Durability.ALWAYS.isDue(1, System.nanoTime()));
+        assertTrue(Durability.GROUP.syncsSnapshots());
+    }
+}
@@ -0,0 +1,159 @@
+package co.tjcelaya.shoelaces;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.testng.Assert.*;
+
+@Test
+public class FederationTest {
+
+    private static void day(final File home, final String file, final String... commands) throws Exception {
+        final ShoeLaces db = new ShoeLaces(file);
+        for (String command : commands) {
+            final String thread = command.substring(2);
+            switch (command.charAt(0)) {
+                case 'i':
+                    db.interrupt(thread);
+                    break;
+                case 'k':
+                    db.kill(thread);
+                    break;
+                case 'e':
+                    db.exit(thread);
+                    break;
+            }
+        }
+        db.save(new File(home, file));
+    }
+
+    public void testHistoryAcrossDays() throws Exception {
+        final File home = TempDatabase.directory();
+        try {
+            day(home, "2017-06-01.sldb", "i proj.x", "i proj.x", "k proj.x");
+            day(home, "2017-06-02.slb", "i proj.x", "i other", "e other");
+            day(home, "2017-06-03.sldb", "i other");
+
+            final Federation federation = Federation.open(home);
+            assertEquals(federation.days(), Arrays.asList("2017-06-01", "2017-06-02", "2017-06-03"));
+            assertEquals(federation.history("proj.x").keySet(), Arrays.asList("2017-06-01", "2017-06-02"));
+            assertEquals(federation.history("proj.x").get("2017-06-01").toString(), "IK");
+            assertEquals(federation.lastDay("proj.x", 'K'), "2017-06-01");
+            assertEquals(federation.lastDay("other", 'E'), "2017-06-02");
+            assertNull(federation.lastDay("other", 'K'));
+            assertNull(federation.lastDay("nope", 'I'));
+            assertTrue(new File(home, Federation.INDEX_FILE).exists());
+        } finally {
+            FileUtils.deleteDirectory(home);
+        }
+    }
+
+    public void testIndexIsUpdatedIncrementally() throws Exception {
+        final File home = TempDatabase.directory();
+        try {
+            day(home, "2017-06-01.sldb", "i a");
+            day(home, "2017-06-02.sldb", "i b");
+            Federation.open(home);
+
+            // an index entry that no longer matches its file would be rescanned, so damage one that still matches
+            final File old = new File(home, "2017-06-01.sldb");
+            final long modified = old.lastModified();
+            final long length = old.length();
+            FileUtils.writeStringToFile(old,
+                    StringUtils.rightPad("{\"name\":\"x\",\"threads\":{\"z\":\"\"}}", (int) length), "UTF-8");
+            assertEquals(old.length(), length);
+            old.setLastModified(modified);
+
+            day(home, "2017-06-02.sldb", "i b", "k b");
+            day(home, "2017-06-03.sldb", "i c");
+
+            final Federation federation = Federation.open(home);
+            assertEquals(federation.history("a").keySet(), Arrays.asList("2017-06-01"), "unchanged day not rescanned");
+            assertEquals(federation.lastDay("b", 'K'), "2017-06-02");
+            assertEquals(federation.history("c").size(), 1);
+
+            assertTrue(new File(home, "2017-06-03.sldb").delete());
+            assertTrue(Federation.open(home).history("c").isEmpty());
+        } finally {
+            FileUtils.deleteDirectory(home);
+        }
+    }
+
+    public void testRemovedDaysTakeTheirStringsWithThem() throws Exception {
+        final File home = TempDatabase.directory();
+        final File fresh = TempDatabase.directory();
+        day(home, "2017-06-01.sldb", "i proj.a-thread-only-this-day-had", "k proj.a-thread-only-this-day-had");
+        day(home, "2017-06-02.sldb", "i b");
+        Federation.open(home);
+        day(home, "2017-06-02.sldb", "i b", "e b", "i c"); // rescanned, leaving b's old status behind
+        assertTrue(new File(home, "2017-06-01.sldb").delete());
+
+        assertEquals(Federation.open(home).days(), Collections.singleton("2017-06-02"));
+        day(fresh, "2017-06-02.sldb", "i b", "e b", "i c");
+        Federation.open(fresh);
+        assertEquals(new File(home, Federation.INDEX_FILE).length(), new File(fresh, Federation.INDEX_FILE).length());
+    }
+
+    public void testJournaledDayIsReplayed() throws Exception {
+        final File home = TempDatabase.directory();
+        try {
+            final File file = new File(home, "2017-06-01.sldb");
+            assertTrue(file.createNewFile()); // as App.open does
+            try (Journal journal = new Journal(file)) {
+                final ShoeLaces db = journal.load();
+                db.interrupt("a");
+                db.kill("a");
+                journal.save(db);
+            }
+
+            assertEquals(Federation.open(home).lastDay("a", 'K'), "2017-06-01");
+        } finally {
+            FileUtils.deleteDirectory(home);
+        }
+    }
+
+    public void testConcurrentOpensEachWriteTheirOwnIndex() throws Exception {
+        final File home = TempDatabase.directory();
+        final ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            for (int d = 1; d <= 9; d++) {
+                day(home, "2017-06-0" + d + ".sldb", "i proj.x", "e proj.x");
+            }
+
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Future<Integer>> opened = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                opened.add(pool.submit(() -> {
+                    start.await();
+                    int days = 0;
+                    for (int round = 0; round < 50; round++) {
+                        new File(home, Federation.INDEX_FILE).delete(); // so that every open writes it
+                        days = Federation.open(home).days().size();
+                    }
+                    return days;
+                }));
+            }
+            start.countDown();
+            for (Future<Integer> days : opened) {
+                assertEquals(days.get().intValue(), 9);
+            }
+
+            assertEquals(Federation.open(home).days().size(), 9);
+            assertEquals(home.list((dir, name) -> name.endsWith(AtomicFile.TEMP_EXTENSION)).length, 0);
+        } finally {
+            pool.shutdownNow();
+            FileUtils.deleteDirectory(home);
+        }
+    }
+}
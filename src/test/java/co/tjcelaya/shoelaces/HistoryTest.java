@@ -0,0 +1,186 @@
+package co.tjcelaya.shoelaces;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.cli.DefaultParser;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.testng.Assert.*;
+
+@Test
+public class HistoryTest {
+
+    private static void change(final History history, final ShoeLaces db, final Consumer<ShoeLaces> command)
+            throws Exception {
+        history.begin(db);
+        command.accept(db);
+        history.commit(db);
+    }
+
+    /**
+     * @return what undo and redo must restore: the table and the attention stack
+     */
+    private static String state(final ShoeLaces db) {
+        return db.print() + db.attention().toList();
+    }
+
+    public void testEveryVersionCanBeRevisited() throws Exception {
+        final History history = new History(TempDatabase.create(".sldb"));
+        final ShoeLaces db = new ShoeLaces("day");
+        final List<String> versions = new ArrayList<>();
+        versions.add(state(db));
+
+        final List<Consumer<ShoeLaces>> commands = new ArrayList<>();
+        commands.add(d -> d.interrupt("proj.a"));
+        commands.add(d -> d.interrupt("proj.b"));
+        commands.add(d -> d.spawn("other"));
+        commands.add(ShoeLaces::pause);
+        commands.add(d -> d.interrupt("proj.a"));
+        commands.add(ShoeLaces::kill);
+        commands.add(d -> d.killTree("proj"));
+        commands.add(d -> d.interrupt("other"));
+        for (Consumer<ShoeLaces> command : commands) {
+            change(history, db, command);
+            versions.add(state(db));
+        }
+
+        for (int v = versions.size() - 2; v >= 0; v--) {
+            assertEquals(history.undo(db, 1), 1);
+            assertEquals(state(db), versions.get(v), "undone to version " + v);
+        }
+        assertEquals(history.undo(db, 1), 0, "nothing left to undo");
+        assertTrue(db.threads().isEmpty());
+
+        assertEquals(history.redo(db, 3), 3);
+        assertEquals(state(db), versions.get(3));
+        assertEquals(db.tid("other"), 2, "redone threads get their tids back");
+        assertEquals(history.redo(db, 100), versions.size() - 4);
+        assertEquals(state(db), versions.get(versions.size() - 1));
+    }
+
+    public void testTheFileStopsGrowing() throws Exception {
+        final File file = TempDatabase.create(".sldb");
+        final History history = new History(file, 4);
+        final ShoeLaces db = new ShoeLaces("day");
+        final List<String> versions = new ArrayList<>();
+
+        long longest = 0L;
+        for (int i = 0; i < 40; i++) {
+            final String thread = String.format("t%02d", i); // every step the same size
+            change(history, db, d -> d.interrupt(thread));
+            versions.add(state(db));
+            if (i < 8) {
+                longest = Math.max(longest, History.fileFor(file).length());
+            } else {
+                assertTrue(History.fileFor(file).length() <= longest, "grew at change " + i);
+            }
+        }
+
+        final int undone = history.undo(db, 100);
+        assertTrue(undone >= 2 && undone <= 4, "undid " + undone);
+        assertEquals(state(db), versions.get(versions.size() - 1 - undone));
+    }
+
+    public void testProgressSurvivesOnlyOnceSaved() throws Exception {
+        final File file = TempDatabase.create(".sldb");
+        final ShoeLaces db = new ShoeLaces("day");
+        final History history = new History(file);
+        change(history, db, d -> d.interrupt("a"));
+        change(history, db, d -> d.interrupt("b"));
+
+        assertEquals(history.undo(db, 1), 1);
+        assertEquals(history.undo(db, 1), 1, "unsaved undos carry on from each other");
+        assertTrue(db.threads().isEmpty());
+        history.save();
+
+        final History reopened = new History(file);
+        assertEquals(reopened.undo(db, 1), 0);
+        assertEquals(reopened.redo(db, 1), 1);
+        assertEquals(db.current(), "a");
+    }
+
+    public void testANewChangeDropsWhatCouldBeRedone() throws Exception {
+        final ShoeLaces db = new ShoeLaces("day");
+        final History history = new History(TempDatabase.create(".sldb"));
+        change(history, db, d -> d.interrupt("a"));
+        change(history, db, d -> d.interrupt("b"));
+        history.undo(db, 1);
+        history.save();
+
+        change(history, db, d -> d.interrupt("c"));
+        assertEquals(history.redo(db, 1), 0);
+        assertEquals(history.undo(db, 5), 2);
+        assertTrue(db.threads().isEmpty());
+    }
+
+    public void testRefusesWhenTheDatabaseMovedOn() throws Exception {
+        final ShoeLaces db = new ShoeLaces("day");
+        final History history = new History(TempDatabase.create(".sldb"));
+        change(history, db, d -> d.interrupt("a"));
+        db.interrupt("b"); // not recorded, as after a crash
+        final String moved = state(db);
+
+        assertThrows(IllegalStateException.class, () -> history.undo(db, 1));
+        assertEquals(state(db), moved);
+    }
+
+    public void testAStepThatNoLongerFitsTheStackIsPutBack() throws Exception {
+        final ShoeLaces db = new ShoeLaces("day");
+        db.interrupt("a");
+        db.interrupt("b");
+        db.interrupt("c");
+        final History history = new History(TempDatabase.create(".sldb"));
+        change(history, db, d -> d.interrupt("b")); // b leaves its place above a and is pushed on top
+
+        db.attention().remove("a"); // behind the history's back, with every status unchanged
+        db.attention().addBottom("x");
+        final String moved = state(db);
+
+        assertThrows(IllegalStateException.class, () -> history.undo(db, 1));
+        assertEquals(state(db), moved, "b was popped, then pushed back when a was not there to put it above");
+    }
+
+    public void testStepsCostWhatTheyTouch() throws Exception {
+        final File file = TempDatabase.create(".sldb");
+        final ShoeLaces db = new ShoeLaces("day");
+        for (int i = 0; i < 10_000; i++) {
+            db.interrupt("proj.task-" + i);
+        }
+
+        final History history = new History(file);
+        change(history, db, d -> d.interrupt("proj.task-5000"));
+        assertTrue(History.fileFor(file).length() < 100L, History.fileFor(file).length() + " bytes");
+
+        history.undo(db, 1);
+        assertEquals(db.current(), "proj.task-9999");
+        assertEquals(db.attention().toList().get(5000), "proj.task-4999");
+    }
+
+    public void testUndoAndRedoFromTheCommandLine() throws Exception {
+        final File file = TempDatabase.create(".sldb");
+        final PrintStream sink = new PrintStream(NullOutputStream.NULL_OUTPUT_STREAM);
+        for (String[] args : new String[][]{{"-i", "a"}, {"-i", "b"}, {"-k"}, {"--undo", "2"}}) {
+            App.run(new Journal(file), new DefaultParser().parse(App.options(), args), sink, sink);
+        }
+
+        final ShoeLaces undone = new Journal(file).read();
+        assertEquals(undone.current(), "a");
+        assertFalse(undone.threads().contains("b"));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        App.run(new Journal(file), new DefaultParser().parse(App.options(), new String[]{"--redo"}),
+                new PrintStream(out, true, "UTF-8"), sink);
+        assertTrue(out.toString(StandardCharsets.UTF_8.name()).contains("redid 1 of 1 changes, running: b"));
+        assertEquals(new Journal(file).read().current(), "b");
+
+        final Timeline timeline = Timeline.read(file);
+        assertEquals(timeline.running(timeline.size() - 1), 1, "b runs from the redo on");
+    }
+}
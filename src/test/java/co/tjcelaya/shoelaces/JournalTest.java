@@ -0,0 +1,227 @@
+package co.tjcelaya.shoelaces;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+@Test
+public class JournalTest {
+
+    private static File tempSnapshot() throws Exception {
+        return TempDatabase.track(File.createTempFile(UUID.randomUUID().toString(), ".sldb"));
+    }
+
+    public void testTransitionRecordsRoundTrip() throws Exception {
+        for (Transition t : new Transition[]{
+                new Transition(Transition.Kind.SPAWN, "proj.task"),
+                new Transition(Transition.Kind.EXIT, null),
+                new Transition(Transition.Kind.KILL, ""),
+                new Transition(Transition.Kind.PAUSE, null),
+        }) {
+            assertEquals(Transition.fromRecord(t.toRecord()), t);
+        }
+
+        assertThrows(() -> Transition.fromRecord(""));
+        assertThrows(() -> Transition.fromRecord("Xfoo"));
+        assertThrows(() -> Transition.fromRecord("Z foo"));
+    }
+
+    public void testSaveAppendsOnlyChanges() throws Exception {
+        final File snapshot = tempSnapshot();
+        final Journal journal = new Journal(snapshot);
+        final ShoeLaces db = journal.load();
+
+        db.interrupt("a");
+        db.interrupt("b");
+        journal.save(db);
+
+        assertEquals(snapshot.length(), 0L, "snapshot should not be rewritten");
+        assertEquals(FileUtils.readLines(journal.getLog(), StandardCharsets.UTF_8).size(), 2);
+
+        db.pause();
+        journal.save(db);
+        journal.save(db);
+
+        final List<String> records = FileUtils.readLines(journal.getLog(), StandardCharsets.UTF_8);
+        assertEquals(records.size(), 3);
+        assertEquals(records.get(2), "P");
+    }
+
+    public void testReplayRebuildsState() throws Exception {
+        final File snapshot = tempSnapshot();
+        final Journal journal = new Journal(snapshot);
+        final ShoeLaces db = journal.load();
+
+        db.interrupt("a");
+        db.spawn("b");
+        db.interrupt("c");
+        db.kill("b");
+        db.exit();
+        db.interrupt("d");
+        db.pause();
+        journal.save(db);
+
+        final ShoeLaces replayed = new Journal(snapshot).load();
+        assertEquals(replayed.print(), db.print());
+        assertTrue(replayed.isPaused());
+
+        replayed.resume();
+        assertEquals(replayed.current(), "d");
+    }
+
+    public void testCompactionWritesSnapshotAndTruncatesLog() throws Exception {
+        final File snapshot = tempSnapshot();
+        final Journal journal = new Journal(snapshot, 3);
+        final ShoeLaces db = journal.load();
+
+        db.interrupt("a");
+        db.interrupt("b");
+        journal.save(db);
+        assertTrue(journal.getLog().exists());
+
+        db.interrupt("c");
+        db.exit();
+        journal.save(db);
+
+        assertFalse(journal.getLog().exists());
+        assertTrue(snapshot.length() > 0L);
+
+        db.interrupt("e");
+        journal.save(db);
+
+        final ShoeLaces replayed = new Journal(snapshot, 3).load();
+        assertEquals(replayed.print(), db.print());
+    }
+
+    public void testCorruptJournalIsReported() throws Exception {
+        final File snapshot = tempSnapshot();
+        final Journal journal = new Journal(snapshot);
+        FileUtils.writeStringToFile(journal.getLog(), "I a\nbogus\n", StandardCharsets.UTF_8);
+
+        assertThrows(java.io.IOException.class, journal::load);
+    }
+
+    public void testTornTailIsDropped() throws Exception {
+        final File snapshot = tempSnapshot();
+        final Journal journal = new Journal(snapshot);
+        FileUtils.writeStringToFile(journal.getLog(), "I a\nI b\nI c", StandardCharsets.UTF_8);
+
+        final ShoeLaces db = journal.load();
+        assertEquals(db.current(), "b");
+        assertEquals(FileUtils.readFileToString(journal.getLog(), StandardCharsets.UTF_8), "I a\nI b\n");
+
+        db.interrupt("d");
+        journal.save(db);
+        journal.close();
+        assertEquals(new Journal(snapshot).load().current(), "d");
+    }
+
+    public void testUnwrittenTailIsDropped() throws Exception {
+        final File snapshot = tempSnapshot();
+        final Journal journal = new Journal(snapshot);
+        FileUtils.writeByteArrayToFile(journal.getLog(), new byte[]{'I', ' ', 'a', '\n', 0, 0, 0, '\n', 0});
+
+        assertEquals(journal.load().current(), "a");
+        assertEquals(journal.getLog().length(), 4L);
+    }
+
+    public void testCompleteCheckpointReplacesSnapshot() throws Exception {
+        final File snapshot = tempSnapshot();
+        final File checkpoint = new File(snapshot.getPath() + Journal.CHECKPOINT_EXTENSION);
+        final ShoeLaces compacted = new ShoeLaces(snapshot.getName());
+        compacted.interrupt("a");
+        compacted.save(checkpoint);
+
+        // crashed after removing the log but before the rename
+        assertEquals(new Journal(snapshot).load().current(), "a");
+        assertFalse(checkpoint.exists());
+        assertEquals(ShoeLaces.load(snapshot).current(), "a");
+    }
+
+    public void testIncompleteCheckpointIsDiscarded() throws Exception {
+        final File snapshot = tempSnapshot();
+        final File checkpoint = new File(snapshot.getPath() + Journal.CHECKPOINT_EXTENSION);
+        final Journal journal = new Journal(snapshot);
+        FileUtils.writeStringToFile(journal.getLog(), "I a\nI b\n", StandardCharsets.UTF_8);
+        FileUtils.writeStringToFile(checkpoint, "{\"name\":", StandardCharsets.UTF_8);
+
+        assertEquals(journal.load().current(), "b");
+        assertFalse(checkpoint.exists());
+    }
+
+    public void testResyncCompactsInsteadOfLogging() throws Exception {
+        final File snapshot = tempSnapshot();
+        final Journal journal = new Journal(snapshot);
+        final ShoeLaces db = journal.load();
+        final History history = new History(snapshot);
+
+        history.begin(db);
+        db.interrupt("a");
+        history.commit(db);
+        journal.save(db);
+        history.begin(db);
+        db.interrupt("b");
+        history.commit(db);
+        history.undo(db, 1);
+        journal.save(db);
+
+        assertFalse(journal.getLog().exists(), "no record describes an undo");
+        assertEquals(new Journal(snapshot).load().print(), db.print());
+        assertThrows(IllegalStateException.class,
+                () -> new Transition(Transition.Kind.RESYNC, null).applyTo(new ShoeLaces("x")));
+    }
+
+    public void testGroupsSayWhenTheyAreDue() throws Exception {
+        final File snapshot = tempSnapshot();
+        try (Journal journal = new Journal(snapshot, 100, Durability.group(64, 60_000L))) {
+            final ShoeLaces db = journal.load();
+            assertEquals(journal.nanosUntilSync(), -1L, "nothing waiting");
+
+            db.interrupt("a");
+            journal.save(db);
+            assertEquals(journal.unsynced(), 1);
+            assertTrue(journal.nanosUntilSync() > TimeUnit.SECONDS.toNanos(50));
+
+            journal.syncIfDue();
+            assertEquals(journal.unsynced(), 1, "not yet due");
+        }
+
+        try (Journal journal = new Journal(tempSnapshot(), 100, Durability.group(64, 0L))) {
+            final ShoeLaces db = journal.load();
+            db.interrupt("a");
+            db.interrupt("b");
+            journal.save(db);
+            assertEquals(journal.unsynced(), 0, "due as soon as it was written");
+        }
+
+        try (Journal journal = new Journal(tempSnapshot(), 100, Durability.NONE)) {
+            final ShoeLaces db = journal.load();
+            db.interrupt("a");
+            journal.save(db);
+            assertEquals(journal.nanosUntilSync(), -1L, "never synced");
+        }
+    }
+
+    public void testEveryDurabilityPersists() throws Exception {
+        for (Durability durability : new Durability[]{Durability.NONE, Durability.ALWAYS, Durability.group(2, 0L)}) {
+            final File snapshot = tempSnapshot();
+            try (Journal journal = new Journal(snapshot, 4, durability)) {
+                final ShoeLaces db = journal.load();
+                for (String t : new String[]{"a", "b", "c", "d", "e"}) {
+                    db.interrupt(t);
+                    journal.save(db);
+                }
+            }
+
+            assertFalse(new File(snapshot.getPath() + Journal.CHECKPOINT_EXTENSION).exists());
+            assertEquals(new Journal(snapshot).load().current(), "e", durability.toString());
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package co.tjcelaya.shoelaces;
+
+import org.apache.commons.lang3.StringUtils;
+import org.testng.annotations.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import static co.tjcelaya.shoelaces.KeyValueStore.PAGE_SIZE;
+import static org.testng.Assert.*;
+
+@Test
+public class KeyValueStoreTest {
+
+    private static File tempStore() throws Exception {
+        return TempDatabase.track(File.createTempFile(UUID.randomUUID().toString(), KeyValueStore.EXTENSION));
+    }
+
+    private static ShoeLaces busy(final ShoeLaces db, final int threads) {
+        for (int i = 0; i < threads; i++) {
+            db.interrupt("proj.task" + i);
+            if (i % 3 == 0) {
+                db.exit();
+            }
+        }
+        db.kill("proj.task1");
+        db.pause();
+        return db;
+    }
+
+    public void testSaveAndLoadRoundTrip() throws Exception {
+        final File file = tempStore();
+        final KeyValueStore store = new KeyValueStore(file);
+        final ShoeLaces db = busy(store.load(), 200);
+        store.save(db);
+
+        final ShoeLaces loaded = new KeyValueStore(file).load();
+        assertEquals(loaded.getName(), file.getName());
+        assertEquals(loaded.print(), db.print());
+        assertTrue(loaded.isPaused());
+
+        loaded.resume();
+        db.resume();
+        assertEquals(loaded.current(), db.current());
+    }
+
+    public void testLongNamesAndStatusesRoundTrip() throws Exception {
+        final File file = tempStore();
+        final KeyValueStore store = new KeyValueStore(file);
+        final ShoeLaces db = store.load();
+
+        final String huge = "proj." + StringUtils.repeat('x', PAGE_SIZE * 2);
+        db.interrupt(huge);
+        db.interrupt("short");
+        // busier than any real thread, so the counted status no longer fits in its slot
+        final String counted = "I1000000000E1000000000K100000:" + StringUtils.repeat('I', 32);
+        db.threads().put(db.tid(huge), ThreadStatus.parse(counted));
+        store.save(db);
+
+        final ShoeLaces loaded = new KeyValueStore(file).load();
+        assertEquals(loaded.print(), db.print());
+        assertTrue(loaded.threads().status(huge).toString().length() > KeyValueStore.INLINE_STATUS_BYTES);
+    }
+
+    public void testSaveRewritesOnlyTouchedPages() throws Exception {
+        final File file = tempStore();
+        final KeyValueStore store = new KeyValueStore(file);
+        final ShoeLaces db = busy(store.load(), 2000);
+        store.save(db);
+
+        final byte[] before = Files.readAllBytes(file.toPath());
+        db.exit("proj.task1500"); // already exited, so the attention stack stays as it is
+        store.save(db);
+        final byte[] after = Files.readAllBytes(file.toPath());
+
+        assertEquals(after.length, before.length, "a status change should not grow the file");
+        // at most the header and one slot page
+        assertTrue(changedPages(before, after) <= 2, changedPages(before, after) + " pages changed");
+        assertEquals(new KeyValueStore(file).load().print(), db.print());
+    }
+
+    public void testEverySaveMatchesReload() throws Exception {
+        final File file = tempStore();
+        final KeyValueStore store = new KeyValueStore(file);
+        final ShoeLaces db = store.load();
+        final Random random = new Random(16);
+
+        for (int step = 0; step < 500; step++) {
+            final String thread = "proj.task" + random.nextInt(80);
+            switch (random.nextInt(6)) {
+                case 0:
+                case 1:
+                    db.interrupt(thread);
+                    break;
+                case 2:
+                    if (db.threads().contains(thread)) {
+                        db.exit(thread);
+                    }
+                    break;
+                case 3:
+                    if (db.isRunning()) {
+                        db.kill();
+                    }
+                    break;
+                case 4:
+                    if (db.isRunning()) {
+                        db.pause();
+                    }
+                    break;
+                default:
+                    if (!db.attention().isEmpty()) {
+                        db.resume();
+                    }
+            }
+
+            if (step % 7 == 0) {
+                store.save(db);
+                final ShoeLaces loaded = new KeyValueStore(file).load();
+                assertEquals(loaded.print(), db.print(), "after step " + step);
+                assertEquals(loaded.attention().toList(), db.attention().toList(), "after step " + step);
+            }
+        }
+    }
+
+    public void testUnchangedSaveWritesNothing() throws Exception {
+        final File file = tempStore();
+        final KeyValueStore store = new KeyValueStore(file);
+        final ShoeLaces db = busy(store.load(), 10);
+        store.save(db);
+
+        final long modified = file.lastModified();
+        final byte[] before = Files.readAllBytes(file.toPath());
+        Thread.sleep(10L);
+        store.save(db);
+
+        assertEquals(Files.readAllBytes(file.toPath()), before);
+        assertEquals(file.lastModified(), modified);
+    }
+
+    public void testCompleteLogIsReplayed() throws Exception {
+        final File file = tempStore();
+        final byte[][] states = twoStates(file);
+        writeLog(file, states[0], states[1], false);
+        Files.write(file.toPath(), states[0]);
+
+        final ShoeLaces read = new KeyValueStore(file).read();
+        assertEquals(read.current(), "proj.task3");
+        assertEquals(Files.readAllBytes(file.toPath()), states[0], "reading should not repair");
+
+        final ShoeLaces loaded = new KeyValueStore(file).load();
+        assertEquals(loaded.current(), "proj.task3");
+        assertEquals(Files.readAllBytes(file.toPath()), states[1]);
+        assertFalse(new File(file.getPath() + KeyValueStore.WAL_EXTENSION).exists());
+    }
+
+    public void testIncompleteLogIsDiscarded() throws Exception {
+        final File file = tempStore();
+        final byte[][] states = twoStates(file);
+        writeLog(file, states[0], states[1], true);
+        Files.write(file.toPath(), states[0]);
+
+        final ShoeLaces loaded = new KeyValueStore(file).load();
+        assertTrue(loaded.isPaused());
+        assertEquals(Files.readAllBytes(file.toPath()), states[0]);
+        assertFalse(new File(file.getPath() + KeyValueStore.WAL_EXTENSION).exists());
+    }
+
+    public void testLongStatusesAreRewrittenInPlace() throws Exception {
+        final File file = tempStore();
+        final KeyValueStore store = new KeyValueStore(file);
+        final ShoeLaces db = store.load();
+        final int tid = db.threads().register("busy");
+        db.threads().put(tid, ThreadStatus.parse("I1000000000E1000000000K0:" + StringUtils.repeat("IE", 16)));
+        store.save(db);
+        assertTrue(db.threads().status(tid).toString().length() > KeyValueStore.INLINE_STATUS_BYTES);
+
+        final long length = file.length();
+        for (int i = 0; i < 100; i++) {
+            db.interrupt("busy");
+            db.exit("busy");
+            store.save(db);
+        }
+        assertEquals(file.length(), length);
+        assertEquals(new KeyValueStore(file).load().print(), db.print());
+    }
+
+    public void testWriteReplacesStore() throws Exception {
+        final File file = tempStore();
+        final KeyValueStore store = new KeyValueStore(file);
+        store.save(busy(store.load(), 100));
+
+        final ShoeLaces other = new ShoeLaces("other");
+        other.interrupt("elsewhere");
+        store.write(other);
+
+        final ShoeLaces loaded = new KeyValueStore(file).load();
+        assertEquals(loaded.print(), other.print());
+        assertEquals(file.length(), PAGE_SIZE * 5L, "just header, heap, slot, directory and attention pages");
+    }
+
+    public void testMigrateBetweenBackends() throws Exception {
+        final File json = File.createTempFile(UUID.randomUUID().toString(), ".sldb");
+        TempDatabase.track(json);
+        final ShoeLaces db = busy(new ShoeLaces("day"), 50);
+        db.save(json);
+
+        final File kv = tempStore();
+        assertEquals(App.migrate(new FileStore(json), new KeyValueStore(kv)), 50);
+        assertEquals(new KeyValueStore(kv).load().print(), db.print());
+
+        final File back = File.createTempFile(UUID.randomUUID().toString(), BinaryCodec.EXTENSION);
+        TempDatabase.track(back);
+        App.migrate(new KeyValueStore(kv), new FileStore(back));
+        assertEquals(ShoeLaces.load(back).print(), db.print());
+    }
+
+    public void testMigrateOntoItselfIsRefused() throws Exception {
+        final File kv = tempStore();
+        new KeyValueStore(kv).write(busy(new ShoeLaces("day"), 5));
+
+        assertThrows(IllegalArgumentException.class, () -> App.migrate(new KeyValueStore(kv),
+                new KeyValueStore(new File(kv.getParentFile(), "." + File.separator + kv.getName()))));
+    }
+
+    public void testOppositeMigrationsTakeTheLocksInOneOrder() throws Exception {
+        final File a = tempStore();
+        final File b = tempStore();
+        new KeyValueStore(a).write(busy(new ShoeLaces("day"), 5));
+        new KeyValueStore(b).write(busy(new ShoeLaces("day"), 5));
+
+        final ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            final Future<?> there = pool.submit(() -> {
+                for (int i = 0; i < 20; i++) {
+                    App.migrate(new KeyValueStore(a), new KeyValueStore(b));
+                }
+                return null;
+            });
+            final Future<?> back = pool.submit(() -> {
+                for (int i = 0; i < 20; i++) {
+                    App.migrate(new KeyValueStore(b), new KeyValueStore(a));
+                }
+                return null;
+            });
+            there.get(5, TimeUnit.SECONDS);
+            back.get(5, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    public void testNotAStore() throws Exception {
+        final File file = tempStore();
+        Files.write(file.toPath(), new byte[PAGE_SIZE]);
+
+        assertThrows(IOException.class, () -> new KeyValueStore(file).load());
+    }
+
+    /**
+     * Save a paused database, then the same database running proj.task3.
+     */
+    private static byte[][] twoStates(final File file) throws Exception {
+        final KeyValueStore store = new KeyValueStore(file);
+        final ShoeLaces db = busy(store.load(), 100);
+        store.save(db);
+        final byte[] paused = Files.readAllBytes(file.toPath());
+
+        db.resume();
+        db.interrupt("proj.task3");
+        store.save(db);
+        return new byte[][]{paused, Files.readAllBytes(file.toPath())};
+    }
+
+    /**
+     * Write the log a save from {@code from} to {@code to} would have left behind, optionally cut short.
+     */
+    private static void writeLog(final File file, final byte[] from, final byte[] to, final boolean torn)
+            throws IOException {
+        assertEquals(to.length, from.length);
+        final File wal = new File(file.getPath() + KeyValueStore.WAL_EXTENSION);
+        final CRC32 crc = new CRC32();
+        int count = 0;
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(wal))) {
+            for (int page = 0; page < to.length / PAGE_SIZE; page++) {
+                final byte[] bytes = Arrays.copyOfRange(to, page * PAGE_SIZE, (page + 1) * PAGE_SIZE);
+                if (Arrays.equals(bytes, Arrays.copyOfRange(from, page * PAGE_SIZE, (page + 1) * PAGE_SIZE))) {
+                    continue;
+                }
+                out.writeInt(page);
+                out.write(bytes);
+                crc.update(new byte[]{(byte) (page >>> 24), (byte) (page >>> 16), (byte) (page >>> 8), (byte) page});
+                crc.update(bytes);
+                count++;
+            }
+            if (!torn) {
+                out.writeInt(count);
+                out.writeLong(crc.getValue());
+            }
+        }
+    }
+
+    private static int changedPages(final byte[] before, final byte[] after) {
+        int changed = 0;
+        for (int page = 0; page < before.length / PAGE_SIZE; page++) {
+            if (!Arrays.equals(Arrays.copyOfRange(before, page * PAGE_SIZE, (page + 1) * PAGE_SIZE),
+                    Arrays.copyOfRange(after, page * PAGE_SIZE, (page + 1) * PAGE_SIZE))) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+}
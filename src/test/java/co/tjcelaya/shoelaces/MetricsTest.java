@@ -0,0 +1,112 @@
+package co.tjcelaya.shoelaces;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
+import static co.tjcelaya.shoelaces.Metrics.Operation.*;
+import static org.testng.Assert.*;
+
+@Test(singleThreaded = true)
+public class MetricsTest {
+
+    @BeforeMethod
+    public void enableAndReset() {
+        Metrics.enable();
+        Metrics.reset();
+    }
+
+    public void testCountsCompletedOperations() throws Exception {
+        final ShoeLaces db = new ShoeLaces("metrics");
+        db.spawn("a");
+        db.interrupt("b");
+        db.interrupt("a");
+        db.pause();
+        db.resume();
+        db.lookup(0);
+        db.exit();
+        db.killTree("b");
+
+        assertThrows(() -> db.kill("missing"));
+
+        assertEquals(Metrics.count(SPAWN), 1L);
+        assertEquals(Metrics.count(INTERRUPT), 2L);
+        assertEquals(Metrics.count(PAUSE), 1L);
+        assertEquals(Metrics.count(RESUME), 1L);
+        assertEquals(Metrics.count(LOOKUP), 1L);
+        assertEquals(Metrics.count(EXIT), 1L);
+        assertEquals(Metrics.count(KILL_TREE), 1L);
+        assertEquals(Metrics.count(KILL), 1L, "the tree's kill, not the failed one");
+        assertTrue(Metrics.nanos(INTERRUPT) >= Metrics.maxNanos(INTERRUPT));
+        assertEquals(Metrics.allocatedBytes(SPAWN), -1L, "fine-grained operations do not count allocations");
+    }
+
+    public void testSpansCountAllocations() throws Exception {
+        try (Metrics.Span ignored = Metrics.span(COMMAND)) {
+            assertEquals(new byte[1 << 20].length, 1 << 20);
+        }
+
+        assertEquals(Metrics.count(COMMAND), 1L);
+        if (Metrics.allocatedBytes(COMMAND) >= 0L) {
+            assertTrue(Metrics.allocatedBytes(COMMAND) >= 1 << 20, Metrics.allocatedBytes(COMMAND) + " bytes");
+        }
+    }
+
+    public void testPrometheusText() throws Exception {
+        new ShoeLaces("metrics").interrupt("a");
+
+        final String text = Metrics.prometheus();
+        assertTrue(text.contains("# TYPE shoelaces_operations_total counter\n"), text);
+        assertTrue(text.contains("shoelaces_operations_total{operation=\"interrupt\"} 1\n"), text);
+        assertTrue(text.contains("shoelaces_operations_total{operation=\"kill-tree\"} 0\n"), text);
+        assertTrue(text.contains("shoelaces_operation_seconds_total{operation=\"interrupt\"} 0."), text);
+        assertTrue(text.contains("# TYPE shoelaces_jvm_gc_collections_total counter\n"), text);
+        for (String line : text.split("\n")) {
+            assertTrue(line.startsWith("# ") || line.matches("[a-z_]+\\{[a-z]+=\"[^\"]*\"} [0-9.]+"), line);
+        }
+    }
+
+    public void testTableListsOnlyOperationsSeen() throws Exception {
+        new ShoeLaces("metrics").interrupt("a");
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Metrics.printTable(new PrintStream(bytes, true, "UTF-8"));
+        final String[] lines = bytes.toString(StandardCharsets.UTF_8.name()).split("\n");
+
+        assertEquals(lines.length, 2);
+        assertTrue(lines[0].startsWith("operation"));
+        assertTrue(lines[1].startsWith("interrupt         1 "), lines[1]);
+    }
+
+    public void testBatchDumpsMetricsFile() throws Exception {
+        final File file = TempDatabase.create(".sldb");
+
+        final PrintStream sink = new PrintStream(NullOutputStream.NULL_OUTPUT_STREAM);
+        Batch.run(new FileStore(file), new StringReader("{\"op\":\"interrupt\",\"thread\":\"a\"}\n"), 0, sink, sink);
+
+        final String dump = FileUtils.readFileToString(Metrics.dumpFileFor(file), StandardCharsets.UTF_8);
+        assertTrue(dump.contains("shoelaces_operations_total{operation=\"interrupt\"} 1\n"), dump);
+        assertTrue(dump.contains("shoelaces_operations_total{operation=\"load\"} 1\n"), dump);
+        assertTrue(dump.contains("shoelaces_operations_total{operation=\"save\"} 1\n"), dump);
+    }
+
+    public void testMBean() throws Exception {
+        Metrics.registerMBean();
+        Metrics.registerMBean();
+        new ShoeLaces("metrics").interrupt("a");
+
+        final Object counts = ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(new ObjectName(Metrics.OBJECT_NAME), "Counts");
+        assertEquals(((TabularData) counts).get(new Object[]{"interrupt"}).get("value"), 1L);
+    }
+}
@@ -0,0 +1,98 @@
+package co.tjcelaya.shoelaces;
+
+import org.testng.annotations.Test;
+
+import java.io.StringWriter;
+
+import static org.testng.Assert.*;
+
+@Test
+public class PrintOptionsTest {
+
+    private static ShoeLaces database() {
+        final ShoeLaces sl = new ShoeLaces("test");
+        sl.spawn("proj");
+        sl.spawn("proj.a");
+        sl.spawn("project");
+        sl.interrupt("proj.b");
+        sl.kill("proj.a");
+        sl.interrupt("other");
+        sl.exit("proj.b");
+        return sl;
+    }
+
+    private static String print(final ShoeLaces sl, final PrintOptions options) throws Exception {
+        final StringWriter out = new StringWriter();
+        sl.print(out, options);
+        return out.toString();
+    }
+
+    private static String rows(final String printed) {
+        final int start = printed.indexOf("====== \n") + "====== \n".length();
+        return printed.substring(start);
+    }
+
+    public void testAllMatchesPrint() throws Exception {
+        final ShoeLaces sl = database();
+        assertEquals(print(sl, PrintOptions.all()), sl.print());
+    }
+
+    public void testPaging() throws Exception {
+        final String printed = print(database(), PrintOptions.all().offset(1).limit(2));
+
+        assertEquals(rows(printed),
+                "1    proj.a  K\n"
+                        + "2    project \n"
+                        + "\n2 of 5 threads shown\n\n");
+    }
+
+    public void testOffsetPastEnd() throws Exception {
+        assertEquals(rows(print(database(), PrintOptions.all().offset(10))), "\n0 of 5 threads shown\n\n");
+    }
+
+    public void testFilters() throws Exception {
+        final ShoeLaces sl = database();
+
+        assertEquals(rows(print(sl, PrintOptions.all().filter(PrintOptions.Filter.KILLED))),
+                "1    proj.a  K\n\n1 of 1 matching threads shown\n\n");
+        assertEquals(rows(print(sl, PrintOptions.all().filter(PrintOptions.Filter.EXITED))),
+                "3    proj.b  E\n\n1 of 1 matching threads shown\n\n");
+        assertEquals(rows(print(sl, PrintOptions.all().filter(PrintOptions.Filter.LIVE).limit(1))),
+                "0    proj    \n\n1 of 3 matching threads shown\n\n");
+    }
+
+    public void testAThreadInterruptedAgainIsLive() throws Exception {
+        final ShoeLaces sl = new ShoeLaces("test");
+        sl.interrupt("a");
+        sl.interrupt("b");
+        sl.interrupt("a");
+        sl.exit("b");
+        sl.interrupt("b");
+        assertEquals(sl.current(), "b");
+
+        assertEquals(rows(print(sl, PrintOptions.all().filter(PrintOptions.Filter.LIVE))),
+                "0    a      I\n1    b      RUNNING\n\n2 of 2 matching threads shown\n\n");
+        assertEquals(rows(print(sl, PrintOptions.all().filter(PrintOptions.Filter.EXITED))),
+                "\n0 of 0 matching threads shown\n\n");
+    }
+
+    public void testPrefixFollowsSegments() throws Exception {
+        final String printed = print(database(), PrintOptions.all().prefix("proj").offset(1));
+
+        assertEquals(rows(printed),
+                "1    proj.a  K\n"
+                        + "3    proj.b  E\n"
+                        + "\n2 of 3 matching threads shown\n\n");
+    }
+
+    public void testRunningThreadIsMarked() throws Exception {
+        assertEquals(rows(print(database(), PrintOptions.all().prefix("other"))),
+                "4    other   RUNNING\n\n1 of 1 matching threads shown\n\n");
+    }
+
+    public void testParseFilter() throws Exception {
+        assertEquals(PrintOptions.Filter.parse("Killed"), PrintOptions.Filter.KILLED);
+        assertThrows(IllegalArgumentException.class, () -> PrintOptions.Filter.parse("paused"));
+        assertThrows(IllegalArgumentException.class, () -> PrintOptions.all().limit(-1));
+    }
+}
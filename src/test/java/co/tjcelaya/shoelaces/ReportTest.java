@@ -0,0 +1,150 @@
+package co.tjcelaya.shoelaces;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.testng.Assert.*;
+
+@Test
+public class ReportTest {
+
+    /**
+     * Write a day where each command happens a minute after the one before.
+     */
+    private static void day(final File home, final String file, final String... commands) throws Exception {
+        final ShoeLaces db = new ShoeLaces(file);
+        long minute = 0L;
+        for (String command : commands) {
+            db.clock(Clock.fixed(Instant.ofEpochSecond(60L * minute++), ZoneOffset.UTC));
+            final String thread = command.substring(2);
+            switch (command.charAt(0)) {
+                case 'i':
+                    db.interrupt(thread);
+                    break;
+                case 'k':
+                    db.kill(thread);
+                    break;
+                case 'e':
+                    db.exit(thread);
+                    break;
+            }
+        }
+        final File f = new File(home, file);
+        db.save(f);
+        db.timeline().write(f);
+    }
+
+    private static String names(final Iterable<Report.ThreadTally> threads) {
+        final StringBuilder names = new StringBuilder();
+        for (Report.ThreadTally thread : threads) {
+            names.append(names.length() == 0 ? "" : " ").append(thread.getName());
+        }
+        return names.toString();
+    }
+
+    public void testTalliesAcrossDays() throws Exception {
+        final File home = TempDatabase.directory();
+        try {
+            // a new thread's first interrupt spawns it, only later ones count
+            day(home, "2017-06-01.sldb", "i a", "i b", "i a", "i b", "i a", "k b");
+            day(home, "2017-06-02.slb", "i a", "i c", "e c");
+            day(home, "2017-06-10.sldb", "i b", "i a", "k a");
+            FileUtils.writeStringToFile(new File(home, "2017-06-11.sldb"), "{not json", "UTF-8");
+
+            final Report.Tally tally = Report.run(home, new ForkJoinPool(2));
+            assertEquals(tally.days(), 3);
+            assertEquals(tally.skipped(), 1);
+            assertEquals(tally.threadCount(), 3);
+            assertEquals(tally.interrupts(), 3L);
+            assertEquals(tally.kills(), 2L);
+            assertEquals(tally.exits(), 1L);
+
+            assertEquals(names(tally.top(10, Report.ThreadTally::getInterrupts)), "a b");
+            assertEquals(names(tally.top(1, Report.ThreadTally::getKills)), "a", "ties go to the earlier name");
+            assertEquals(names(tally.top(10, Report.ThreadTally::getExits)), "c", "zeroes are left out");
+
+            final Report.ThreadTally a = tally.get("a");
+            assertEquals(a.getDays(), 3);
+            assertEquals(a.getFirst(), "2017-06-01");
+            assertEquals(a.getLast(), "2017-06-10");
+            assertEquals(a.getLifespan(), 10L);
+            assertEquals(tally.get("c").getLifespan(), 1L);
+
+            // day one: a, b, a, b, a, and a stays on when b is killed; day two: a, c, a; day three: b, a, b
+            assertEquals(tally.switches(), 5L + 3L + 3L);
+            assertEquals(tally.trackedMillis(), 60_000L * (5 + 2 + 2));
+        } finally {
+            FileUtils.deleteDirectory(home);
+        }
+    }
+
+    public void testMergeOrderDoesNotMatter() throws Exception {
+        final File home = TempDatabase.directory();
+        try {
+            day(home, "one.sldb", "i a", "i b");
+            day(home, "two.sldb", "i b", "k b", "i c");
+            day(home, "three.sldb", "i a", "e a");
+
+            final File[] files = home.listFiles((dir, name) -> Federation.isDatabase(name));
+            Report.Tally forward = new Report.Tally();
+            Report.Tally backward = new Report.Tally();
+            for (int i = 0; i < files.length; i++) {
+                forward = forward.merge(Report.day(files[i]));
+                backward = backward.merge(Report.day(files[files.length - 1 - i]));
+            }
+
+            for (Report.Tally tally : Arrays.asList(forward, Report.run(home), backward)) {
+                assertEquals(tally.days(), 3);
+                assertEquals(tally.switches(), forward.switches());
+                assertEquals(tally.get("a").getDays(), 2, "names are not dates");
+                assertEquals(tally.get("a").getLifespan(), 2L);
+                assertEquals(tally.get("a").getFirst(), "one");
+                assertEquals(tally.get("a").getLast(), "three");
+                assertEquals(tally.get("b").getKills(), 1L);
+            }
+        } finally {
+            FileUtils.deleteDirectory(home);
+        }
+    }
+
+    public void testEmptyHome() throws Exception {
+        final File home = TempDatabase.directory();
+        try {
+            final Report.Tally tally = Report.run(home);
+            assertEquals(tally.days(), 0);
+            assertTrue(tally.top(10, Report.ThreadTally::getInterrupts).isEmpty());
+        } finally {
+            FileUtils.deleteDirectory(home);
+        }
+    }
+
+    public void testPrintsEverySection() throws Exception {
+        final File home = TempDatabase.directory();
+        try {
+            day(home, "2017-06-01.sldb", "i a", "i b", "k b");
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            App.report(Report.run(home), 5, new PrintStream(out, true, "UTF-8"));
+
+            final String output = out.toString(StandardCharsets.UTF_8.name());
+            for (String heading : Arrays.asList("report across 1 databases, 2 threads:", "most interrupted:",
+                    "most killed:", "kill/exit ratio: -", "longest lived:", "context switches: 3")) {
+                assertTrue(output.contains(heading), heading + " missing from " + output);
+            }
+            assertEquals(Arrays.stream(output.split("\n")).filter(l -> l.contains("  b")).collect(Collectors.toList()),
+                    Arrays.asList("       1  b (exited 0)", "       1  b (2017-06-01 to 2017-06-01)"));
+        } finally {
+            FileUtils.deleteDirectory(home);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package co.tjcelaya.shoelaces;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.testng.Assert.*;
+
+@Test
+public class RolloverTest {
+
+    private static ShoeLaces yesterday() {
+        final ShoeLaces db = new ShoeLaces("2017-06-01.sldb");
+        db.spawn("idle");
+        db.interrupt("done");
+        db.interrupt("dead");
+        db.kill("dead");
+        db.exit("done");
+        db.interrupt("back");
+        db.exit("back");
+        db.interrupt("back"); // finished, but working on it again
+        db.interrupt("focus");
+        db.pause();
+        return db;
+    }
+
+    private static void assertCarried(final ShoeLaces carried) {
+        assertEquals(carried.getName(), "2017-06-02.sldb");
+        assertEquals(carried.threads().names(), Arrays.asList("idle", "focus", "back"));
+        assertEquals(carried.attention().toList(), Arrays.asList("", "focus", "back", "idle"));
+        assertEquals(carried.threads().status("idle").toString(), "");
+        assertTrue(carried.isPaused());
+    }
+
+    public void testPreviousIsLatestEarlierDay() throws Exception {
+        final File home = Files.createTempDirectory("shoelaces").toFile();
+        try {
+            for (String name : new String[]{"2017-05-30.sldb", "2017-06-01.slb", "2017-06-03.sldb", "notes.sldb"}) {
+                assertTrue(new File(home, name).createNewFile());
+            }
+
+            assertEquals(Rollover.previous(new File(home, "2017-06-02.sldb")).getName(), "2017-06-01.slb");
+            assertNull(Rollover.previous(new File(home, "2017-05-01.sldb")));
+            assertNull(Rollover.previous(new File(home, "custom.sldb")));
+        } finally {
+            FileUtils.deleteDirectory(home);
+        }
+    }
+
+    public void testCarryOverFromEveryFormat() throws Exception {
+        final File home = Files.createTempDirectory("shoelaces").toFile();
+        try {
+            for (String extension : new String[]{".sldb", BinaryCodec.EXTENSION}) {
+                final File previous = new File(home, "2017-06-01" + extension);
+                yesterday().save(previous);
+                assertCarried(Rollover.carryOver(previous, "2017-06-02.sldb"));
+            }
+
+            final File journaled = new File(home, "2017-05-31.sldb");
+            try (Journal journal = new Journal(journaled)) {
+                final ShoeLaces db = journal.load();
+                final ShoeLaces expected = yesterday();
+                for (int tid = 0; tid < expected.threads().size(); tid++) {
+                    db.spawn(expected.threads().name(tid));
+                }
+                db.interrupt("idle");
+                db.kill("idle");
+                journal.save(db);
+            }
+            assertTrue(Rollover.carryOver(journaled, "2017-06-02.sldb").threads().names()
+                    .containsAll(Arrays.asList("done", "dead", "back", "focus")));
+            assertFalse(Rollover.carryOver(journaled, "2017-06-02.sldb").threads().contains("idle"));
+        } finally {
+            FileUtils.deleteDirectory(home);
+        }
+    }
+
+    public void testOpenCarriesOverIntoNewDay() throws Exception {
+        final File home = Files.createTempDirectory("shoelaces").toFile();
+        try {
+            yesterday().save(new File(home, "2017-06-01.sldb"));
+
+            final File today = new File(home, "2017-06-02.sldb");
+            final PrintStream sink = new PrintStream(NullOutputStream.NULL_OUTPUT_STREAM);
+            assertCarried(App.open(new FileStore(today), sink, sink));
+            assertCarried(ShoeLaces.load(today));
+        } finally {
+            FileUtils.deleteDirectory(home);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package co.tjcelaya.shoelaces;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.testng.Assert.*;
+
+@Test
+public class ShoeLacesCodecTest {
+
+    private static ObjectMapper databind() {
+        final ObjectMapper mapper = new ObjectMapper();
+        mapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+        return mapper;
+    }
+
+    private static ShoeLaces sample() {
+        final ShoeLaces db = new ShoeLaces("sample");
+        db.spawn("proj.a");
+        db.interrupt("proj.b");
+        for (int i = 0; i < 100; i++) {
+            db.interrupt("proj.a");
+            db.interrupt("proj.b");
+        }
+        db.interrupt("other-thing");
+        db.kill("proj.a");
+        db.pause();
+        return db;
+    }
+
+    private static byte[] encode(final ShoeLaces db) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ShoeLacesCodec.write(db, out);
+        return out.toByteArray();
+    }
+
+    private static ShoeLaces decode(final String json) throws IOException {
+        return ShoeLacesCodec.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public void testWritesSameBytesAsDataBinding() throws Exception {
+        for (ShoeLaces db : new ShoeLaces[]{new ShoeLaces("empty"), sample()}) {
+            assertEquals(new String(encode(db), StandardCharsets.UTF_8), databind().writeValueAsString(db));
+        }
+    }
+
+    public void testReadsWhatDataBindingWrote() throws Exception {
+        final ShoeLaces db = sample();
+        final ShoeLaces read = decode(databind().writeValueAsString(db));
+
+        assertEquals(read.print(), db.print());
+        assertEquals(encode(read), encode(db));
+    }
+
+    public void testFieldOrderAndUnknownFieldsAreTolerated() throws Exception {
+        final ShoeLaces db = decode(
+                "{\"attention\":[\"b\",null],\"extra\":{\"nested\":[1,2]},\"threads\":{\"a\":\"IK\",\"b\":null},"
+                        + "\"name\":\"reordered\"}");
+
+        assertEquals(db.getName(), "reordered");
+        assertEquals(db.current(), "b");
+        assertEquals(db.lookup(1), "b");
+        assertEquals(db.threads().status("a").getKills(), 1);
+        assertEquals(db.attention().size(), 2);
+    }
+
+    public void testCurrentReadsOnlyTheTopOfTheStack() throws Exception {
+        final ShoeLaces db = sample();
+        assertNull(ShoeLacesCodec.current(new ByteArrayInputStream(encode(db))));
+        db.resume();
+        assertEquals(ShoeLacesCodec.current(new ByteArrayInputStream(encode(db))), "other-thing");
+        assertNull(ShoeLacesCodec.current(new ByteArrayInputStream(encode(new ShoeLaces("empty")))));
+
+        // nothing after the top is looked at
+        final String truncated = "{\"name\":\"x\",\"threads\":{\"a\":\"I\"},\"attention\":[\"a\",";
+        assertEquals(ShoeLacesCodec.current(new ByteArrayInputStream(truncated.getBytes(StandardCharsets.UTF_8))), "a");
+    }
+
+    public void testMalformedInputIsRejected() throws Exception {
+        assertThrows(IOException.class, () -> decode("[]"));
+        assertThrows(IOException.class, () -> decode("{\"threads\":{}}"));
+        assertThrows(IOException.class, () -> decode("{\"name\":\"x\",\"threads\":{\"a\":\"Q\"}}"));
+        assertThrows(IOException.class, () -> decode("{\"name\":\"x\",\"attention\":[1]}"));
+        assertThrows(IOException.class, () -> decode("{\"name\":\"x\",\"threads\":{\"a\":\"I\""));
+        assertThrows(IllegalArgumentException.class, () -> decode("{\"name\":\"no spaces\"}"));
+    }
+}
@@ -8,6 +8,9 @@ import org.testng.annotations.Test;
 
 import java.io.File;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -140,6 +143,42 @@ public class ShoeLacesTest {
         assertThrows(() -> l.kill("nonexist"));
     }
 
+    public void testKillTree() throws Exception {
+        final ShoeLaces l = new ShoeLaces(randomThreadName());
+        l.spawn("proj");
+        l.spawn("proj.a");
+        l.spawn("proj.b");
+        l.spawn("project");
+        l.interrupt("proj.a");
+        l.exit("proj.b");
+
+        final List<Transition> seen = new ArrayList<>();
+        l.addListener(seen::add);
+
+        Assert.assertEquals(l.killTree("proj"), 2);
+        Assert.assertEquals(l.threads().status("proj").toString(), "K");
+        Assert.assertEquals(l.threads().status("proj.a").toString(), "K");
+        Assert.assertEquals(l.threads().status("proj.b").toString(), "E");
+        Assert.assertEquals(l.threads().status("project").toString(), "");
+        Assert.assertNull(l.current());
+        Assert.assertEquals(seen.size(), 2);
+
+        Assert.assertEquals(l.killTree("proj"), 0);
+        Assert.assertThrows(IllegalArgumentException.class, () -> l.killTree("proj."));
+    }
+
+    public void testExitTreeIncludesReinterrupted() throws Exception {
+        final ShoeLaces l = new ShoeLaces(randomThreadName());
+        l.interrupt("proj.a");
+        l.exit("proj.a");
+        l.interrupt("proj.a");
+        l.interrupt("other");
+
+        Assert.assertEquals(l.exitTree("proj"), 1);
+        Assert.assertEquals(l.current(), "other");
+        Assert.assertEquals(l.threads().status("proj.a").toString(), "EE");
+    }
+
     public void testKillWillUndoPause() throws Exception {
         final ShoeLaces l = new ShoeLaces();
         final String n = randomThreadName();
@@ -247,7 +286,7 @@ public class ShoeLacesTest {
     public void testLoadEmptyFile() throws Exception {
         final String filename = randomThreadName();
         final File f = new File(System.getProperty("java.io.tmpdir") + "/" + filename + ".sldb");
-        f.deleteOnExit();
+        TempDatabase.track(f);
 
         final ShoeLaces emptyShoe = ShoeLaces.load(f);
         assertFalse(emptyShoe.isRunning());
@@ -259,7 +298,7 @@ public class ShoeLacesTest {
         final String name = randomThreadName();
         final ShoeLaces l = new ShoeLaces(name);
         final File f = File.createTempFile(randomThreadName(), ".sldb");
-        f.deleteOnExit();
+        TempDatabase.track(f);
 
         l.save(f);
 
@@ -277,4 +316,40 @@ public class ShoeLacesTest {
         assertEquals(l.current(), loaded.current());
         assertEquals(l.isRunning(), loaded.isRunning());
     }
-}
\ No newline at end of file
+
+    public void testNameValidatorAgreesWithTheRegex() throws Exception {
+        for (String name : new String[]{"a", "a.b", "a-b.c-d", "0.1", "-", "a..b", ".a", "a.", ".", "", "A", "a b",
+                "a_b", "a.b.", "proj-1.task-2.sub", "\u00e9"}) {
+            assertEquals(ShoeLaces.isValidName(name), ShoeLaces.REGEX_THREAD_NAME.matcher(name).matches(), name);
+        }
+
+        final java.util.Random random = new java.util.Random(7);
+        final char[] alphabet = "az09-._A".toCharArray();
+        for (int i = 0; i < 10_000; i++) {
+            final char[] name = new char[random.nextInt(6)];
+            for (int c = 0; c < name.length; c++) {
+                name[c] = alphabet[random.nextInt(alphabet.length)];
+            }
+            final String text = new String(name);
+            assertEquals(ShoeLaces.isValidName(text), ShoeLaces.REGEX_THREAD_NAME.matcher(text).matches(), text);
+        }
+    }
+
+    public void testStackHoldsTheRegistrysNames() throws Exception {
+        final ShoeLaces l = new ShoeLaces();
+        l.spawn(new String("a"));
+        l.interrupt(new String("b"));
+        for (String name : l.attention()) {
+            assertSame(name, l.threads().name(l.tid(name)));
+        }
+
+        final File f = File.createTempFile(randomThreadName(), ".sldb");
+        TempDatabase.track(f);
+        l.save(f);
+        final ShoeLaces loaded = ShoeLaces.load(f);
+        assertEquals(loaded.attention().toList(), Arrays.asList("b", "a"));
+        for (String name : loaded.attention()) {
+            assertSame(name, loaded.threads().name(loaded.tid(name)), "loaded names are interned too");
+        }
+    }
+}
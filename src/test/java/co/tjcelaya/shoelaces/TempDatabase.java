@@ -0,0 +1,67 @@
+package co.tjcelaya.shoelaces;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Database files for tests, under random names in the temp directory. When the JVM exits each is deleted along with
+ * everything next to it whose name starts with its own, which covers every sidecar without naming them. Directories,
+ * for tests that fill a whole {@code SHOELACES_HOME}, are deleted with everything in them.
+ */
+final class TempDatabase {
+
+    private static final Set<File> CREATED = ConcurrentHashMap.newKeySet();
+    private static final Set<File> DIRECTORIES = ConcurrentHashMap.newKeySet();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(TempDatabase::deleteAll));
+    }
+
+    private TempDatabase() {
+    }
+
+    /**
+     * @return a database path that does not exist yet
+     */
+    static File create(final String extension) {
+        return track(new File(System.getProperty("java.io.tmpdir"), UUID.randomUUID().toString() + extension));
+    }
+
+    /**
+     * Delete {@code db} and its sidecars when the JVM exits.
+     */
+    static File track(final File db) {
+        CREATED.add(db.getAbsoluteFile());
+        return db;
+    }
+
+    /**
+     * @return a new empty directory
+     */
+    static File directory() throws IOException {
+        final File dir = Files.createTempDirectory("shoelaces").toFile();
+        DIRECTORIES.add(dir);
+        return dir;
+    }
+
+    private static void deleteAll() {
+        for (File dir : DIRECTORIES) {
+            FileUtils.deleteQuietly(dir);
+        }
+        for (File db : CREATED) {
+            final File[] files = db.getParentFile().listFiles((dir, name) -> name.startsWith(db.getName()));
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+}
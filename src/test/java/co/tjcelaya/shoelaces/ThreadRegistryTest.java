@@ -0,0 +1,97 @@
+package co.tjcelaya.shoelaces;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import java.util.UUID;
+
+import static org.testng.Assert.*;
+
+@Test
+public class ThreadRegistryTest {
+
+    public void testTidsFollowRegistrationOrder() throws Exception {
+        final ThreadRegistry r = new ThreadRegistry();
+        assertEquals(r.register("a"), 0);
+        assertEquals(r.register("b"), 1);
+        assertEquals(r.register("a"), 0);
+        assertEquals(r.size(), 2);
+        assertEquals(r.longestName(), 1);
+
+        assertEquals(r.name(1), "b");
+        assertEquals(r.tid("b"), 1);
+        assertEquals(r.tid("c"), -1);
+        assertThrows(NoSuchElementException.class, () -> r.name(2));
+        assertThrows(NoSuchElementException.class, () -> r.name(-1));
+    }
+
+    public void testStatusesRecord() throws Exception {
+        final ThreadRegistry r = new ThreadRegistry();
+        r.register("a");
+        r.record("a", 'I');
+        r.record("a", 'K');
+        r.register("a");
+
+        assertEquals(r.status("a").toString(), "IK");
+        assertEquals(r.status(0).getKills(), 1);
+        assertNull(r.status("b"));
+        assertThrows(NoSuchElementException.class, () -> r.record("b", 'E'));
+    }
+
+    public void testLegacyFileRoundTripsUnchanged() throws Exception {
+        final String legacy =
+                "{\"name\":\"legacy\",\"threads\":{\"b.x\":\"IE\",\"a\":\"\",\"c\":\"K\"},\"attention\":[\"\",\"a\"]}";
+        final File f = File.createTempFile(UUID.randomUUID().toString(), ".sldb");
+        TempDatabase.track(f);
+        FileUtils.writeStringToFile(f, legacy, StandardCharsets.UTF_8);
+
+        final ShoeLaces db = ShoeLaces.load(f);
+        assertEquals(db.lookup(0), "b.x");
+        assertEquals(db.lookup(2), "c");
+        assertEquals(db.tid("a"), 1);
+
+        db.save(f);
+        assertEquals(FileUtils.readFileToString(f, StandardCharsets.UTF_8), legacy);
+    }
+
+    public void testSubtreeFollowsSegments() throws Exception {
+        final ThreadRegistry r = new ThreadRegistry();
+        for (String name : new String[]{"proj.b", "project", "proj", "proj-x", "proj.a.deep", "other"}) {
+            r.register(name);
+        }
+
+        assertEquals(r.descendants("proj").keySet(), Arrays.asList("proj.a.deep", "proj.b"));
+        assertEquals(r.subtree("proj"), new int[]{0, 2, 4});
+        assertEquals(r.subtree("proj.a"), new int[]{4});
+        assertEquals(r.subtree("nope"), new int[0]);
+
+        final SortedMap<String, Integer> view = r.descendants("proj");
+        r.register("proj.c");
+        assertEquals(view.lastKey(), "proj.c");
+        assertEquals(r.subtree("proj"), new int[]{0, 2, 4, 6});
+    }
+
+    public void testTruncateForgetsTheNewest() throws Exception {
+        final ThreadRegistry r = new ThreadRegistry();
+        for (String name : new String[]{"proj", "proj.long-name", "b"}) {
+            r.register(name);
+        }
+        r.record("b", 'I');
+        r.descendants("proj");
+
+        r.truncate(1);
+        assertEquals(r.size(), 1);
+        assertEquals(r.tid("b"), -1);
+        assertEquals(r.longestName(), 4);
+        assertEquals(r.subtree("proj"), new int[]{0});
+
+        assertEquals(r.register("b"), 1, "tids are handed out again");
+        assertEquals(r.status("b").toString(), "");
+        assertThrows(IndexOutOfBoundsException.class, () -> r.truncate(3));
+    }
+}
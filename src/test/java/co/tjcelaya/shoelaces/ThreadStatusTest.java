@@ -0,0 +1,88 @@
+package co.tjcelaya.shoelaces;
+
+import org.apache.commons.lang3.StringUtils;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+@Test
+public class ThreadStatusTest {
+
+    public void testShortHistoryIsPlainLetters() throws Exception {
+        final ThreadStatus s = new ThreadStatus();
+        assertEquals(s.toString(), "");
+        assertEquals(s.last(), (char) 0);
+
+        s.record('I');
+        s.record('I');
+        s.record('E');
+        s.record('K');
+
+        assertEquals(s.toString(), "IIEK");
+        assertEquals(s.getInterrupts(), 2);
+        assertEquals(s.getExits(), 1);
+        assertEquals(s.getKills(), 1);
+        assertEquals(s.last(), 'K');
+        assertTrue(s.isComplete());
+
+        assertThrows(() -> s.record('X'));
+    }
+
+    public void testLongHistoryIsCountedAndBounded() throws Exception {
+        final ThreadStatus s = new ThreadStatus();
+        for (int i = 0; i < 1000; i++) {
+            s.record('I');
+        }
+        s.record('E');
+
+        assertFalse(s.isComplete());
+        assertEquals(s.toString(),
+                "I1000E1K0:" + StringUtils.repeat('I', ThreadStatus.HISTORY_CAPACITY - 1) + "E");
+    }
+
+    public void testParseRoundTrips() throws Exception {
+        for (String text : new String[]{
+                "",
+                "K",
+                "IEIEK",
+                StringUtils.repeat('I', ThreadStatus.HISTORY_CAPACITY),
+                "I40E2K1:" + StringUtils.repeat("IE", ThreadStatus.HISTORY_CAPACITY / 2),
+        }) {
+            assertEquals(ThreadStatus.parse(text).toString(), text);
+        }
+    }
+
+    public void testParseCompactsLegacyHistory() throws Exception {
+        final ThreadStatus s = ThreadStatus.parse(StringUtils.repeat('I', 100) + "K");
+        assertEquals(s.getInterrupts(), 100);
+        assertEquals(s.getKills(), 1);
+        assertEquals(s.last(), 'K');
+        assertTrue(s.toString().startsWith("I100E0K1:"));
+
+        s.record('E');
+        assertTrue(s.toString().endsWith("IKE"));
+    }
+
+    public void testParseRejectsGarbage() throws Exception {
+        assertThrows(() -> ThreadStatus.parse("X"));
+        assertThrows(() -> ThreadStatus.parse("I:"));
+        assertThrows(() -> ThreadStatus.parse("Q3:I"));
+        assertThrows(() -> ThreadStatus.parse("I1:II"));
+    }
+
+    public void testAppendToMatchesToString() throws Exception {
+        final ThreadStatus s = new ThreadStatus();
+        for (int i = 0; i < 1234; i++) {
+            s.record(i % 3 == 0 ? 'E' : 'I');
+            final StringBuilder sb = new StringBuilder();
+            s.appendTo(sb);
+            assertEquals(sb.toString(), s.toString());
+        }
+
+        for (int value : new int[]{0, 9, 10, 99, 100, 12345, Integer.MAX_VALUE}) {
+            final String decimal = ThreadStatus.appendDecimal(new StringBuilder(), value).toString();
+            assertEquals(decimal, String.valueOf(value));
+            assertEquals(ThreadStatus.decimalLength(value), decimal.length());
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package co.tjcelaya.shoelaces;
+
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.io.output.NullOutputStream;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+@Test
+public class TimelineTest {
+
+    /**
+     * A clock that only moves when told to.
+     */
+    private static final class ManualClock extends Clock {
+        private long millis;
+
+        ManualClock advance(final long seconds) {
+            millis += TimeUnit.SECONDS.toMillis(seconds);
+            return this;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+
+    private static ShoeLaces clocked(final ManualClock clock) {
+        final ShoeLaces db = new ShoeLaces("day");
+        db.clock(clock);
+        return db;
+    }
+
+    public void testTimeGoesToTheRunningThread() {
+        final ManualClock clock = new ManualClock();
+        final ShoeLaces db = clocked(clock);
+
+        db.interrupt("proj.a");
+        clock.advance(10);
+        db.interrupt("proj.b");
+        clock.advance(5);
+        db.exit(); // back to proj.a
+        clock.advance(3);
+        db.pause();
+        clock.advance(100);
+        db.resume();
+        clock.advance(2);
+
+        assertEquals(db.timeSpent("proj.a"), TimeUnit.SECONDS.toMillis(15));
+        assertEquals(db.timeSpent("proj.b"), TimeUnit.SECONDS.toMillis(5));
+        assertEquals(db.timeSpentUnder("proj"), TimeUnit.SECONDS.toMillis(20));
+        assertEquals(db.timeline().size(), 5);
+        assertEquals(db.timeline().kind(2), Transition.Kind.EXIT);
+        assertEquals(db.timeline().tid(2), db.tid("proj.b"), "the exit names the thread it popped");
+        assertEquals(db.timeline().running(3), -1);
+    }
+
+    public void testPrefixTotalsCoverOnlyTheSubtree() {
+        final ManualClock clock = new ManualClock();
+        final ShoeLaces db = clocked(clock);
+
+        db.interrupt("proj.a");
+        clock.advance(1);
+        db.interrupt("proj.a.sub");
+        clock.advance(2);
+        db.interrupt("project");
+        clock.advance(4);
+        db.kill("project");
+        clock.advance(8);
+
+        assertEquals(db.timeSpentUnder("proj.a"), TimeUnit.SECONDS.toMillis(11));
+        assertEquals(db.timeSpentUnder("proj"), TimeUnit.SECONDS.toMillis(11));
+        assertEquals(db.timeSpent("project"), TimeUnit.SECONDS.toMillis(4));
+        assertEquals(db.timeSpentUnder("missing"), 0L);
+        assertThrows(java.util.NoSuchElementException.class, () -> db.timeSpent("missing"));
+    }
+
+    public void testUndoneThreadsAreForgotten() throws Exception {
+        final File file = TempDatabase.create(".sldb");
+        final ManualClock clock = new ManualClock();
+        final ShoeLaces db = clocked(clock);
+        final History history = new History(file);
+
+        db.interrupt("a");
+        clock.advance(1);
+        history.begin(db);
+        db.interrupt("b");
+        history.commit(db);
+        clock.advance(5);
+        db.timeline().save(file);
+
+        history.undo(db, 1);
+        clock.advance(2);
+        db.interrupt("c");
+        assertEquals(db.tid("c"), 1, "c takes over the undone tid");
+        assertEquals(db.timeSpent("c"), 0L, "without b's time");
+        assertEquals(db.timeSpent("a"), TimeUnit.SECONDS.toMillis(3));
+
+        db.timeline().save(file);
+        final Timeline read = Timeline.read(file);
+        assertEquals(read.spent(1, clock.millis()), 0L, "the file was rewritten without b");
+        assertEquals(read.running(read.size() - 1), 1);
+    }
+
+    public void testSavesAppendAndReadBack() throws Exception {
+        final File file = TempDatabase.create(".sldb");
+        final ManualClock clock = new ManualClock();
+        final ShoeLaces db = clocked(clock);
+
+        db.interrupt("a");
+        clock.advance(7);
+        db.interrupt("b");
+        db.timeline().save(file);
+        assertEquals(Timeline.fileFor(file).length(), Timeline.HEADER_BYTES + 2L * Timeline.RECORD_BYTES);
+
+        clock.advance(3);
+        db.exit();
+        db.timeline().save(file);
+        db.timeline().save(file);
+        assertEquals(Timeline.fileFor(file).length(), Timeline.HEADER_BYTES + 3L * Timeline.RECORD_BYTES);
+
+        final Timeline read = Timeline.read(file);
+        assertEquals(read.size(), 3);
+        assertEquals(read.time(1), TimeUnit.SECONDS.toMillis(7));
+        assertEquals(read.spent(db.tid("a"), clock.millis()), TimeUnit.SECONDS.toMillis(7));
+        assertEquals(read.spent(db.tid("b"), clock.millis()), TimeUnit.SECONDS.toMillis(3));
+    }
+
+    public void testTornRecordIsDroppedAndRewritten() throws Exception {
+        final File file = TempDatabase.create(".sldb");
+        final ShoeLaces db = clocked(new ManualClock());
+        db.interrupt("a");
+        db.timeline().save(file);
+
+        try (FileOutputStream out = new FileOutputStream(Timeline.fileFor(file), true)) {
+            out.write(new byte[Timeline.RECORD_BYTES - 1]);
+        }
+
+        final Timeline read = Timeline.read(file);
+        assertEquals(read.size(), 1);
+
+        db.interrupt("b");
+        db.timeline().save(file);
+        assertEquals(Timeline.read(file).size(), 2);
+        assertEquals(Timeline.fileFor(file).length(), Timeline.HEADER_BYTES + 2L * Timeline.RECORD_BYTES);
+    }
+
+    public void testInvocationsKeepOneRecordPerChange() throws Exception {
+        final File file = TempDatabase.create(".sldb");
+        final PrintStream sink = new PrintStream(NullOutputStream.NULL_OUTPUT_STREAM);
+
+        // a journaled load replays the log, which must not add to the times already saved
+        for (String[] args : new String[][]{{"-i", "a"}, {"-i", "b"}, {"-p"}}) {
+            App.run(new Journal(file), new DefaultParser().parse(App.options(), args), sink, sink);
+        }
+
+        final Timeline timeline = Timeline.read(file);
+        assertEquals(timeline.size(), 3);
+        assertEquals(timeline.kind(2), Transition.Kind.PAUSE);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        App.run(new Journal(file), new DefaultParser().parse(App.options(), new String[]{"--time"}),
+                new PrintStream(out, true, "UTF-8"), sink);
+        final String output = out.toString(StandardCharsets.UTF_8.name());
+        assertTrue(output.contains("time spent:"), output);
+        assertTrue(output.contains("  total"), output);
+    }
+
+    public void testMigrateCarriesTheTimeline() throws Exception {
+        final File from = TempDatabase.create(".sldb");
+        final ShoeLaces db = clocked(new ManualClock().advance(60));
+        db.interrupt("a");
+        new FileStore(from).write(db);
+        db.timeline().write(from);
+
+        final File to = TempDatabase.track(new File(from.getPath().replace(".sldb", KeyValueStore.EXTENSION)));
+        App.migrate(new FileStore(from), new KeyValueStore(to));
+
+        assertEquals(Timeline.read(to).size(), 1);
+        assertEquals(Timeline.read(to).time(0), TimeUnit.SECONDS.toMillis(60));
+    }
+
+    public void testDuration() {
+        assertEquals(App.duration(TimeUnit.HOURS.toMillis(1) + 62_500L), "  1:01:02");
+        assertEquals(App.duration(0L), "  0:00:00");
+    }
+}
@@ -0,0 +1,193 @@
+package co.tjcelaya.shoelaces;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+@Test
+public class TransitionPublisherTest {
+
+    /**
+     * Records every signal, and requests nothing by itself.
+     */
+    private static class Recorder implements Flow.Subscriber<Transition> {
+        final List<String> signals = new ArrayList<>();
+        final CountDownLatch terminated = new CountDownLatch(1);
+        Flow.Subscription subscription;
+        Throwable error;
+
+        @Override
+        public void onSubscribe(final Flow.Subscription subscription) {
+            this.subscription = subscription;
+            signals.add("subscribed");
+        }
+
+        @Override
+        public void onNext(final Transition item) {
+            signals.add(item.getKind() + (item.getThread() == null ? "" : " " + item.getThread()));
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            error = throwable;
+            signals.add("error");
+            terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            signals.add("complete");
+            terminated.countDown();
+        }
+    }
+
+    private static ShoeLaces publishing(final TransitionPublisher publisher) {
+        final ShoeLaces db = new ShoeLaces("day");
+        db.addListener(publisher);
+        return db;
+    }
+
+    public void testDeliversOnlyWhatWasRequested() {
+        final TransitionPublisher publisher = new TransitionPublisher(Runnable::run);
+        final ShoeLaces db = publishing(publisher);
+        final Recorder recorder = new Recorder();
+        publisher.subscribe(recorder);
+
+        db.interrupt("a");
+        db.interrupt("b");
+        db.exit();
+        assertEquals(recorder.signals, Arrays.asList("subscribed"));
+
+        recorder.subscription.request(2);
+        assertEquals(recorder.signals, Arrays.asList("subscribed", "INTERRUPT a", "INTERRUPT b"));
+
+        recorder.subscription.request(Long.MAX_VALUE);
+        recorder.subscription.request(Long.MAX_VALUE); // saturates rather than overflowing
+        db.pause();
+        assertEquals(recorder.signals.subList(3, 5), Arrays.asList("EXIT", "PAUSE"));
+
+        publisher.close();
+        assertEquals(recorder.signals.get(5), "complete");
+        assertEquals(publisher.subscribers(), 0);
+    }
+
+    public void testTransitionsCarryTheirEffect() {
+        final TransitionPublisher publisher = new TransitionPublisher(Runnable::run);
+        final ShoeLaces db = publishing(publisher);
+        final List<Transition> seen = new ArrayList<>();
+        publisher.subscribe(new Recorder() {
+            @Override
+            public void onSubscribe(final Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(final Transition item) {
+                seen.add(item);
+            }
+        });
+
+        db.interrupt("a");
+        db.interrupt("b");
+        db.kill();
+        assertEquals(seen.get(1).getRunning(), "b");
+        assertEquals(seen.get(2).getRunning(), "a");
+        assertTrue(seen.get(2).getAt() > 0L);
+        assertEquals(seen.get(2), new Transition(Transition.Kind.KILL, null), "the effect is not compared");
+    }
+
+    public void testSubscriberThatFallsABufferBehindIsDropped() {
+        final TransitionPublisher publisher = new TransitionPublisher(Runnable::run, 4);
+        final ShoeLaces db = publishing(publisher);
+        final Recorder slow = new Recorder();
+        final Recorder fast = new Recorder();
+        publisher.subscribe(slow);
+        publisher.subscribe(fast);
+        fast.subscription.request(Long.MAX_VALUE);
+
+        for (int i = 0; i < 5; i++) {
+            db.interrupt("t" + i);
+        }
+
+        assertEquals(slow.signals, Arrays.asList("subscribed", "error"));
+        assertTrue(slow.error instanceof IllegalStateException);
+        assertEquals(fast.signals.size(), 6);
+        assertEquals(publisher.subscribers(), 1);
+
+        db.interrupt("t5");
+        assertEquals(slow.signals.size(), 2, "nothing after the error");
+        assertEquals(fast.signals.size(), 7);
+    }
+
+    public void testCancelAndBadRequests() {
+        final TransitionPublisher publisher = new TransitionPublisher(Runnable::run);
+        final ShoeLaces db = publishing(publisher);
+        final Recorder cancelled = new Recorder();
+        final Recorder confused = new Recorder();
+        publisher.subscribe(cancelled);
+        publisher.subscribe(confused);
+
+        cancelled.subscription.request(1);
+        cancelled.subscription.cancel();
+        confused.subscription.request(0);
+        db.interrupt("a");
+
+        assertEquals(cancelled.signals, Arrays.asList("subscribed"));
+        assertEquals(confused.signals, Arrays.asList("subscribed", "error"));
+        assertTrue(confused.error instanceof IllegalArgumentException);
+        assertEquals(publisher.subscribers(), 0);
+    }
+
+    public void testSubscribingAfterCloseCompletes() {
+        final TransitionPublisher publisher = new TransitionPublisher(Runnable::run);
+        publisher.close();
+        final Recorder late = new Recorder();
+        publisher.subscribe(late);
+        assertEquals(late.signals, Arrays.asList("subscribed", "complete"));
+    }
+
+    public void testDeliversInOrderOnAnotherThread() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final TransitionPublisher publisher = new TransitionPublisher(executor, 10_000);
+            final ShoeLaces db = publishing(publisher);
+            final List<String> threads = new ArrayList<>();
+            final Recorder recorder = new Recorder() {
+                @Override
+                public void onSubscribe(final Flow.Subscription subscription) {
+                    super.onSubscribe(subscription);
+                    subscription.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(final Transition item) {
+                    super.onNext(item);
+                    threads.add(Thread.currentThread().getName());
+                }
+            };
+            publisher.subscribe(recorder);
+
+            for (int i = 0; i < 1000; i++) {
+                db.interrupt("t" + i % 10);
+            }
+            publisher.close();
+
+            assertTrue(recorder.terminated.await(10, TimeUnit.SECONDS));
+            assertEquals(recorder.signals.size(), 1002);
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(recorder.signals.get(i + 1), "INTERRUPT t" + i % 10);
+            }
+            assertFalse(threads.contains(Thread.currentThread().getName()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}